@@ -4,6 +4,7 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
@@ -11,6 +12,8 @@ import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import esi.bc.flow.CodeSection;
+
 /**
  * A node that represents a class.
  * Uses {@link AnalyzedMethodNode} to include frame data per instruction.
@@ -26,6 +29,11 @@ import org.objectweb.asm.tree.MethodNode;
  */
 public class AnalyzedClassNode extends ClassNode {
 
+	// Parent class and replaced section, for incremental analysis
+	private AnalyzedClassNode parent;
+	private CodeSection       section;
+	private boolean           skipPrefix;
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public MethodVisitor visitMethod(
@@ -47,6 +55,21 @@ public class AnalyzedClassNode extends ClassNode {
 		// methods is a raw List type
 		methods.add(mn);
 
+		// Incremental analysis of methods that are present in parent
+		if (parent != null) {
+			AnalyzedMethodNode parentMethod = parent.findMethod(name, desc);
+
+			if (parentMethod != null) {
+				if (section.method.equals(new Method(name, desc)))
+					mn.setParent(parentMethod, parent.name, owner, section.start, section.end, skipPrefix);
+				else {
+					// Same method: empty section at end
+					int size = parentMethod.instructions.size();
+					mn.setParent(parentMethod, parent.name, owner, size, size-1, skipPrefix);
+				}
+			}
+		}
+
 		return mn.aa;
 	}
 
@@ -137,6 +160,90 @@ public class AnalyzedClassNode extends ClassNode {
 		return classNode;
 	}
 
+	/**
+	 * Creates an analyzed class node from a class where a code section in a
+	 * parent class was replaced, and the class was possibly renamed.
+	 * The result is the same as when reading the class with
+	 * {@link ClassReader#EXPAND_FRAMES}, however, frame data is only
+	 * recomputed for instructions that are not present in the parent,
+	 * or whose frames state has changed. Frames are not tracked while the
+	 * code before the section is the same as in the parent. If a method
+	 * then cannot be completed, the class is read again with frames
+	 * tracked from the start.
+	 *
+	 * The parent node must be read with {@link ClassReader#EXPAND_FRAMES},
+	 * and must not be modified during analysis.
+	 *
+	 * @param reader reader of the class (must contain frames)
+	 * @param parent analyzed parent class node
+	 * @param section replaced section in parent
+	 * @return analyzed class node
+	 * @see AnalyzedMethodNode#setParent(AnalyzedMethodNode, String, String, int, int, boolean)
+	 */
+	public static AnalyzedClassNode readClass(ClassReader reader, AnalyzedClassNode parent, CodeSection section) {
+		try {
+			return readClass(reader, parent, section, true);
+		} catch (AnalyzedMethodNode.PrefixMismatchException e) {
+			return readClass(reader, parent, section, false);
+		}
+	}
+
+	private static AnalyzedClassNode readClass(ClassReader reader, AnalyzedClassNode parent, CodeSection section,
+			boolean skipPrefix) {
+		AnalyzedClassNode classNode = new AnalyzedClassNode();
+		classNode.parent     = parent;
+		classNode.section    = section;
+		classNode.skipPrefix = skipPrefix;
+
+		reader.accept(classNode, ClassReader.EXPAND_FRAMES);
+
+		// Don't keep parent
+		classNode.parent  = null;
+		classNode.section = null;
+
+		return classNode;
+	}
+
+	/**
+	 * Creates a copy of this class node, which can be modified without
+	 * affecting this node. Method nodes are copied with new instructions
+	 * and labels, but the (expensive) per-instruction analysis is shared.
+	 *
+	 * @return copy of this class node
+	 * @see AnalyzedMethodNode#AnalyzedMethodNode(AnalyzedMethodNode)
+	 */
+	@SuppressWarnings("unchecked")
+	public AnalyzedClassNode copy() {
+		AnalyzedClassNode copy = new AnalyzedClassNode();
+
+		// Copy everything except methods
+		accept(new ClassAdapter(copy) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc,
+					String signature, String[] exceptions) {
+				return null;
+			}
+		});
+
+		// methods is a raw List type
+		for (Object method: methods)
+			copy.methods.add(new AnalyzedMethodNode((AnalyzedMethodNode) method));
+
+		return copy;
+	}
+
+	// Locates a method that may be missing
+	private AnalyzedMethodNode findMethod(String name, String desc) {
+		for (Object m: methods) {
+			AnalyzedMethodNode method = (AnalyzedMethodNode) m;
+
+			if (method.name.equals(name)  &&  method.desc.equals(desc))
+				return method;
+		}
+
+		return null;
+	}
+
 	/**
 	 * Locates a specified method in this class node.
 	 * The method must be present.
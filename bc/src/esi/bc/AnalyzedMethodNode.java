@@ -1,24 +1,38 @@
 package esi.bc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.AnalyzerAdapter;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
 import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
 import org.objectweb.asm.tree.TableSwitchInsnNode;
 import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
 
 import esi.bc.flow.FrameActions;
+import esi.bc.flow.SectionsCache;
 import esi.bc.util.InstructionRep;
 
 /**
@@ -41,6 +55,9 @@ public class AnalyzedMethodNode extends MethodNode {
 	// Frame data (one per instruction), elements can be null
 	private final List<FrameData>			framesData;
 
+	// Interned frame types (released in visitEnd)
+	private       FrameTypes				frameTypes;
+
 	// Frames actions (one per instruction), elements can be null
 	private final ArrayList<FrameActions>	framesActions;
 
@@ -51,6 +68,32 @@ public class AnalyzedMethodNode extends MethodNode {
 	private final ArrayList<Set<Integer>>	nextIndexes;
 	private final ArrayList<Set<Integer>>	nextLabelIndexes;
 
+	// Memoized code sections actions (shared with copies, not part of node state)
+	private final transient SectionsCache	sectionsCache;
+
+	// Incremental analysis: parent method and class names (released in visitEnd)
+	private       AnalyzedMethodNode		parent;
+	private       String					parentOwner;
+	private       String					owner;
+
+	// Incremental analysis: prefix is matched up to prefixLimit (exclusive),
+	// and suffix is matched down to parentSuffixStart (inclusive, in parent)
+	private       int						prefixLimit;
+	private       int						parentSuffixStart;
+
+	// Incremental analysis: end of matched prefix (-1 while still matching),
+	// and snapshots of stack and locals after prefix (null for no frame)
+	private       int						prefixEnd;
+	private       List<Object[]>			pendingStacks;
+	private       List<Object[]>			pendingLocals;
+
+	// Incremental analysis: frames need not be tracked while instructions
+	// are the same as in parent, up to skipLimit (exclusive, 0 for none),
+	// and locals before first instruction for resuming (released in visitEnd)
+	private       int						skipLimit;
+	private       boolean					tracking = true;
+	private       List<Object>				initialLocals;
+
 	public AnalyzedMethodNode(
 			final String owner,		// the class containing the method
 			final int access,
@@ -60,14 +103,199 @@ public class AnalyzedMethodNode extends MethodNode {
 			final String[] exceptions)
 	{
 		super(access, name, desc, signature, exceptions);
-		aa       = new AnalyzerAdapter(owner, access, name, desc, this);
+		aa       = new ResumingAnalyzerAdapter(owner, access, name, desc);
 		fullName = owner.replace('/', '.') + "." + name + desc;
 
 		framesData    = new ArrayList<FrameData>();
 		framesActions = new ArrayList<FrameActions>();
+		frameTypes    = new FrameTypes();
 
 		nextIndexes      = new ArrayList<Set<Integer>>(0);
 		nextLabelIndexes = new ArrayList<Set<Integer>>(0);
+
+		sectionsCache = new SectionsCache();
+	}
+
+	/**
+	 * Creates a copy of an analyzed method node, with new instructions
+	 * and labels. The analysis results are not recomputed, but shared
+	 * with the source node, since they are not modified after
+	 * {@link #visitEnd()}.
+	 *
+	 * As with method nodes read by {@link org.objectweb.asm.ClassReader},
+	 * each label refers to its label node ({@link Label#info}).
+	 *
+	 * @param source analyzed method node to copy
+	 * @see AnalyzedClassNode#copy()
+	 */
+	@SuppressWarnings("unchecked")
+	AnalyzedMethodNode(AnalyzedMethodNode source) {
+		super(source.access, source.name, source.desc, source.signature,
+				(String[]) source.exceptions.toArray(new String[source.exceptions.size()]));
+		aa       = null;
+		fullName = source.fullName;
+
+		framesData       = source.framesData;
+		framesActions    = source.framesActions;
+		parametersAction = source.parametersAction;
+		nextIndexes      = source.nextIndexes;
+		nextLabelIndexes = source.nextLabelIndexes;
+		sectionsCache    = source.sectionsCache;
+
+		// Annotations and attributes are not modified by code manipulations
+		annotationDefault             = source.annotationDefault;
+		visibleAnnotations            = source.visibleAnnotations;
+		invisibleAnnotations          = source.invisibleAnnotations;
+		visibleParameterAnnotations   = source.visibleParameterAnnotations;
+		invisibleParameterAnnotations = source.invisibleParameterAnnotations;
+		attrs                         = source.attrs;
+
+		// Create new labels for all label nodes
+		Map<LabelNode, LabelNode> labels = new HashMap<LabelNode, LabelNode>();
+		for (AbstractInsnNode insn = source.instructions.getFirst();  insn != null;  insn = insn.getNext())
+			if (insn.getType() == AbstractInsnNode.LABEL)
+				labels.put((LabelNode) insn, getLabelNode(new Label()));
+
+		for (AbstractInsnNode insn = source.instructions.getFirst();  insn != null;  insn = insn.getNext())
+			instructions.add(insn.clone(labels));
+
+		for (Object block: source.tryCatchBlocks) {
+			TryCatchBlockNode tcb = (TryCatchBlockNode) block;
+			tryCatchBlocks.add(new TryCatchBlockNode(labels.get(tcb.start), labels.get(tcb.end),
+					labels.get(tcb.handler), tcb.type));
+		}
+
+		for (Object var: source.localVariables) {
+			LocalVariableNode lv = (LocalVariableNode) var;
+			localVariables.add(new LocalVariableNode(lv.name, lv.desc, lv.signature,
+					labels.get(lv.start), labels.get(lv.end), lv.index));
+		}
+
+		maxStack  = source.maxStack;
+		maxLocals = source.maxLocals;
+
+		// Initialize instructions index cache (as is done in visitEnd)
+		if (instructions.size() > 0)
+			instructions.get(0);
+	}
+
+	/**
+	 * Enables incremental analysis of this method, which must be called
+	 * before any instructions are visited.
+	 *
+	 * The method is assumed to be the parent method where a section of
+	 * instructions was replaced, and possibly renamed to a different class.
+	 * Frame data of instructions that precede or follow the replaced section,
+	 * and which have same state as in the parent, is taken from the parent
+	 * instead of being recomputed. The same applies to frames actions and
+	 * next indexes of these instructions.
+	 *
+	 * If <code>skipPrefix</code> is set, {@link AnalyzerAdapter} does not
+	 * track frames while instructions are the same as in the parent (with
+	 * same stack map frames), up to the section. Tracking then resumes from
+	 * the parent state at the last real instruction, and is suspended again
+	 * at a stack map frame that is the same as in the parent, so the result
+	 * is the same as in full analysis. If the method ends before tracking is
+	 * resumed, but is different from the parent, {@link PrefixMismatchException}
+	 * is thrown.
+	 *
+	 * The parent must not be modified during analysis of this method.
+	 *
+	 * @param parent analyzed parent method
+	 * @param parentOwner internal name of parent class
+	 * @param owner internal name of this class
+	 * @param start start of replaced section in parent (inclusive)
+	 * @param end end of replaced section in parent (inclusive, can be start-1)
+	 * @param skipPrefix whether to skip frame tracking before the section
+	 * @see AnalyzedClassNode#readClass(org.objectweb.asm.ClassReader, AnalyzedClassNode, esi.bc.flow.CodeSection)
+	 */
+	void setParent(AnalyzedMethodNode parent, String parentOwner, String owner, int start, int end, boolean skipPrefix) {
+		assert instructions.size() == 0  &&  aa != null;
+
+		// Parent must be fully analyzed (and not modified since)
+		if (parent.framesData.size() != parent.instructions.size()
+				||  parent.framesActions.size() != parent.instructions.size())
+			return;
+
+		this.parent            = parent;
+		this.parentOwner       = parentOwner;
+		this.owner             = owner;
+		this.prefixLimit       = start;
+		this.parentSuffixStart = end + 1;
+
+		prefixEnd     = -1;
+		pendingStacks = new ArrayList<Object[]>();
+		pendingLocals = new ArrayList<Object[]>();
+
+		// Frames are tracked from the start if nothing is skipped
+		if (skipPrefix  &&  start > 0) {
+			skipLimit = Math.min(start, parent.instructions.size());
+			tracking  = false;
+		}
+	}
+
+	/**
+	 * Thrown during incremental analysis if frames are not tracked up to
+	 * the end of a method that differs from the parent. The method should
+	 * then be analyzed without skipping frames tracking.
+	 *
+	 * @see AnalyzedMethodNode#setParent(AnalyzedMethodNode, String, String, int, int, boolean)
+	 */
+	static final class PrefixMismatchException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		PrefixMismatchException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * {@link AnalyzerAdapter} that ignores frames while frames are not tracked.
+	 * Since its state is cleared when tracking stops, other instructions are
+	 * not executed until tracking is resumed.
+	 */
+	private class ResumingAnalyzerAdapter extends AnalyzerAdapter {
+		ResumingAnalyzerAdapter(String owner, int access, String name, String desc) {
+			super(owner, access, name, desc, AnalyzedMethodNode.this);
+		}
+
+		@Override
+		public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+			MethodVisitor node = mv;
+			if (node != null)
+				node.visitFrame(type, nLocal, local, nStack, stack);
+
+			// Tracking can be resumed or suspended by the node at this frame
+			if (tracking) {
+				mv = null;
+				super.visitFrame(type, nLocal, local, nStack, stack);
+				mv = node;
+			}
+			else {
+				locals = null;
+				this.stack = null;
+			}
+		}
+
+		// Executes instructions [from, to) without visiting the node, and
+		// label at to (if any), so that labels are the same after visiting
+		void replay(AbstractInsnNode from, AbstractInsnNode to) {
+			MethodVisitor node = mv;
+			mv = null;
+
+			// Clear labels of skipped instructions (NOP does nothing else)
+			super.visitInsn(Opcodes.NOP);
+
+			for (AbstractInsnNode insn = from;  insn != to;  insn = insn.getNext())
+				if (insn.getType() != AbstractInsnNode.LINE)
+					insn.accept(this);
+
+			// Label can be visited before it is added (e.g., before NEW)
+			if (to.getType() == AbstractInsnNode.LABEL)
+				to.accept(this);
+
+			mv = node;
+		}
 	}
 
 	/////////////////////////////////////////////////////////////////////////////////////////////
@@ -195,24 +423,33 @@ public class AnalyzedMethodNode extends MethodNode {
 	public void visitEnd() {
 		super.visitEnd();
 
+		// Parent indexes of instructions (null if not incremental)
+		int[] parentIndexes = (parent == null)  ?  null  :  completeFrameData();
+
 		// Compute the next indexes for each instruction
 		nextIndexes.ensureCapacity(instructions.size());
 		nextLabelIndexes.ensureCapacity(instructions.size());
 		for (int index = 0;  index < instructions.size();  ++index) {
-			nextIndexes     .add(computeNextIndexes(index, false));
-			nextLabelIndexes.add(computeNextIndexes(index, true));
+			if (parentIndexes != null  &&  parentIndexes[index] == index) {
+				nextIndexes     .add(reuseNextIndexes(index, false));
+				nextLabelIndexes.add(reuseNextIndexes(index, true));
+			}
+			else {
+				nextIndexes     .add(computeNextIndexes(index, false));
+				nextLabelIndexes.add(computeNextIndexes(index, true));
+			}
 		}
 
 		// Make a backward pass copying frame data to pseudo-instructions w/o frame data
 		for (int index = framesData.size()-2;  index >= 0;  --index)
 			if (framesData.get(index) == null  &&  instructions.get(index).getOpcode() < 0)
-				framesData.set(index, new FrameData(framesData.get(index + 1)));
+				framesData.set(index, framesData.get(index + 1).withoutAccesses());
 
 		// Make a backward pass locating LABEL...FRAME constructs and updating frame data
 		for (int index = framesData.size()-2;  index >= 0;  --index)
 			if (instructions.get(index).getType() == AbstractInsnNode.FRAME) {
 				// Frame after the instruction (no vars accesses, and pop depth = 0)
-				FrameData afterFrame  = new FrameData(framesData.get(index + 1));
+				FrameData afterFrame  = framesData.get(index + 1).withoutAccesses();
 
 				--index;
 				for ( ;  index >= 0  &&  (instructions.get(index).getType() == AbstractInsnNode.LABEL
@@ -233,8 +470,13 @@ public class AnalyzedMethodNode extends MethodNode {
 				if (! nextIndexes.isEmpty()) {
 					FrameData after = framesData.get(nextIndexes.iterator().next());
 
-					if (after != null)
-						action = new FrameActions(before, after);
+					if (after != null) {
+						if (parentIndexes != null)
+							action = reuseFrameActions(parentIndexes[index], before, after);
+
+						if (action == null)
+							action = new FrameActions(before, after);
+					}
 				}
 			}
 
@@ -243,6 +485,238 @@ public class AnalyzedMethodNode extends MethodNode {
 
 		// Check that parameters action was constructed
 		assert parametersAction != null;
+
+		// Release parent analysis, and seal frame types
+		parent        = null;
+		pendingStacks = null;
+		pendingLocals = null;
+		initialLocals = null;
+
+		frameTypes.seal();
+		frameTypes    = null;
+	}
+
+	/**
+	 * Completes incremental analysis of frame data: the frames after the
+	 * matched prefix are either taken from the matched suffix in parent,
+	 * or created from the saved snapshots.
+	 *
+	 * @return parent index for each instruction, or -1 if there is none
+	 */
+	private int[] completeFrameData() {
+		int size         = instructions.size();
+		int parentSize   = parent.instructions.size();
+		int[] parentIndexes = new int[size];
+
+		// Frames were not resumed, but method differs from parent
+		if (! tracking  &&  size != parentSize)
+			throw new PrefixMismatchException("Cannot complete frames of " + fullName);
+
+		// Whole method matched parent prefix
+		if (prefixEnd < 0)
+			prefixEnd = size;
+
+		for (int index = 0;  index < prefixEnd;  ++index)
+			parentIndexes[index] = index;
+
+		// Match suffix backwards
+		int suffixStart = size;
+		int shift       = parentSize - size;
+		while (suffixStart > prefixEnd  &&  suffixStart-1 + shift >= parentSuffixStart
+				&&  isEquivalent(instructions.get(suffixStart-1), parent.instructions.get(suffixStart-1 + shift)))
+			--suffixStart;
+
+		for (int index = prefixEnd;  index < size;  ++index) {
+			int parentIndex = (index >= suffixStart)  ?  index + shift  :  -1;
+			parentIndexes[index] = parentIndex;
+
+			Object[] stack  = pendingStacks.get(index - prefixEnd);
+			Object[] locals = pendingLocals.get(index - prefixEnd);
+
+			// null is already in place for unreachable instructions
+			if (stack != null) {
+				List<Object> stackList  = Arrays.asList(stack);
+				List<Object> localsList = Arrays.asList(locals);
+
+				FrameData frame = reuseFrameData(parentIndex, stackList, localsList);
+				if (frame == null) {
+					@SuppressWarnings("unchecked")
+					Map<Label, String> uninitializedTypes = aa.uninitializedTypes;
+					frame = new FrameData(stackList, localsList, uninitializedTypes, instructions.get(index), frameTypes);
+				}
+
+				framesData.set(index, frame);
+			}
+		}
+
+		return parentIndexes;
+	}
+
+	/**
+	 * Returns parent frame data for current instruction if it has same state.
+	 * The instruction must be equivalent to parent instruction.
+	 *
+	 * @param parentIndex index of equivalent instruction in parent, or -1
+	 * @param stack stack before current instruction
+	 * @param locals local variables before current instruction
+	 * @return parent frame data (renamed if necessary), or <code>null</code>
+	 */
+	private FrameData reuseFrameData(int parentIndex, List<Object> stack, List<Object> locals) {
+		if (parentIndex < 0)
+			return null;
+
+		FrameData parentFrame = parent.framesData.get(parentIndex);
+		if (parentFrame == null  ||  !parentFrame.hasState(stack, locals, parentOwner, owner))
+			return null;
+
+		return parentFrame.renamed(parentOwner, owner, frameTypes);
+	}
+
+	/**
+	 * Returns parent frames action if it has the same frame data objects.
+	 *
+	 * @param parentIndex index of parent instruction, or -1
+	 * @param before frame data before the instruction
+	 * @param after frame data at chosen next index
+	 * @return parent frames action, or <code>null</code>
+	 */
+	private FrameActions reuseFrameActions(int parentIndex, FrameData before, FrameData after) {
+		if (parentIndex < 0  ||  parent.framesData.get(parentIndex) != before)
+			return null;
+
+		FrameActions parentAction = parent.framesActions.get(parentIndex);
+		if (parentAction == null)
+			return null;
+
+		// Next index chosen in parent (cannot be empty, since action exists)
+		int parentNext = parent.getNextIndexes(parentIndex).iterator().next();
+		return (parent.framesData.get(parentNext) == after)  ?  parentAction  :  null;
+	}
+
+	/**
+	 * Returns parent next indexes of instruction that has same index in parent,
+	 * if they are the same. Only jumps are checked, other instructions do not
+	 * allocate new destination sets anyway.
+	 *
+	 * @param index instruction index (same as in parent)
+	 * @param labelsOnly whether only to consider transitions via labels
+	 * @return set of destinations
+	 */
+	private Set<Integer> reuseNextIndexes(int index, boolean labelsOnly) {
+		AbstractInsnNode insn = instructions.get(index);
+
+		if (insn.getType() == AbstractInsnNode.JUMP_INSN) {
+			Set<Integer> parentNext = labelsOnly  ?  parent.getNextLabelIndexes(index)  :  parent.getNextIndexes(index);
+			int target = instructions.indexOf(((JumpInsnNode) insn).label);
+
+			boolean same;
+			if (insn.getOpcode() == Opcodes.GOTO  ||  labelsOnly)
+				same = parentNext.size() == 1  &&  parentNext.contains(target);
+			else
+				same = parentNext.size() == (target == index+1 ? 1 : 2)
+					&& parentNext.contains(target)  &&  parentNext.contains(index+1);
+
+			if (same)
+				return parentNext;
+		}
+
+		return computeNextIndexes(index, labelsOnly);
+	}
+
+	/**
+	 * Checks whether two instructions have the same opcode and same
+	 * operands that are relevant to {@link FrameData}.
+	 *
+	 * @param insn an instruction
+	 * @param other another instruction
+	 * @return whether the instructions are equivalent
+	 */
+	private static boolean isEquivalent(AbstractInsnNode insn, AbstractInsnNode other) {
+		if (insn.getOpcode() != other.getOpcode()  ||  insn.getType() != other.getType())
+			return false;
+
+		switch (insn.getType()) {
+		case AbstractInsnNode.VAR_INSN:
+			return ((VarInsnNode) insn).var == ((VarInsnNode) other).var;
+		case AbstractInsnNode.IINC_INSN:
+			return ((IincInsnNode) insn).var == ((IincInsnNode) other).var;
+		case AbstractInsnNode.FIELD_INSN:
+			return ((FieldInsnNode) insn).desc.equals(((FieldInsnNode) other).desc);
+		case AbstractInsnNode.METHOD_INSN:
+			return ((MethodInsnNode) insn).name.equals(((MethodInsnNode) other).name)
+				&& ((MethodInsnNode) insn).desc.equals(((MethodInsnNode) other).desc);
+		case AbstractInsnNode.MULTIANEWARRAY_INSN:
+			return ((MultiANewArrayInsnNode) insn).dims == ((MultiANewArrayInsnNode) other).dims;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Checks whether an instruction is the same as parent instruction,
+	 * as far as {@link AnalyzerAdapter} is concerned (class names that
+	 * refer to parent class are renamed).
+	 *
+	 * @param insn an instruction
+	 * @param parentInsn parent instruction
+	 * @return whether the instruction has the same effect on frames
+	 */
+	private boolean isSame(AbstractInsnNode insn, AbstractInsnNode parentInsn) {
+		if (! isEquivalent(insn, parentInsn))
+			return false;
+
+		switch (insn.getType()) {
+		case AbstractInsnNode.INT_INSN:
+			return ((IntInsnNode) insn).operand == ((IntInsnNode) parentInsn).operand;
+		case AbstractInsnNode.LDC_INSN:
+			return ((LdcInsnNode) insn).cst.getClass() == ((LdcInsnNode) parentInsn).cst.getClass();
+		case AbstractInsnNode.TYPE_INSN:
+			return isSameType(((TypeInsnNode) insn).desc, ((TypeInsnNode) parentInsn).desc);
+		case AbstractInsnNode.MULTIANEWARRAY_INSN:
+			return isSameType(((MultiANewArrayInsnNode) insn).desc, ((MultiANewArrayInsnNode) parentInsn).desc);
+		case AbstractInsnNode.FRAME:
+			return isSameTypes(((FrameNode) insn).local, ((FrameNode) parentInsn).local)
+				&& isSameTypes(((FrameNode) insn).stack, ((FrameNode) parentInsn).stack);
+		default:
+			return true;
+		}
+	}
+
+	// Frame types are Integer constants or Strings (labels are not compared)
+	private boolean isSameTypes(List<?> types, List<?> parentTypes) {
+		if (types.size() != parentTypes.size())
+			return false;
+
+		for (int i = 0;  i < types.size();  ++i) {
+			Object type       = types.get(i);
+			Object parentType = parentTypes.get(i);
+
+			if (type instanceof String  &&  parentType instanceof String) {
+				if (! isSameType((String) type, (String) parentType))
+					return false;
+			}
+			else if (type instanceof LabelNode  ||  ! type.equals(parentType))
+				return false;
+		}
+
+		return true;
+	}
+
+	private boolean isSameType(String type, String parentType) {
+		return FrameData.renameType(parentType, parentOwner, owner).equals(type);
+	}
+
+	// Whether the frame data refers to uninitialized objects
+	private static boolean hasUninitialized(FrameData frame) {
+		for (Object type: frame.getStack())
+			if (type instanceof String  &&  ((String) type).startsWith(FrameData.UNINITIALIZED_PREFIX))
+				return true;
+
+		for (Object type: frame.getLocals())
+			if (type instanceof String  &&  ((String) type).startsWith(FrameData.UNINITIALIZED_PREFIX))
+				return true;
+
+		return false;
 	}
 
 	/**
@@ -253,6 +727,17 @@ public class AnalyzedMethodNode extends MethodNode {
 		return framesActions.get(index);
 	}
 
+	/**
+	 * Returns the cache of code sections actions, used by
+	 * {@link esi.bc.flow.CodeAccesses}. The cache is shared
+	 * with copies of this method node.
+	 *
+	 * @return sections cache
+	 */
+	public SectionsCache getSectionsCache() {
+		return sectionsCache;
+	}
+
 	/**
 	 * @param index instruction index
 	 * @return frame state before instruction at given index
@@ -427,6 +912,25 @@ public class AnalyzedMethodNode extends MethodNode {
 		}
 	}
 
+	/**
+	 * Checks whether an instruction can continue to the next instruction.
+	 * JSR/RET are not handled.
+	 *
+	 * @param insn a real instruction
+	 * @return whether it is not GOTO, *RETURN, ATHROW or *SWITCH
+	 */
+	private static boolean fallsThrough(AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+		case Opcodes.GOTO:
+		case Opcodes.ATHROW:
+		case Opcodes.TABLESWITCH:
+		case Opcodes.LOOKUPSWITCH:
+			return false;
+		default:
+			return !isReturn(insn);
+		}
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder buf = new StringBuilder();
@@ -498,22 +1002,165 @@ public class AnalyzedMethodNode extends MethodNode {
 
 		// stack and locals are null for unreachable instructions
 		// or non-real instructions after GOTO
-		if (aa.stack == null  ||  aa.locals == null) {
+		if (parent != null)
+			framesData.add(saveIncrementalFrameData(insn));
+		else if (aa.stack == null  ||  aa.locals == null) {
 			assert aa.stack == null  &&  aa.locals == null;
 			framesData.add(null);
 		}
 		else {
 			// aa.stack and aa.locals need conversion to List<Object>
-			framesData.add(new FrameData(aa.stack, aa.locals, aa.uninitializedTypes, insn));
+			framesData.add(new FrameData(aa.stack, aa.locals, aa.uninitializedTypes, insn, frameTypes));
 		}
 
 		// Locals before first instruction are the parameters
 		if (instructions.size() == 1) {
 			assert aa.locals != null;
 
-			FrameData parametersFrame = new FrameData(aa.locals);
+			FrameData parametersFrame = new FrameData(aa.locals, frameTypes);
 			parametersAction = new FrameActions(parametersFrame, parametersFrame);
+
+			// Stop tracking frames until resumed
+			if (skipLimit > 0) {
+				initialLocals = new ArrayList<Object>(aa.locals);
+
+				if (! tracking) {
+					aa.locals = null;
+					aa.stack  = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Incremental version of frame data creation. While instructions are the
+	 * same as in the parent, frames are not tracked, and parent frame data is used.
+	 * While instructions match the parent prefix, parent frame data is reused if
+	 * possible. After that, stack and locals are saved until suffix can be matched
+	 * in {@link #visitEnd()}.
+	 *
+	 * @param insn the last instruction
+	 * @return frame data, or <code>null</code> if it is not known yet
+	 */
+	@SuppressWarnings("unchecked")
+	private FrameData saveIncrementalFrameData(AbstractInsnNode insn) {
+		int index = instructions.size() - 1;
+
+		if (! tracking) {
+			// Uninitialized types refer to parent labels
+			if (index < skipLimit  &&  isSame(insn, parent.instructions.get(index))) {
+				FrameData frame = skippedFrameData(insn, index);
+				if (frame == null  ||  !hasUninitialized(frame))
+					return frame;
+			}
+
+			resumeFrames(insn, index);
+		}
+
+		// Check whether prefix ends here
+		if (prefixEnd < 0  &&  (index >= prefixLimit  ||  index >= parent.instructions.size()
+				||  !isEquivalent(insn, parent.instructions.get(index))))
+			prefixEnd = index;
+
+		boolean reachable = (aa.stack != null  &&  aa.locals != null);
+		assert reachable  ||  (aa.stack == null  &&  aa.locals == null);
+
+		if (prefixEnd < 0) {
+			// Stop tracking after a frame that is the same as in parent
+			if (index < skipLimit  &&  insn.getType() == AbstractInsnNode.FRAME
+					&&  isSame(insn, parent.instructions.get(index)))
+				tracking = false;
+
+			if (! reachable)
+				return null;
+
+			FrameData frame = reuseFrameData(index, aa.stack, aa.locals);
+			return (frame != null)  ?  frame  :  new FrameData(aa.stack, aa.locals, aa.uninitializedTypes, insn, frameTypes);
+		}
+		else {
+			pendingStacks.add(reachable  ?  aa.stack .toArray()  :  null);
+			pendingLocals.add(reachable  ?  aa.locals.toArray()  :  null);
+			return null;
 		}
 	}
 
+	/**
+	 * Returns frame data before an instruction that is the same as in parent,
+	 * while frames are not tracked.
+	 *
+	 * Parent frame data of pseudo-instructions can be completed from the
+	 * following instructions in {@link #visitEnd()}, which may be different
+	 * here. Then, the state is taken from the previous instruction instead,
+	 * as in full analysis before completion.
+	 *
+	 * @param insn the last instruction
+	 * @param index index of the instruction (same as in parent)
+	 * @return renamed parent frame data, or <code>null</code>
+	 */
+	private FrameData skippedFrameData(AbstractInsnNode insn, int index) {
+		AbstractInsnNode previous = insn.getPrevious();
+
+		if (insn.getOpcode() < 0  &&  previous != null) {
+			// Same state as after previous pseudo-instruction
+			if (previous.getType() == AbstractInsnNode.LABEL  ||  previous.getType() == AbstractInsnNode.LINE)
+				return framesData.get(index - 1);
+
+			// Not reached from previous instruction
+			if (previous.getOpcode() >= 0  &&  (framesData.get(index - 1) == null  ||  !fallsThrough(previous)))
+				return null;
+		}
+
+		FrameData parentFrame = parent.framesData.get(index);
+		return (parentFrame == null)  ?  null  :  parentFrame.renamed(parentOwner, owner, frameTypes);
+	}
+
+	/**
+	 * Resumes frames tracking before the last instruction. The state of
+	 * {@link AnalyzerAdapter} is restored from the parent frame data of a
+	 * previous real instruction (the same as in parent), which is then
+	 * executed, along with the following instructions.
+	 *
+	 * The state before the instruction must not refer to uninitialized
+	 * objects, whose labels are not part of frame data. Otherwise, an
+	 * earlier instruction is chosen, or the start of the method.
+	 *
+	 * @param insn the last instruction
+	 * @param index index of the instruction
+	 */
+	private void resumeFrames(AbstractInsnNode insn, int index) {
+		tracking = true;
+
+		// State is cleared after the first instruction
+		if (index == 0)
+			return;
+
+		AbstractInsnNode from = insn.getPrevious();
+		for (int fromIndex = index - 1;  from != null;  from = from.getPrevious(), --fromIndex) {
+			if (from.getOpcode() < 0  ||  from.getOpcode() == Opcodes.NEW)
+				continue;
+
+			FrameData parentFrame = parent.framesData.get(fromIndex);
+			if (parentFrame == null) {
+				aa.locals = null;
+				aa.stack  = null;
+				break;
+			}
+
+			FrameData frame = parentFrame.renamed(parentOwner, owner, frameTypes);
+			if (! hasUninitialized(frame)) {
+				aa.locals = new ArrayList<Object>(frame.getLocals());
+				aa.stack  = new ArrayList<Object>(frame.getStack());
+				break;
+			}
+		}
+
+		if (from == null) {
+			aa.locals = new ArrayList<Object>(initialLocals);
+			aa.stack  = new ArrayList<Object>();
+			from      = instructions.getFirst();
+		}
+
+		((ResumingAnalyzerAdapter) aa).replay(from, insn);
+	}
+
 }
@@ -5,9 +5,12 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -20,6 +23,12 @@ import java.util.Map;
  * do not "see" each other. Thus, it is better to create {@link BytesClassLoader}
  * on demand where possible. This prevents name clashes, and also allows garbage
  * collection for unnecessary loaded classes.
+ *
+ * When many classes are produced at once (e.g., a generation of individuals),
+ * a single extensible loader can be used as a batch with
+ * {@link #loadDefinition(String, byte[])}: the classes are then garbage-collected
+ * together with the loader. Class names that were not found in the parent class
+ * loader are remembered, so that failing parent lookups are not repeated.
  */
 public class BytesClassLoader extends ClassLoader {
 
@@ -28,6 +37,9 @@ public class BytesClassLoader extends ClassLoader {
 	private final Map<String, byte[]>	store;
 	private final File					saveDir;
 
+	// Names that are known to be missing in parent class loader
+	private final Set<String>			missing;
+
 	/**
 	 * Creates a new bytes class loader.
 	 *
@@ -71,6 +83,7 @@ public class BytesClassLoader extends ClassLoader {
 		super(BytesClassLoader.class.getClassLoader());
 		parent = BytesClassLoader.class.getClassLoader();
 
+		missing = new HashSet<String>();
 		for (String name: store.keySet())
 			checkName(name);
 
@@ -88,7 +101,7 @@ public class BytesClassLoader extends ClassLoader {
 	 * @param bytes bytes array
 	 * @throws UnsupportedOperationException if classes store cannot be extended
 	 */
-	public void addDefinition(String name, byte[] bytes) {
+	public synchronized void addDefinition(String name, byte[] bytes) {
 		if (! store.containsKey(name)) {
 			checkName(name);
 			store.put(name, bytes);
@@ -97,13 +110,72 @@ public class BytesClassLoader extends ClassLoader {
 			throw new IllegalArgumentException("Class " + name + " already defined");
 	}
 
+	/**
+	 * Adds definition to classes database if it is not there yet,
+	 * and loads the class. This allows using the class loader as a
+	 * batch for many classes, where each class can be requested
+	 * several times.
+	 *
+	 * Works only if the class loader was created with
+	 * {@link #BytesClassLoader()} or {@link #BytesClassLoader(File)}.
+	 *
+	 * @param name the binary name of the class
+	 * @param bytes bytes array
+	 * @return the loaded class
+	 * @throws ClassNotFoundException if class cannot be loaded
+	 * @throws IllegalArgumentException if the class was defined with different bytes
+	 * @throws UnsupportedOperationException if classes store cannot be extended
+	 */
+	public synchronized Class<?> loadDefinition(String name, byte[] bytes) throws ClassNotFoundException {
+		byte[] stored = store.get(name);
+
+		if (stored == null)
+			addDefinition(name, bytes);
+		else if (stored != bytes  &&  !Arrays.equals(stored, bytes))
+			throw new IllegalArgumentException("Class " + name + " already defined differently");
+
+		return loadClass(name);
+	}
+
 	private void checkName(String name) {
 		try {
 			parent.loadClass(name);
 			throw new LinkageError("Class " + name + " already exists in parent class loader");
 		} catch (ClassNotFoundException e) {
 			// OK
+			missing.add(name);
+		}
+	}
+
+	/**
+	 * Loads a class, using the parent class loader only for names that
+	 * are neither defined in this class loader, nor are known to be
+	 * missing in the parent.
+	 */
+	@Override
+	protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		Class<?> klass = findLoadedClass(name);
+
+		if (klass == null) {
+			// Defined names were checked to be missing in parent
+			if (store.containsKey(name))
+				klass = findClass(name);
+			else if (missing.contains(name))
+				throw new ClassNotFoundException(name);
+			else {
+				try {
+					klass = parent.loadClass(name);
+				} catch (ClassNotFoundException e) {
+					missing.add(name);
+					throw e;
+				}
+			}
 		}
+
+		if (resolve)
+			resolveClass(klass);
+
+		return klass;
 	}
 
 	/**
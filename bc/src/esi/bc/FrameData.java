@@ -1,11 +1,15 @@
 package esi.bc;
 
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
@@ -32,6 +36,12 @@ import esi.bc.util.TypeRep;
  *  		This is the IINC insn, where varReadType == varWriteType == Opcodes.INTEGER
  *  		As with other insn's, only one local variable is effected (its index is stored in varNumber)
  *
+ *  Representation: stack and locals are arrays of type ids in a per-method
+ *  {@link FrameTypes} table (shared between frames with the same state), and
+ *  variables accesses are ranges of consecutive variables, since an instruction
+ *  accesses at most one variable (two slots for J and D). The getters return
+ *  read-only views of this representation.
+ *
  * @author Kfir Wolfson
  * @author Michael Orlov
  */
@@ -54,20 +64,25 @@ public class FrameData {
 	static final int[] popDepthPerOpcode;
 
 	/**
-	 * <code>List</code> of the operand stack slots for execution
+	 * Table of types referred to by stack and locals.
+	 */
+	private final FrameTypes   frameTypes;
+
+	/**
+	 * Type ids of the operand stack slots for execution
 	 * frame. This field is never <tt>null</tt>.
 	 *
 	 * @see AnalyzerAdapter#stack
 	 */
-	private final List<Object> stack;
+	private final int[]        stack;
 
 	/**
-	 * <code>List</code> of the local variable slots for execution
+	 * Type ids of the local variable slots for execution
 	 * frame. This field is never <tt>null</tt>.
 	 *
 	 * @see AnalyzerAdapter#locals
 	 */
-	private final List<Object> locals;
+	private final int[]        locals;
 
 	/**
 	 * Amount of operands to be poped from the stack by the insn
@@ -76,20 +91,18 @@ public class FrameData {
 
 
 	/**
-	 * A set of local variable indexes read during instruction execution.
+	 * Local variable indexes read and written during instruction execution:
+	 * [var, var + readCount) and [var, var + writtenCount).
 	 */
-	private final Set<Integer> varsRead;
-
-	/**
-	 * A set of local variable indexes written during instruction execution.
-	 */
-	private final Set<Integer> varsWritten;
+	private final int          var;
+	private final int          readCount;
+	private final int          writtenCount;
 
 
 	/////////////////////////////////////////////////////////////////////////////////////////////////
 
 	/**
-	 * Constructor copies stack and locals Lists by ref, since these are static Integers or Strings
+	 * Constructor interns stack and locals Lists in a new types table.
 	 * If they contain a Label (in the case of an uninitialized object) then
 	 * it is replaced by a String of the object type, acquired from the "uninitializedTypes" map
 	 * in the AnalyzerAdapter, prefixed by a "U"
@@ -100,27 +113,44 @@ public class FrameData {
 	 * @param insn the instruction prior to which stack and locals hold
 	 */
 	public FrameData(List<Object> stack, List<Object> locals, Map<Label, String> uninitializedTypes, AbstractInsnNode insn) {
+		this(stack, locals, uninitializedTypes, insn, new FrameTypes());
+	}
+
+	/**
+	 * Same as {@link #FrameData(List, List, Map, AbstractInsnNode)}, with stack and
+	 * locals interned in the given types table.
+	 *
+	 * @param stack stack, must not be null
+	 * @param locals, must not be null
+	 * @param uninitializedTypes uninitialized types map
+	 * @param insn the instruction prior to which stack and locals hold
+	 * @param frameTypes types table of the method
+	 */
+	FrameData(List<Object> stack, List<Object> locals, Map<Label, String> uninitializedTypes, AbstractInsnNode insn,
+			FrameTypes frameTypes) {
 		if (stack == null  ||  locals == null)
 			throw new IllegalArgumentException("stack and locals must not be null");
 
 		// Handle operand stack and local variables
-		this.stack  = transformFrameList(stack, uninitializedTypes);
-		this.locals = transformFrameList(locals, uninitializedTypes);
+		this.frameTypes = frameTypes;
+		this.stack      = frameTypes.intern(stack,  uninitializedTypes);
+		this.locals     = frameTypes.intern(locals, uninitializedTypes);
 
 		// Debug instructions (e.g. LineNumber, FrameInsn, Label) have opcode = -1,
 		// and remain with the empty read/written vars and zero popDepth.
 		if (insn.getOpcode() >= 0) {
-			popDepth = getPopDepth(insn);
+			popDepth     = getPopDepth(insn);
 
-			// Set varsRead, varsWritten
-			varsRead    = new TreeSet<Integer>();
-			varsWritten = new TreeSet<Integer>();
-			setVarReadWrite(insn);
+			// Set variables read and written
+			var          = getVar(insn);
+			readCount    = getVarsReadCount(insn);
+			writtenCount = getVarsWrittenCount(insn);
 		}
 		else {
-			popDepth    = 0;
-			varsRead    = Collections.emptySet();
-			varsWritten = Collections.emptySet();
+			popDepth     = 0;
+			var          = 0;
+			readCount    = 0;
+			writtenCount = 0;
 		}
 	}
 
@@ -134,15 +164,26 @@ public class FrameData {
 	 * @param params list of function parameters
 	 */
 	public FrameData(List<Object> params) {
-		stack       = Collections.emptyList();
-		locals      = new ArrayList<Object>(params);
-		varsRead    = Collections.emptySet();
+		this(params, new FrameTypes());
+	}
+
+	/**
+	 * Same as {@link #FrameData(List)}, with parameters interned
+	 * in the given types table.
+	 *
+	 * @param params list of function parameters
+	 * @param frameTypes types table of the method
+	 */
+	FrameData(List<Object> params, FrameTypes frameTypes) {
+		this.frameTypes = frameTypes;
+		stack           = FrameTypes.NO_TYPES;
+		locals          = frameTypes.intern(params, Collections.<Label, String> emptyMap());
 
-		varsWritten = new TreeSet<Integer>();
-		for (int var = 0;  var < locals.size();  ++var)
-			varsWritten.add(var);
+		var             = 0;
+		readCount       = 0;
+		writtenCount    = locals.length;
 
-		popDepth    = 0;
+		popDepth        = 0;
 	}
 
 	/**
@@ -153,12 +194,171 @@ public class FrameData {
 	 * @param source frame data source
 	 */
 	public FrameData(FrameData source) {
-		stack       = source.stack;
-		locals      = source.locals;
+		frameTypes   = source.frameTypes;
+		stack        = source.stack;
+		locals       = source.locals;
+
+		popDepth     = 0;
+		var          = 0;
+		readCount    = 0;
+		writtenCount = 0;
+	}
+
+	/**
+	 * Creates a frame data with given stack and locals, and with
+	 * pop depth and variable access sets of other frame data.
+	 *
+	 * @param source frame data source
+	 * @param frameTypes types table of stack and locals
+	 * @param stack operand stack
+	 * @param locals local variables
+	 */
+	private FrameData(FrameData source, FrameTypes frameTypes, int[] stack, int[] locals) {
+		this.frameTypes = frameTypes;
+		this.stack      = stack;
+		this.locals     = locals;
+
+		popDepth        = source.popDepth;
+		var             = source.var;
+		readCount       = source.readCount;
+		writtenCount    = source.writtenCount;
+	}
+
+	/**
+	 * Returns frame data with same stack and locals, zero pop depth,
+	 * and empty variable access sets, like {@link #FrameData(FrameData)}.
+	 *
+	 * Package-level access for pseudo-instructions in analysis.
+	 *
+	 * @return this frame data if it has no pop depth and accesses, or a copy
+	 */
+	FrameData withoutAccesses() {
+		if (popDepth == 0  &&  readCount == 0  &&  writtenCount == 0)
+			return this;
+		else
+			return new FrameData(this);
+	}
+
+	/**
+	 * Checks whether this frame data has the given stack and locals,
+	 * which are in {@link AnalyzerAdapter} format. Types referring to
+	 * <code>owner</code> class must refer to <code>newOwner</code> class
+	 * in the given lists.
+	 *
+	 * Lists that contain labels (uninitialized types) never match.
+	 *
+	 * Package-level access for incremental analysis.
+	 *
+	 * @param stack operand stack
+	 * @param locals local variables
+	 * @param owner internal name of class in this frame data
+	 * @param newOwner internal name of class in given lists
+	 * @return whether state is the same
+	 * @see AnalyzedMethodNode
+	 */
+	boolean hasState(List<Object> stack, List<Object> locals, String owner, String newOwner) {
+		return hasTypes(this.stack, stack, owner, newOwner)
+			&& hasTypes(this.locals, locals, owner, newOwner);
+	}
+
+	private boolean hasTypes(int[] types, List<Object> newTypes, String owner, String newOwner) {
+		if (types.length != newTypes.size())
+			return false;
+
+		for (int i = 0;  i < types.length;  ++i) {
+			Object type    = frameTypes.get(types[i]);
+			Object newType = newTypes.get(i);
+
+			if (type instanceof String  &&  newType instanceof String) {
+				if (! renameType((String) type, owner, newOwner).equals(newType))
+					return false;
+			}
+			else if (! type.equals(newType))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns frame data where types referring to <code>owner</code> class
+	 * refer to <code>newOwner</code> class instead.
+	 *
+	 * Package-level access for incremental analysis.
+	 *
+	 * @param owner internal name of class in this frame data
+	 * @param newOwner internal name of class in result
+	 * @param newTypes types table for the renamed copy
+	 * @return this frame data if there is nothing to rename, or renamed copy
+	 */
+	FrameData renamed(String owner, String newOwner, FrameTypes newTypes) {
+		if (! (isRenamed(stack, owner, newOwner)  ||  isRenamed(locals, owner, newOwner)))
+			return this;
+
+		// The copy refers to the new table only
+		return new FrameData(this, newTypes,
+				renameTypes(stack,  owner, newOwner, newTypes),
+				renameTypes(locals, owner, newOwner, newTypes));
+	}
+
+	// Whether any of the types is renamed
+	private boolean isRenamed(int[] types, String owner, String newOwner) {
+		for (int id: types) {
+			Object type = frameTypes.get(id);
+
+			if (type instanceof String  &&  renameType((String) type, owner, newOwner) != type)
+				return true;
+		}
+
+		return false;
+	}
+
+	// Returns types interned in the new table
+	private int[] renameTypes(int[] types, String owner, String newOwner, FrameTypes newTypes) {
+		if (types.length == 0)
+			return types;
+
+		int[] renamed = new int[types.length];
+		for (int i = 0;  i < types.length;  ++i) {
+			Object type = frameTypes.get(types[i]);
+
+			if (type instanceof String)
+				type = renameType((String) type, owner, newOwner);
 
-		popDepth    = 0;
-		varsRead    = Collections.emptySet();
-		varsWritten = Collections.emptySet();
+			renamed[i] = newTypes.intern(type);
+		}
+
+		return newTypes.intern(renamed);
+	}
+
+	/**
+	 * Renames class and arrays of class.
+	 *
+	 * Package-level access for incremental analysis.
+	 *
+	 * @param type type in frame data format
+	 * @param owner internal name of renamed class
+	 * @param newOwner new internal name of class
+	 * @return renamed type, or same string if nothing was renamed
+	 */
+	static String renameType(String type, String owner, String newOwner) {
+		if (owner.equals(newOwner))
+			return type;
+
+		if (type.equals(owner))
+			return newOwner;
+
+		// Arrays of class: [[Lowner;
+		int dims = 0;
+		while (dims < type.length()  &&  type.charAt(dims) == '[')
+			++dims;
+
+		if (dims > 0  &&  type.length() == dims + owner.length() + 2
+				&&  type.charAt(dims) == 'L'  &&  type.endsWith(";")
+				&&  type.startsWith(owner, dims+1))
+			return type.substring(0, dims+1) + newOwner + ";";
+
+		return type;
 	}
 
 	/**
@@ -174,26 +374,31 @@ public class FrameData {
 	 * @param uninitializedTypes map used to translate labels to Strings
 	 */
 	List<Object> transformFrameList(List<Object> frameList, Map<Label, String> uninitializedTypes) {
-		List<Object> transformed = new ArrayList<Object>(frameList.size());
-
-		for (Object type: frameList) {
-			if (type instanceof Label) {
-				String typeString = uninitializedTypes.get(type);
-				if (typeString == null)
-					throw new RuntimeException("label not found in uninitializedTypes map");
-
-				// Here we implicitly rely on distinctiveness of default hashCode()
-				// If this becomes a problem (unlikely), Label->random map can be used.
-				// TODO: take care of multiple labels mapping to same uninitialized type
-				// (is this possible in actual scenario?)
-				transformed.add(UNINITIALIZED_PREFIX + type + "/" + typeString);
-			}
-			else {
-				transformed.add(type);
-			}
-		}
+		FrameTypes frameTypes = new FrameTypes();
+		return new TypeList(frameTypes, frameTypes.intern(frameList, uninitializedTypes));
+	}
 
-		return transformed;
+	/**
+	 * Transforms a type that can be a label, as in {@link #transformFrameList(List, Map)}.
+	 *
+	 * @param type type in {@link AnalyzerAdapter} format
+	 * @param uninitializedTypes map used to translate labels to Strings
+	 * @return type in frame data format
+	 */
+	static Object transformType(Object type, Map<Label, String> uninitializedTypes) {
+		if (type instanceof Label) {
+			String typeString = uninitializedTypes.get(type);
+			if (typeString == null)
+				throw new RuntimeException("label not found in uninitializedTypes map");
+
+			// Here we implicitly rely on distinctiveness of default hashCode()
+			// If this becomes a problem (unlikely), Label->random map can be used.
+			// TODO: take care of multiple labels mapping to same uninitialized type
+			// (is this possible in actual scenario?)
+			return UNINITIALIZED_PREFIX + type + "/" + typeString;
+		}
+		else
+			return type;
 	}
 
 	/**
@@ -227,15 +432,18 @@ public class FrameData {
 			// INVOKESPECIAL -> <init> on U, <init> on "U/...", private, super.xxx()
 			String methodName = ((MethodInsnNode) insn).name;
 			if ("<init>".equals(methodName)) {
-				// Type of instance argument
-				Object type = stack.get(stack.size() - popDepth);
-				assert Opcodes.UNINITIALIZED_THIS.equals(type)
-					|| ((type instanceof String)
-						&& ((String) type).startsWith(UNINITIALIZED_PREFIX));
+				// Type of instance argument (same types have same ids)
+				int type = stack[stack.length - popDepth];
+				assert Opcodes.UNINITIALIZED_THIS.equals(frameTypes.get(type))
+					|| ((frameTypes.get(type) instanceof String)
+						&& ((String) frameTypes.get(type)).startsWith(UNINITIALIZED_PREFIX));
 
 				// There can be more on the stack (typically 1 more for NEW)
-				int firstOccurrence = stack.indexOf(type);
-				popDepth += (stack.size() - popDepth) - firstOccurrence;
+				int firstOccurrence = 0;
+				while (stack[firstOccurrence] != type)
+					++firstOccurrence;
+
+				popDepth += (stack.length - popDepth) - firstOccurrence;
 			}
 			break;
 
@@ -275,39 +483,52 @@ public class FrameData {
 	}
 
 	/**
-	 * Sets varsRead and varsWritten fields according to instruction type.
+	 * Returns the first variable accessed by the instruction.
 	 */
-	private void setVarReadWrite(AbstractInsnNode insn) {
-		if (insn.getType() == AbstractInsnNode.IINC_INSN) {
-			int var = ((IincInsnNode) insn).var;
+	private static int getVar(AbstractInsnNode insn) {
+		if (insn.getType() == AbstractInsnNode.IINC_INSN)
+			return ((IincInsnNode) insn).var;
+		else if (insn.getType() == AbstractInsnNode.VAR_INSN)
+			return ((VarInsnNode) insn).var;
+		else
+			return 0;
+	}
 
-			varsRead.add(var);
-			varsWritten.add(var);
+	/**
+	 * Returns the number of variables read by the instruction.
+	 */
+	private static int getVarsReadCount(AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+		case Opcodes.LLOAD:
+		case Opcodes.DLOAD:
+			// Assuming TOP in the subsequent variable
+			return 2;
+		case Opcodes.ILOAD:
+		case Opcodes.FLOAD:
+		case Opcodes.ALOAD:
+		case Opcodes.IINC:
+			return 1;
+		default:
+			return 0;
 		}
-		else if (insn.getType() == AbstractInsnNode.VAR_INSN) {
-			int var = ((VarInsnNode) insn).var;
-
-			switch (insn.getOpcode()) {
-			case Opcodes.LLOAD:
-			case Opcodes.DLOAD:
-				// Assuming TOP in the subsequent variable
-				varsRead.add(var + 1);
-			case Opcodes.ILOAD:
-			case Opcodes.FLOAD:
-			case Opcodes.ALOAD:
-				varsRead.add(var);
-				break;
-
-			case Opcodes.LSTORE:
-			case Opcodes.DSTORE:
-				// Assuming TOP in the subsequent variable
-				varsWritten.add(var + 1);
-			case Opcodes.ISTORE:
-			case Opcodes.FSTORE:
-			case Opcodes.ASTORE:
-				varsWritten.add(var);
-				break;
-			}
+	}
+
+	/**
+	 * Returns the number of variables written by the instruction.
+	 */
+	private static int getVarsWrittenCount(AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+		case Opcodes.LSTORE:
+		case Opcodes.DSTORE:
+			// Assuming TOP in the subsequent variable
+			return 2;
+		case Opcodes.ISTORE:
+		case Opcodes.FSTORE:
+		case Opcodes.ASTORE:
+		case Opcodes.IINC:
+			return 1;
+		default:
+			return 0;
 		}
 	}
 
@@ -315,14 +536,36 @@ public class FrameData {
 	 * @return stack before this instruction (immutable)
 	 */
 	public List<Object> getStack() {
-		return Collections.unmodifiableList(stack);
+		return new TypeList(frameTypes, stack);
+	}
+
+	/**
+	 * @return size of stack before this instruction
+	 */
+	public int getStackSize() {
+		return stack.length;
 	}
 
 	/**
 	 * @return local variables before this instruction (immutable)
 	 */
 	public List<Object> getLocals() {
-		return Collections.unmodifiableList(locals);
+		return new TypeList(frameTypes, locals);
+	}
+
+	/**
+	 * @return number of local variables before this instruction
+	 */
+	public int getLocalsSize() {
+		return locals.length;
+	}
+
+	/**
+	 * @param var local variable index, less than {@link #getLocalsSize()}
+	 * @return type of local variable before this instruction
+	 */
+	public Object getLocal(int var) {
+		return frameTypes.get(locals[var]);
 	}
 
 	/**
@@ -336,7 +579,7 @@ public class FrameData {
 	 * @return variables read in this instruction (immutable)
 	 */
 	public Set<Integer> getVarsRead() {
-		return Collections.unmodifiableSet(varsRead);
+		return new VarsRange(var, readCount);
 	}
 
 
@@ -344,7 +587,27 @@ public class FrameData {
 	 * @return variables written in this instruction (immutable)
 	 */
 	public Set<Integer> getVarsWritten() {
-		return Collections.unmodifiableSet(varsWritten);
+		return new VarsRange(var, writtenCount);
+	}
+
+	/**
+	 * Adds variables read in this instruction to a bit set.
+	 *
+	 * @param vars set of variable indexes to update
+	 */
+	public void addVarsRead(BitSet vars) {
+		if (readCount != 0)
+			vars.set(var, var + readCount);
+	}
+
+	/**
+	 * Adds variables written in this instruction to a bit set.
+	 *
+	 * @param vars set of variable indexes to update
+	 */
+	public void addVarsWritten(BitSet vars) {
+		if (writtenCount != 0)
+			vars.set(var, var + writtenCount);
 	}
 
 	@Override
@@ -352,18 +615,82 @@ public class FrameData {
 		StringBuilder buf = new StringBuilder();
 
 		buf.append("stack [")
-		   .append(TypeRep.typeListToString(stack))
+		   .append(TypeRep.typeListToString(getStack()))
 		   .append("], vars [")
-		   .append(TypeRep.typeListToString(locals))
+		   .append(TypeRep.typeListToString(getLocals()))
 		   .append("], pops ").append(popDepth)
 		   .append(", reads ")
-		   .append(varsRead)
+		   .append(getVarsRead())
 		   .append(", writes ")
-		   .append(varsWritten);
+		   .append(getVarsWritten());
 
 		return buf.toString();
 	}
 
+	// Read-only view of types array
+	private static class TypeList extends AbstractList<Object> implements RandomAccess {
+		private final FrameTypes frameTypes;
+		private final int[]      types;
+
+		public TypeList(FrameTypes frameTypes, int[] types) {
+			this.frameTypes = frameTypes;
+			this.types      = types;
+		}
+
+		@Override
+		public Object get(int index) {
+			return frameTypes.get(types[index]);
+		}
+
+		@Override
+		public int size() {
+			return types.length;
+		}
+	}
+
+	// Read-only view of variables range
+	private static class VarsRange extends AbstractSet<Integer> {
+		private final int first;
+		private final int count;
+
+		public VarsRange(int first, int count) {
+			this.first = first;
+			this.count = count;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return (o instanceof Integer)
+				&&  (Integer) o >= first  &&  (Integer) o < first + count;
+		}
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>() {
+				private int var = first;
+
+				public boolean hasNext() {
+					return var < first + count;
+				}
+
+				public Integer next() {
+					if (! hasNext())
+						throw new NoSuchElementException();
+
+					return var++;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return count;
+		}
+	}
 
 	// Code to generate static field popDepthPerOpcode
 	static {
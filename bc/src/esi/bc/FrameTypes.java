@@ -0,0 +1,153 @@
+package esi.bc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Label;
+
+/**
+ * Table of interned frame types of an analyzed method.
+ *
+ * Frame data keeps operand stack and local variables as arrays of type
+ * ids in this table, rather than as lists of types. The arrays themselves
+ * are also interned, since successive instructions usually have the same
+ * local variables, and often the same operand stack.
+ *
+ * Types are interned per method, since types of uninitialized objects
+ * (and the owner class, in evolved individuals) are unique to the method,
+ * and a global table would grow indefinitely. The table is modified only
+ * while its method is analyzed, and {@link #seal()} releases the lookup
+ * maps afterwards. Sealed tables can be read concurrently.
+ */
+final class FrameTypes {
+
+	/**
+	 * Empty types array.
+	 */
+	static final int[] NO_TYPES = new int[0];
+
+	// Type id -> type
+	private Object[]				types;
+	private int						size;
+
+	// Type -> type id, and interned arrays (null when sealed)
+	private Map<Object, Integer>	ids;
+	private Map<TypesKey, int[]>	arrays;
+
+	/**
+	 * Creates an empty types table.
+	 */
+	FrameTypes() {
+		types  = new Object[16];
+		size   = 0;
+		ids    = new HashMap<Object, Integer>();
+		arrays = new HashMap<TypesKey, int[]>();
+	}
+
+	/**
+	 * Interns a list of types, which is in {@link org.objectweb.asm.commons.AnalyzerAdapter}
+	 * format. Labels (uninitialized types) are transformed as in
+	 * {@link FrameData#transformFrameList(List, Map)}.
+	 *
+	 * @param frameList list of types
+	 * @param uninitializedTypes map used to translate labels to Strings
+	 * @return interned array of type ids (must not be modified)
+	 */
+	int[] intern(List<Object> frameList, Map<Label, String> uninitializedTypes) {
+		if (frameList.isEmpty())
+			return NO_TYPES;
+
+		int[] array = new int[frameList.size()];
+		for (int i = 0;  i < array.length;  ++i)
+			array[i] = intern(FrameData.transformType(frameList.get(i), uninitializedTypes));
+
+		return intern(array);
+	}
+
+	/**
+	 * Interns an array of type ids.
+	 *
+	 * @param array array of type ids in this table (must not be modified later)
+	 * @return interned array of type ids (must not be modified)
+	 */
+	int[] intern(int[] array) {
+		assert ids != null : "sealed frame types";
+
+		if (array.length == 0)
+			return NO_TYPES;
+
+		TypesKey key      = new TypesKey(array);
+		int[]    interned = arrays.get(key);
+		if (interned == null) {
+			arrays.put(key, array);
+			interned = array;
+		}
+
+		return interned;
+	}
+
+	/**
+	 * Interns a type.
+	 *
+	 * @param type type in {@link FrameData} format (without labels)
+	 * @return type id
+	 */
+	int intern(Object type) {
+		assert ids != null : "sealed frame types";
+
+		Integer id = ids.get(type);
+		if (id == null) {
+			if (size == types.length)
+				types = Arrays.copyOf(types, size * 2);
+
+			id = size;
+			types[size++] = type;
+			ids.put(type, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * @param id type id
+	 * @return type with the given id
+	 */
+	Object get(int id) {
+		return types[id];
+	}
+
+	/**
+	 * Releases the lookup maps. The table cannot be modified afterwards.
+	 */
+	void seal() {
+		if (ids != null) {
+			types  = Arrays.copyOf(types, size);
+			ids    = null;
+			arrays = null;
+		}
+	}
+
+	// Key for arrays interning
+	private static class TypesKey {
+		private final int[] array;
+		private final int   hash;
+
+		public TypesKey(int[] array) {
+			this.array = array;
+			hash       = Arrays.hashCode(array);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof TypesKey)  &&  Arrays.equals(array, ((TypesKey) obj).array);
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+package esi.bc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.EmptyVisitor;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Digest of a method's code, normalized for the name of its class.
+ *
+ * Two methods have equal digests if they have the same instructions,
+ * try-catch blocks and frames, where references to the owner class are
+ * replaced by a placeholder. Thus, methods of classes that differ only in
+ * name (e.g., individuals with different generated names) have equal
+ * digests. Labels are identified by the number of preceding instructions,
+ * and debug information and maximal stack and locals are ignored.
+ *
+ * The digest is a SHA-1 hash of the normalized code, so equal digests
+ * imply equal code for all practical purposes.
+ */
+public final class MethodDigest {
+
+	private static final String DIGEST_ALGORITHM = "SHA-1";
+
+	// Placeholder for the owner class name ('.' is not allowed in internal names)
+	private static final String OWNER_PLACEHOLDER = ".";
+
+	private final byte[] digest;
+	private final int    hash;
+
+	private MethodDigest(byte[] digest) {
+		this.digest = digest;
+		hash        = Arrays.hashCode(digest);
+	}
+
+	/**
+	 * Computes the digest of a method in a class.
+	 *
+	 * @param reader class reader
+	 * @param method method to digest
+	 * @return method digest
+	 * @throws IllegalArgumentException if the method is missing
+	 */
+	public static MethodDigest digest(ClassReader reader, Method method) {
+		DigestingVisitor visitor = new DigestingVisitor(method);
+		reader.accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.EXPAND_FRAMES);
+
+		return visitor.getDigest();
+	}
+
+	/**
+	 * Computes the digest of a method in a class node. If the node was read
+	 * with {@link ClassReader#EXPAND_FRAMES}, the digest is the same as
+	 * with {@link #digest(ClassReader, Method)}.
+	 *
+	 * @param cn class node
+	 * @param method method to digest
+	 * @return method digest
+	 * @throws IllegalArgumentException if the method is missing
+	 */
+	public static MethodDigest digest(ClassNode cn, Method method) {
+		DigestingVisitor visitor = new DigestingVisitor(method);
+		cn.accept(visitor);
+
+		return visitor.getDigest();
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof MethodDigest)  &&  Arrays.equals(digest, ((MethodDigest) obj).digest);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b: digest)
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+		return sb.toString();
+	}
+
+	/**
+	 * Visitor that collects normalized tokens of the designated method.
+	 * Labels are resolved to instruction counts at the end of the method,
+	 * since jumps can refer to labels that were not visited yet.
+	 */
+	private static class DigestingVisitor extends EmptyVisitor {
+
+		private final Method       method;
+
+		private Remapper           remapper;
+		private boolean            inMethod;
+
+		// Tokens of the method (Integers, Strings and Labels)
+		private final List<Object> tokens;
+
+		// Label -> number of preceding instructions
+		private final Map<Label, Integer> labels;
+		private int                instructions;
+
+		private MethodDigest       result;
+
+		public DigestingVisitor(Method method) {
+			this.method = method;
+			tokens      = new ArrayList<Object>();
+			labels      = new HashMap<Label, Integer>();
+		}
+
+		public MethodDigest getDigest() {
+			if (result == null)
+				throw new IllegalArgumentException("Unable to locate method " + method);
+
+			return result;
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature,
+				String superName, String[] interfaces) {
+			remapper = new SimpleRemapper(name, OWNER_PLACEHOLDER);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc,
+				String signature, String[] exceptions) {
+			if (! method.equals(new Method(name, desc)))
+				return null;
+
+			inMethod = true;
+			return this;
+		}
+
+		// Annotations are ignored (and must not reach visitEnd)
+		@Override
+		public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			return null;
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+			return null;
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			token(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			token(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			token(opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			token(opcode, remapper.mapType(type));
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			token(opcode, remapper.mapType(owner), name, remapper.mapDesc(desc));
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+			token(opcode, remapper.mapType(owner), name, remapper.mapMethodDesc(desc));
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			token(opcode, label);
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			labels.put(label, instructions);
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			Object value = remapper.mapValue(cst);
+			token(Opcodes.LDC, value.getClass().getName(), value.toString());
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			token(Opcodes.IINC, var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] targets) {
+			token(Opcodes.TABLESWITCH, min, max, dflt);
+			tokens.addAll(Arrays.asList(targets));
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] targets) {
+			token(Opcodes.LOOKUPSWITCH, dflt, keys.length);
+			for (int i = 0;  i < keys.length;  ++i) {
+				tokens.add(keys[i]);
+				tokens.add(targets[i]);
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			token(Opcodes.MULTIANEWARRAY, remapper.mapDesc(desc), dims);
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			// Not an instruction (type can be null)
+			tokens.add(-1);
+			tokens.add(start);
+			tokens.add(end);
+			tokens.add(handler);
+			tokens.add((type == null)  ?  ""  :  remapper.mapType(type));
+		}
+
+		@Override
+		public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+			// Not an instruction
+			tokens.add(-2);
+			frameTypes(nLocal, local);
+			frameTypes(nStack, stack);
+		}
+
+		@Override
+		public void visitEnd() {
+			if (inMethod) {
+				inMethod = false;
+				result   = new MethodDigest(computeDigest());
+			}
+		}
+
+		// Adds an instruction
+		private void token(int opcode, Object... operands) {
+			++instructions;
+			tokens.add(opcode);
+			tokens.addAll(Arrays.asList(operands));
+		}
+
+		// Adds frame types (Integers, internal names and Labels)
+		private void frameTypes(int n, Object[] types) {
+			tokens.add(n);
+			for (int i = 0;  i < n;  ++i)
+				tokens.add((types[i] instanceof String)  ?  remapper.mapType((String) types[i])  :  types[i]);
+		}
+
+		private byte[] computeDigest() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream      out   = new DataOutputStream(bytes);
+
+			try {
+				for (Object token: tokens) {
+					if (token instanceof Label)
+						// Unresolved labels (e.g., of uninitialized types) do not occur in code
+						out.writeInt(labels.get(token));
+					else if (token instanceof Integer) {
+						out.writeByte('I');
+						out.writeInt((Integer) token);
+					}
+					else {
+						out.writeByte('S');
+						out.writeUTF(token.toString());
+					}
+				}
+
+				out.flush();
+				return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes.toByteArray());
+			} catch (IOException e) {
+				throw new Error("Unexpected I/O error", e);
+			} catch (NoSuchAlgorithmException e) {
+				throw new Error("Unexpected: " + DIGEST_ALGORITHM + " is not available", e);
+			}
+		}
+	}
+
+}
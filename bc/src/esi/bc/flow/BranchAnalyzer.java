@@ -1,6 +1,7 @@
 package esi.bc.flow;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +15,10 @@ import esi.bc.AnalyzedMethodNode;
 /**
  * Code sections without outgoing / without incoming branches.
  *
+ * Branch analyzers of a method node can be shared with
+ * {@link #getInstance(AnalyzedMethodNode, boolean)}, in which
+ * case the sorted sections are computed only once.
+ *
  * @author Michael Orlov
  */
 public class BranchAnalyzer implements Iterable<CodeSection> {
@@ -24,6 +29,35 @@ public class BranchAnalyzer implements Iterable<CodeSection> {
 	private final int[]	offsets;
 	private final int[]	backOffsets;
 
+	// Memoized result of getSortedSections()
+	private volatile Map<Integer, List<CodeSection>> sortedSections;
+
+	/**
+	 * Returns the (possibly cached) branch analyzer of a method node.
+	 * Analyzers are cached in the {@link SectionsCache} of the node,
+	 * and are thus shared with copies of the node.
+	 *
+	 * @param methodNode analyzed method node
+	 * @param incoming whether to consider incoming branches instead of outgoing
+	 * @return shared branch analyzer
+	 */
+	public static BranchAnalyzer getInstance(AnalyzedMethodNode methodNode, boolean incoming) {
+		SectionsCache  cache    = methodNode.getSectionsCache();
+		BranchAnalyzer analyzer = incoming ? cache.destinationBranches : cache.sourceBranches;
+
+		// Concurrent computations are harmless
+		if (analyzer == null) {
+			analyzer = new BranchAnalyzer(methodNode, incoming);
+
+			if (incoming)
+				cache.destinationBranches = analyzer;
+			else
+				cache.sourceBranches      = analyzer;
+		}
+
+		return analyzer;
+	}
+
 	/**
 	 * Creates a branch analyzer.
 	 *
@@ -190,9 +224,22 @@ public class BranchAnalyzer implements Iterable<CodeSection> {
 	}
 
 	/**
+	 * Returns all legal sections, sorted by size. The result is
+	 * computed once, and cannot be modified.
+	 *
 	 * @return all legal sections, sorted by size
 	 */
 	public Map<Integer, List<CodeSection>> getSortedSections() {
+		Map<Integer, List<CodeSection>> map = sortedSections;
+
+		// Concurrent computations are harmless
+		if (map == null)
+			sortedSections = map = computeSortedSections();
+
+		return map;
+	}
+
+	private Map<Integer, List<CodeSection>> computeSortedSections() {
 		Map<Integer, List<CodeSection>> map = new TreeMap<Integer, List<CodeSection>>();
 
 		for (CodeSection section: this) {
@@ -209,7 +256,43 @@ public class BranchAnalyzer implements Iterable<CodeSection> {
 			list.add(section);
 		}
 
-		return map;
+		for (Map.Entry<Integer, List<CodeSection>> entry: map.entrySet())
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Returns the minimal legal section that contains [start,end].
+	 * Among enclosing sections, the one with the latest start is chosen,
+	 * and then the shortest one.
+	 *
+	 * Running time is linear in the extension length for each tried start.
+	 *
+	 * @param start range start, inclusive
+	 * @param end range end, inclusive (can be start-1)
+	 * @return enclosing legal section, or <code>null</code> if there is none
+	 */
+	public CodeSection getEnclosingSection(int start, int end) {
+		if (start < 0  ||  start > end+1  ||  end >= offsets.length)
+			return null;
+
+		for (int sectionStart = start;  sectionStart >= 0;  --sectionStart) {
+			// Legal sections starting at sectionStart, in increasing size
+			int sectionEnd = sectionStart - 1;
+			while (sectionEnd < end) {
+				sectionEnd = extendRange(sectionStart, sectionEnd, offsets, backOffsets);
+
+				// [end] is at limit, or backjump before sectionStart
+				if (sectionEnd == -1)
+					break;
+			}
+
+			if (sectionEnd >= end)
+				return new CodeSection(method, sectionStart, sectionEnd);
+		}
+
+		return null;
 	}
 
 	/**
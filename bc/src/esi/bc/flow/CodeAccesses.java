@@ -1,11 +1,8 @@
 package esi.bc.flow;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
-import java.util.TreeSet;
 
 import org.objectweb.asm.commons.Method;
 
@@ -16,6 +13,10 @@ import esi.bc.FrameData;
  * Frames actions computation for a given range
  * that uses control flow.
  *
+ * Results are memoized in the method's {@link SectionsCache},
+ * so repeated queries of the same section (e.g., by different
+ * crossover attempts on the same individual) are not recomputed.
+ *
  * @author Michael Orlov
  */
 public class CodeAccesses {
@@ -92,6 +93,19 @@ public class CodeAccesses {
 		if (end == method.instructions.size()-1)
 			return null;
 
+		// Memoized result (including null)
+		SectionsCache cache = method.getSectionsCache();
+		long          key   = SectionsCache.key(start, end, useParams);
+		if (cache.contains(key))
+			return cache.get(key);
+
+		FrameActions result = computeSection(start, end, useParams);
+		cache.put(key, result);
+		return result;
+	}
+
+	// Computes (non-empty) section actions, with the same contract as getSection()
+	private FrameActions computeSection(int start, int end, boolean useParams) {
 		FrameData before = method.getFrameData(start);
 		FrameData after  = method.getFrameData(end + 1);
 
@@ -104,20 +118,21 @@ public class CodeAccesses {
 		// Has a transition to [end]+1
 		boolean hasEndTransition = false;
 
-		// Per-instruction sets of incoming indexes
+		// Per-instruction sorted sets of incoming indexes (allocated on demand)
 		// NOTE: it is not precomputed in AnalyzedMethodNode, since we
 		// only want relevant incoming branches.
-		List<Set<Integer>> incoming = new ArrayList<Set<Integer>>(actions.length);
-		for (int i = 0;  i < actions.length;  ++i)
-			incoming.add(new TreeSet<Integer>());
+		int[][] incoming      = new int[actions.length][];
+		int[]   incomingSizes = new int[actions.length];
 
-		// BFS-style...
-		Queue<Integer> q = new LinkedList<Integer>();
-		q.add(start);
+		// BFS-style... (queue is a growable array, head <= tail)
+		int[] q    = new int[Math.max(16, actions.length)];
+		int   head = 0;
+		int   tail = 0;
+		q[tail++] = start;
 
-		while (! q.isEmpty()) {
+		while (head != tail) {
 			// Index of current node
-			int index = q.remove();
+			int index = q[head++];
 
 			// Current (single) frame action
 			FrameActions next = method.getFrameActions(index);
@@ -126,12 +141,13 @@ public class CodeAccesses {
 				continue;
 
 			// Source (already combined) frame actions
-			Set<Integer> incomingIndexes = incoming.get(index);
-			assert index == start  ||  !incomingIndexes.isEmpty();
+			int[] incomingIndexes = incoming[index];
+			int   incomingSize    = incomingSizes[index];
+			assert index == start  ||  incomingSize != 0;
 
-			List<FrameActions> first = new ArrayList<FrameActions>(incomingIndexes.size());
-			for (int inIndex: incomingIndexes)
-				first.add(actions[inIndex]);
+			List<FrameActions> first = new ArrayList<FrameActions>(incomingSize + 1);
+			for (int i = 0;  i < incomingSize;  ++i)
+				first.add(actions[incomingIndexes[i]]);
 
 			// Possibly simulate parameter writes
 			if (useParams  &&  index == start)
@@ -160,11 +176,20 @@ public class CodeAccesses {
 				for (int dest: method.getNextIndexes(index)) {
 					// Do not add node in [end]->[end]+1 transition
 					if (!(index == end  &&  dest == end + 1)) {
-						// Add destination to queue
-						q.add(dest);
+						// Add destination to queue (compact or grow if full)
+						if (tail == q.length) {
+							if (head >= q.length / 2) {
+								System.arraycopy(q, head, q, 0, tail - head);
+								tail -= head;
+								head  = 0;
+							}
+							else
+								q = Arrays.copyOf(q, q.length * 2);
+						}
+						q[tail++] = dest;
 
 						// Destination should know about this source
-						incoming.get(dest).add(index);
+						addIncoming(incoming, incomingSizes, dest, index);
 					}
 					// Only [end]->[end]+1 is "end transition"
 					else
@@ -180,6 +205,27 @@ public class CodeAccesses {
 		return actions[end];
 	}
 
+	// Adds source to the sorted incoming indexes of destination (if not present)
+	private static void addIncoming(int[][] incoming, int[] incomingSizes, int dest, int source) {
+		int[] indexes = incoming[dest];
+		int   size    = incomingSizes[dest];
+
+		if (indexes == null)
+			indexes = incoming[dest] = new int[4];
+
+		int pos = Arrays.binarySearch(indexes, 0, size, source);
+		if (pos >= 0)
+			return;
+		pos = -pos - 1;
+
+		if (size == indexes.length)
+			indexes = incoming[dest] = Arrays.copyOf(indexes, size * 2);
+
+		System.arraycopy(indexes, pos, indexes, pos + 1, size - pos);
+		indexes[pos]        = source;
+		incomingSizes[dest] = size + 1;
+	}
+
 	public Method getMethod() {
 		return new Method(method.name, method.desc);
 	}
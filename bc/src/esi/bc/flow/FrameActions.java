@@ -1,11 +1,10 @@
 package esi.bc.flow;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.objectweb.asm.Opcodes;
 
@@ -17,6 +16,9 @@ import esi.bc.util.TypeRep;
  *
  * Instances of this class are immutable.
  *
+ * Variables accesses are kept as bit sets of variable indexes,
+ * and are converted to maps of types only by the getters.
+ *
  * @author Kfir Wolfson
  * @author Michael Orlov
  */
@@ -26,6 +28,9 @@ public class FrameActions {
 
 	private static final FrameActions emptyAction;
 
+	// Shared empty variables set (never modified)
+	private static final BitSet NO_VARS = new BitSet(0);
+
 	private       FrameData		frameBefore;
 	private       FrameData		frameAfter;
 	private final int			stackDelta;
@@ -33,10 +38,10 @@ public class FrameActions {
 			// Package-level access for testing
 			final int       	popDepth;
 
-	// These sets are immutable!
-	private final Set<Integer>	varsRead;
-	private final Set<Integer>	varsWritten;
-	private final Set<Integer>	varsWrittenAlways;
+	// These sets are not modified after construction!
+	private final BitSet		varsRead;
+	private final BitSet		varsWritten;
+	private final BitSet		varsWrittenAlways;
 
 	static {
 		FrameData emptyFrame = new FrameData(Collections.emptyList());
@@ -60,15 +65,27 @@ public class FrameActions {
 		frameBefore = before;
 		frameAfter  = after;
 
-		stackDelta  = after.getStack().size() - before.getStack().size();
+		stackDelta  = after.getStackSize() - before.getStackSize();
 
 		// "before" comes from the current instruction
 		popDepth          = before.getPopDepth();
-		varsRead          = before.getVarsRead();
-		varsWritten       = before.getVarsWritten();
+		varsRead          = getVars(before, true);
+		varsWritten       = getVars(before, false);
 		varsWrittenAlways = varsWritten;
 	}
 
+	// Variables read or written by the instruction of frame data
+	private static BitSet getVars(FrameData frame, boolean read) {
+		BitSet vars = new BitSet();
+
+		if (read)
+			frame.addVarsRead(vars);
+		else
+			frame.addVarsWritten(vars);
+
+		return vars.isEmpty()  ?  NO_VARS  :  vars;
+	}
+
 	/**
 	 * Creates a frames actions object from successive frames actions,
 	 * where the first frames actions can have several possibilities.
@@ -113,14 +130,14 @@ public class FrameActions {
 
 			// read?    <- union of vars read? in first frames
 			// written! <- intersection of vars written! in first frames
-			varsRead          = new TreeSet<Integer>(sources.get(0).varsRead);
-			varsWrittenAlways = new TreeSet<Integer>(sources.get(0).varsWrittenAlways);
+			BitSet read          = (BitSet) sources.get(0).varsRead.clone();
+			BitSet writtenAlways = (BitSet) sources.get(0).varsWrittenAlways.clone();
 
 			boolean skip = true;
 			for (FrameActions first: sources) {
 				if (!skip) {
-					varsRead.addAll(first.varsRead);
-					varsWrittenAlways.retainAll(first.varsWrittenAlways);
+					read.or(first.varsRead);
+					writtenAlways.and(first.varsWrittenAlways);
 				}
 				else
 					skip = false;
@@ -128,22 +145,26 @@ public class FrameActions {
 
 			// written! <- additional intersection of vars written! in former next
 			if (formerNext != null)
-				varsWrittenAlways.retainAll(formerNext.varsWrittenAlways);
+				writtenAlways.and(formerNext.varsWrittenAlways);
 
 			// read? <- read? + ((vars read? in next frame) - (intersection of vars written! in first frames))
-			Set<Integer> readNext = new TreeSet<Integer>(next.varsRead);
-			readNext.removeAll(varsWrittenAlways);
-			varsRead.addAll(readNext);
+			BitSet readNext = (BitSet) next.varsRead.clone();
+			readNext.andNot(writtenAlways);
+			read.or(readNext);
 
 			// written! <- written! + (vars written! in next frame))
-			varsWrittenAlways.addAll(next.varsWrittenAlways);
+			writtenAlways.or(next.varsWrittenAlways);
 
 			// writes <- vars written in next frame
 			// writes <- writes + ((vars written in any first frame) -? writes)
 			// (thus order doesn't matter)
-			varsWritten = new TreeSet<Integer>(next.varsWritten);
+			BitSet written = (BitSet) next.varsWritten.clone();
 			for (FrameActions first: sources)
-				varsWritten.addAll(first.varsWritten);
+				written.or(first.varsWritten);
+
+			varsRead          = read;
+			varsWritten       = written;
+			varsWrittenAlways = writtenAlways;
 		}
 	}
 
@@ -168,6 +189,17 @@ public class FrameActions {
 			&& varsWrittenAlways.equals(other.varsWrittenAlways);
 	}
 
+	/**
+	 * Checks whether pop depth exceeds the "before" stack, which
+	 * is possible for code sections that start in unreachable code.
+	 * Stack pops and pushes are undefined in that case.
+	 *
+	 * @return whether pop depth is greater than "before" stack
+	 */
+	public boolean isStackUnderflow() {
+		return popDepth > frameBefore.getStackSize();
+	}
+
 	/**
 	 * @return the stack pops (up to pop depth)
 	 */
@@ -195,10 +227,11 @@ public class FrameActions {
 	 * @return the stack pops, or null
 	 */
 	public List<Object> getStackPops(int minPopDepth) {
-		List<Object> beforeStack = frameBefore.getStack();
-		if (minPopDepth > beforeStack.size())
+		if (minPopDepth > frameBefore.getStackSize())
 			return null;
 
+		List<Object> beforeStack = frameBefore.getStack();
+
 		return beforeStack.subList(beforeStack.size() - Math.max(popDepth, minPopDepth), beforeStack.size());
 	}
 
@@ -212,10 +245,10 @@ public class FrameActions {
 	 * @return the stack pushes, or null
 	 */
 	public List<Object> getStackPushes(int minPopDepth) {
-		List<Object> beforeStack = frameBefore.getStack();
-		if (minPopDepth > beforeStack.size())
+		if (minPopDepth > frameBefore.getStackSize())
 			return null;
 
+		List<Object> beforeStack = frameBefore.getStack();
 		List<Object> afterStack  = frameAfter.getStack();
 
 		return afterStack.subList(beforeStack.size() - Math.max(popDepth, minPopDepth), afterStack.size());
@@ -230,7 +263,7 @@ public class FrameActions {
 	 * @return map of read variables to types
 	 */
 	public Map<Integer, Object> getVarsRead() {
-		Map<Integer, Object> reads = varsToMap(varsRead, frameBefore.getLocals());
+		Map<Integer, Object> reads = varsToMap(varsRead, frameBefore);
 		assert !reads.containsValue(BOGUS);
 
 		return reads;
@@ -245,7 +278,7 @@ public class FrameActions {
 	 * @return map of written variables to types
 	 */
 	public Map<Integer, Object> getVarsWritten() {
-		return varsToMap(varsWritten, frameAfter.getLocals());
+		return varsToMap(varsWritten, frameAfter);
 	}
 
 	/**
@@ -257,16 +290,16 @@ public class FrameActions {
 	 * @return map of written variables to types
 	 */
 	public Map<Integer, Object> getVarsWrittenAlways() {
-		return varsToMap(varsWrittenAlways, frameAfter.getLocals());
+		return varsToMap(varsWrittenAlways, frameAfter);
 	}
 
 	// Helper for variable getters
-	private static Map<Integer, Object> varsToMap(Set<Integer> vars, List<Object> locals) {
+	private static Map<Integer, Object> varsToMap(BitSet vars, FrameData frame) {
 		Map<Integer, Object> map = new TreeMap<Integer, Object>();
 
-		for (int var: vars) {
-			if (var < locals.size())
-				map.put(var, locals.get(var));
+		for (int var = vars.nextSetBit(0);  var >= 0;  var = vars.nextSetBit(var + 1)) {
+			if (var < frame.getLocalsSize())
+				map.put(var, frame.getLocal(var));
 			else
 				// Should happen with varsWritten only
 				map.put(var, Opcodes.TOP);
@@ -368,16 +401,22 @@ public class FrameActions {
 	}
 
 	// Returns set difference formatted as -[a, b, c]+[d, e, f]
-	private String setDifference(Set<?> before, Set<?> after, boolean canShrink) {
-		Set<?> beforeCopy = new TreeSet<Object>(before);
-		Set<?> afterCopy  = new TreeSet<Object>(after);
+	private String setDifference(BitSet before, BitSet after, boolean canShrink) {
+		BitSet beforeCopy = (BitSet) before.clone();
+		BitSet afterCopy  = (BitSet) after.clone();
 
-		beforeCopy.removeAll(after);
-		afterCopy.removeAll(before);
+		beforeCopy.andNot(after);
+		afterCopy.andNot(before);
 
 		assert canShrink  ||  beforeCopy.isEmpty();
-		return (beforeCopy.isEmpty()  ?  ""  :  ("-" + beforeCopy))
-			 + (afterCopy.isEmpty()   ?  ""  :  ("+" + afterCopy));
+		return (beforeCopy.isEmpty()  ?  ""  :  ("-" + bitsToString(beforeCopy)))
+			 + (afterCopy.isEmpty()   ?  ""  :  ("+" + bitsToString(afterCopy)));
+	}
+
+	// Formats bit set as a set of integers: [a, b, c]
+	private static String bitsToString(BitSet bits) {
+		String str = bits.toString();
+		return "[" + str.substring(1, str.length()-1) + "]";
 	}
 
 	/**
@@ -398,9 +437,9 @@ public class FrameActions {
 	 * @param after frame state before the first instruction after the segment
 	 */
 	public void setFrameData(FrameData before, FrameData after) {
-		assert after.getStack().size() - before.getStack().size() == stackDelta;
+		assert after.getStackSize() - before.getStackSize() == stackDelta;
 		assert frameBefore == null  ||  frameBefore == before;
-		assert frameAfter  == null  ||  frameAfter.getStack().size() == after.getStack().size();
+		assert frameAfter  == null  ||  frameAfter.getStackSize() == after.getStackSize();
 
 		frameBefore = before;
 		frameAfter  = after;
@@ -0,0 +1,84 @@
+package esi.bc.flow;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import esi.util.SpecializedConstants;
+
+/**
+ * Memoized frames actions of code sections in a method,
+ * as computed by {@link CodeAccesses}.
+ *
+ * The cache is attached to an analyzed method node, and is
+ * shared by all code accesses analyzers of the method (and its
+ * copies). Since frames actions are not modified after the
+ * computation, cached results are returned as is.
+ *
+ * The cache is thread-safe. Concurrent computations of the same
+ * section may happen, in which case the first result is kept.
+ *
+ * The cache also holds other memoized per-method crossover data:
+ * {@link SectionsIndex}es and {@link BranchAnalyzer}s.
+ *
+ * <p>
+ * Constants:
+ * <ul>
+ * <li><code>class.SectionsCache.max-sections</code>: maximum number
+ * of cached sections per method (further sections are not cached)
+ * </ul>
+ */
+public class SectionsCache {
+
+	private static final int MAX_SECTIONS = SpecializedConstants.getInt(SectionsCache.class, "max-sections");
+
+	// Marks sections with unreachable [end] or [end]+1
+	private static final Object NO_ACTIONS = new Object();
+
+	// Section key -> frames actions (or NO_ACTIONS)
+	private final ConcurrentMap<Long, Object> sections;
+
+	// Crossover sections indexes (computed on demand by SectionsIndex)
+	volatile SectionsIndex destinationIndex;
+	volatile SectionsIndex sourceIndex;
+
+	// Branch analyzers (computed on demand by BranchAnalyzer)
+	volatile BranchAnalyzer destinationBranches;
+	volatile BranchAnalyzer sourceBranches;
+
+	/**
+	 * Creates an empty sections cache.
+	 */
+	public SectionsCache() {
+		sections = new ConcurrentHashMap<Long, Object>();
+	}
+
+	/**
+	 * @return number of cached sections
+	 */
+	public int size() {
+		return sections.size();
+	}
+
+	// Key of [start, end] section (end >= start-1 >= -1)
+	static long key(int start, int end, boolean useParams) {
+		return ((long) start << 33)  |  ((long) (end + 1) << 1)  |  (useParams ? 1 : 0);
+	}
+
+	// Whether section with given key is cached
+	boolean contains(long key) {
+		return sections.containsKey(key);
+	}
+
+	// Cached actions (null if section has no actions)
+	FrameActions get(long key) {
+		Object actions = sections.get(key);
+		return (actions == NO_ACTIONS)  ?  null  :  (FrameActions) actions;
+	}
+
+	// Caches actions, null meaning that section has no actions
+	void put(long key, FrameActions actions) {
+		if (sections.size() < MAX_SECTIONS)
+			sections.putIfAbsent(key, (actions == null)  ?  NO_ACTIONS  :  actions);
+	}
+
+}
@@ -0,0 +1,144 @@
+package esi.bc.flow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import esi.bc.AnalyzedMethodNode;
+import esi.bc.FrameData;
+
+/**
+ * Index of crossover code sections of a method by their
+ * operand stack signature.
+ *
+ * Sections are keyed by stack delta (pushes minus pops), which is computed
+ * from frames before and after the section, without flow analysis. Replacing
+ * alpha with beta in {@link esi.bc.xo.CompatibleCrossover} is only
+ * stack-compatible if both have the same delta, so compatible pairs are always
+ * found under the same key. Sections with unreachable [start] or [end]+1 have
+ * no frames actions, and are not indexed.
+ *
+ * Indexes are computed once per method node (and are shared with its copies,
+ * like {@link SectionsCache}).
+ */
+public class SectionsIndex {
+
+	// Stack delta -> section size -> sections
+	private final Map<Integer, Map<Integer, List<CodeSection>>> sections;
+
+	// Section key (see SectionsCache) -> stack delta
+	private final Map<Long, Integer> deltas;
+
+	/**
+	 * Returns the (possibly cached) index of destination sections,
+	 * which are sections without incoming branches.
+	 *
+	 * @param method analyzed method node
+	 * @return index of destination (alpha) sections
+	 */
+	public static SectionsIndex getDestinationIndex(AnalyzedMethodNode method) {
+		SectionsCache  cache = method.getSectionsCache();
+		SectionsIndex  index = cache.destinationIndex;
+
+		// Concurrent computations are harmless
+		if (index == null)
+			cache.destinationIndex = index = new SectionsIndex(method, true);
+
+		return index;
+	}
+
+	/**
+	 * Returns the (possibly cached) index of source sections,
+	 * which are sections without outgoing branches.
+	 *
+	 * @param method analyzed method node
+	 * @return index of source (beta) sections
+	 */
+	public static SectionsIndex getSourceIndex(AnalyzedMethodNode method) {
+		SectionsCache  cache = method.getSectionsCache();
+		SectionsIndex  index = cache.sourceIndex;
+
+		// Concurrent computations are harmless
+		if (index == null)
+			cache.sourceIndex = index = new SectionsIndex(method, false);
+
+		return index;
+	}
+
+	/**
+	 * Creates an index of sections.
+	 *
+	 * @param method analyzed method node
+	 * @param destination whether destination (alpha) sections are indexed,
+	 *        otherwise source (beta) sections
+	 */
+	SectionsIndex(AnalyzedMethodNode method, boolean destination) {
+		sections = new TreeMap<Integer, Map<Integer, List<CodeSection>>>();
+		deltas   = new HashMap<Long, Integer>();
+
+		for (CodeSection section: BranchAnalyzer.getInstance(method, destination)) {
+			// Frames before [start] and [end]+1 are required for frames actions
+			FrameData before = method.getFrameData(section.start);
+			FrameData after  = method.getFrameData(section.end + 1);
+			if (before == null  ||  after == null)
+				continue;
+
+			// Same as pushes minus pops of section frames actions
+			int delta = after.getStackSize() - before.getStackSize();
+			deltas.put(SectionsCache.key(section.start, section.end, false), delta);
+
+			Map<Integer, List<CodeSection>> bySize = sections.get(delta);
+			if (bySize == null) {
+				bySize = new TreeMap<Integer, List<CodeSection>>();
+				sections.put(delta, bySize);
+			}
+
+			List<CodeSection> list = bySize.get(section.size());
+			if (list == null) {
+				list = new ArrayList<CodeSection>();
+				bySize.put(section.size(), list);
+			}
+
+			list.add(section);
+		}
+	}
+
+	/**
+	 * @return stack deltas of indexed sections
+	 */
+	public Set<Integer> getStackDeltas() {
+		return Collections.unmodifiableSet(sections.keySet());
+	}
+
+	/**
+	 * Returns indexed sections with given stack delta, sorted by size,
+	 * in the format of {@link BranchAnalyzer#getSortedSections()}.
+	 * The result should not be modified.
+	 *
+	 * @param delta stack delta
+	 * @return sections by size, or <code>null</code> if there are none
+	 */
+	public Map<Integer, List<CodeSection>> getSortedSections(int delta) {
+		return sections.get(delta);
+	}
+
+	/**
+	 * @param section code section in the indexed method
+	 * @return stack delta of the section, or <code>null</code> if it is not indexed
+	 */
+	public Integer getStackDelta(CodeSection section) {
+		return deltas.get(SectionsCache.key(section.start, section.end, false));
+	}
+
+	/**
+	 * @return number of indexed sections
+	 */
+	public int size() {
+		return deltas.size();
+	}
+
+}
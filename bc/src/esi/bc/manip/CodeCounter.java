@@ -0,0 +1,88 @@
+package esi.bc.manip;
+
+import java.util.Collections;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+
+import esi.bc.AnalyzedClassNode;
+import esi.util.Config;
+
+/**
+ * A class that makes all methods in a given class countable,
+ * by inserting a given static method call at the end of each
+ * basic block. The callback receives the given argument and
+ * the number of bytecode instructions in the block.
+ *
+ * Counting is in-process, and is as cheap as the instrumentation
+ * of {@link CodeInterrupter}, since it adds one call per block
+ * rather than per instruction.
+ *
+ * The input class nodes do not have to be {@link AnalyzedClassNode}s.
+ */
+public class CodeCounter extends CodeProducer {
+
+	private static final Log log = Config.getLogger();
+
+	/**
+	 * Creates a new code counter.
+	 *
+	 * The code passes through the same pipeline as in
+	 * {@link CodeInterrupter#CodeInterrupter(String, ClassNode, String, String, int)},
+	 * with {@link CounterClassAdapter} instead of {@link InterrupterClassAdapter}.
+	 *
+	 * @param name full name of the new class ({@link Class#getName()})
+	 * @param callbackClass binary callback class name
+	 * @param callbackMethod static callback method name
+	 * @param callbackArg first argument to pass to the callback method
+	 * @param cn source class node
+	 */
+	public CodeCounter(String name, ClassNode cn, String callbackClass, String callbackMethod, int callbackArg) {
+		this(name, new ClassReader(toByteArray(cn)), callbackClass, callbackMethod, callbackArg);
+	}
+
+	/**
+	 * Creates a new code counter.
+	 *
+	 * The code passes through the same pipeline as in
+	 * {@link CodeInterrupter#CodeInterrupter(String, ClassReader, String, String, int)},
+	 * with {@link CounterClassAdapter} instead of {@link InterrupterClassAdapter}.
+	 *
+	 * @param name full name of the new class ({@link Class#getName()})
+	 * @param callbackClass binary callback class name
+	 * @param callbackMethod static callback method name
+	 * @param callbackArg first argument to pass to the callback method
+	 * @param cr class reader
+	 */
+	public CodeCounter(String name, ClassReader cr, String callbackClass, String callbackMethod, int callbackArg) {
+		super(name);
+
+		String internalName    = name.replace('.', '/');
+		String oldInternalName = cr.getClassName();
+
+		log.trace("Counting: SRC=" + oldInternalName.replace('/', '.') + ", RES="  + name);
+
+		// COMPUTE_FRAMES implies COMPUTE_MAXS (evolved code can have stale frames)
+		ClassWriter cw = new RemappingClassWriter(ClassWriter.COMPUTE_FRAMES, oldInternalName, internalName);
+
+		// Pass through renamer after transforming
+		Map<String, String> namesMap = Collections.singletonMap(oldInternalName, internalName);
+		ClassAdapter renamingAdapter = new RemappingClassAdapter(cw, new SimpleRemapper(namesMap));
+
+		// Make methods countable using the counter adapter
+		ClassAdapter counterAdapter = new CounterClassAdapter(renamingAdapter, callbackClass, callbackMethod, callbackArg);
+
+		// Eliminate unreachable code before frames are computed
+		ClassAdapter dceAdapter = new EliminatingClassAdapter(counterAdapter);
+		cr.accept(dceAdapter, ClassReader.SKIP_FRAMES);
+
+		setBytes(cw.toByteArray());
+	}
+
+}
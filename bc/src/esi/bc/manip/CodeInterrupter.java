@@ -1,19 +1,16 @@
 package esi.bc.manip;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Collections;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 
 import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.LocalVariablesSorter;
 import org.objectweb.asm.commons.RemappingClassAdapter;
 import org.objectweb.asm.commons.SimpleRemapper;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.xml.ASMContentHandler;
 import org.objectweb.asm.xml.SAXClassAdapter;
 
 import esi.bc.AnalyzedClassNode;
@@ -40,14 +37,11 @@ public class CodeInterrupter extends CodeProducer {
 	 * The code passes through the following pipeline:
 	 * <ul>
 	 * <li> Source {@link ClassNode}
-	 * <li> {@link InterrupterClassAdapter}
-	 *        [via {@link InterrupterMethodAdapter}, frames are unaffected]
-	 * <li> {@link RemappingClassAdapter}
-	 *        [code changed: does not inherit from {@link LocalVariablesSorter}]
-	 * <li> {@link SAXClassAdapter}
+	 * <li> {@link LabelCloningClassAdapter} (or {@link SAXClassAdapter})
 	 *        [in order to preserve structure of original class nodes]
 	 *        (maxs are recomputed)
-	 * <li> Bytes array
+	 * <li> Bytes array, which passes through the pipeline of
+	 *        {@link #CodeInterrupter(String, ClassReader, String, String, int)}
 	 * </ul>
 	 *
 	 * @param name full name of the new class ({@link Class#getName()})
@@ -57,29 +51,7 @@ public class CodeInterrupter extends CodeProducer {
 	 * @param cn source class node
 	 */
 	public CodeInterrupter(String name, ClassNode cn, String callbackClass, String callbackMethod, int callbackArg) {
-		super(name);
-
-		String internalName    = name.replace('.', '/');
-		String oldInternalName = cn.name;
-
-		log.trace("Interrupting: SRC=" + oldInternalName.replace('/', '.') + ", RES="  + name);
-
-		// Pass through XML intermediate result, recomputing MAXs.
-		// This is necessary because Labels (and instructions they point to)
-		// are changed during byte code generation (instruction resizing process).
-		ByteArrayOutputStream bytesOut   = new ByteArrayOutputStream();
-		ASMContentHandler     handler    = new ASMContentHandler(bytesOut, true);
-		ClassVisitor          saxAdapter = new SAXClassAdapter(handler, false);
-
-		// Pass through renamer after transforming
-		Map<String, String> namesMap = Collections.singletonMap(oldInternalName, internalName);
-		ClassAdapter renamingAdapter = new RemappingClassAdapter(saxAdapter, new SimpleRemapper(namesMap));
-
-		// Make methods interruptible using the interrupter adapter
-		ClassAdapter interrupterAdapter = new InterrupterClassAdapter(renamingAdapter, callbackClass, callbackMethod, callbackArg);
-		cn.accept(interrupterAdapter);
-
-		setBytes(bytesOut.toByteArray());
+		this(name, new ClassReader(toByteArray(cn)), callbackClass, callbackMethod, callbackArg);
 	}
 
 	/**
@@ -88,13 +60,16 @@ public class CodeInterrupter extends CodeProducer {
 	 * The code passes through the following pipeline:
 	 * <ul>
 	 * <li> Source {@link ClassReader}
-	 *        [debug information is not skipped]
+	 *        [debug information is not skipped, frames are skipped]
+	 * <li> {@link EliminatingClassAdapter}
+	 *        [unreachable code in all methods is eliminated]
 	 * <li> {@link InterrupterClassAdapter}
-	 *        [via {@link InterrupterMethodAdapter}, frames are unaffected]
+	 *        [via {@link InterrupterMethodAdapter}]
 	 * <li> {@link RemappingClassAdapter}
 	 *        [code changed: does not inherit from {@link LocalVariablesSorter}]
-	 * <li> {@link ClassWriter}
-	 *        (maxs are recomputed)
+	 * <li> {@link RemappingClassWriter}
+	 *        (frames and maxs are recomputed, since evolved code can
+	 *        have stale frames)
 	 * <li> Bytes array
 	 * </ul>
 	 *
@@ -112,8 +87,8 @@ public class CodeInterrupter extends CodeProducer {
 
 		log.trace("Interrupting: SRC=" + oldInternalName.replace('/', '.') + ", RES="  + name);
 
-		// Need to recompute MAXs
-		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		// COMPUTE_FRAMES implies COMPUTE_MAXS (evolved code can have stale frames)
+		ClassWriter cw = new RemappingClassWriter(ClassWriter.COMPUTE_FRAMES, oldInternalName, internalName);
 
 		// Pass through renamer after transforming
 		Map<String, String> namesMap = Collections.singletonMap(oldInternalName, internalName);
@@ -121,7 +96,10 @@ public class CodeInterrupter extends CodeProducer {
 
 		// Make methods interruptible using the interrupter adapter
 		ClassAdapter interrupterAdapter = new InterrupterClassAdapter(renamingAdapter, callbackClass, callbackMethod, callbackArg);
-		cr.accept(interrupterAdapter, 0);
+
+		// Eliminate unreachable code before frames are computed
+		ClassAdapter dceAdapter = new EliminatingClassAdapter(interrupterAdapter);
+		cr.accept(dceAdapter, ClassReader.SKIP_FRAMES);
 
 		setBytes(cw.toByteArray());
 	}
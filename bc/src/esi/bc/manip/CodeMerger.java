@@ -1,13 +1,11 @@
 package esi.bc.manip;
 
-import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 
 import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.LocalVariablesSorter;
 import org.objectweb.asm.commons.Method;
@@ -16,7 +14,6 @@ import org.objectweb.asm.commons.SimpleRemapper;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.xml.ASMContentHandler;
 import org.objectweb.asm.xml.SAXClassAdapter;
 
 import esi.bc.AnalyzedClassNode;
@@ -36,6 +33,10 @@ public class CodeMerger extends CodeProducer {
 
 	private static final Log log = Config.getLogger();
 
+	// Destination node and section, for incremental analysis (released after use)
+	private AnalyzedClassNode parentNode;
+	private CodeSection       parentSection;
+
 	/**
 	 * Creates a new code merger.
 	 *
@@ -43,25 +44,30 @@ public class CodeMerger extends CodeProducer {
 	 * <ul>
 	 * <li> Destination {@link ClassNode}
 	 * <li> {@link MergingClassAdapter}
-	 *        [via {@link MergingMethodAdapter}, frames become invalid]
-	 * <li> {@link SAXClassAdapter}
+	 *        [via {@link MergingMethodAdapter}, frames become invalid,
+	 *         maximal stack and locals become upper bounds]
+	 * <li> {@link LabelCloningClassAdapter}
 	 *        [in order to preserve structure of original class nodes]
-	 * <li> Bytes array
-	 * <li> {@link ClassReader}
-	 *        [frames are skipped]
 	 * <li> {@link RemappingClassAdapter}
 	 *        [code changed: does not inherit from {@link LocalVariablesSorter}]
-	 * <li> {@link RemappingClassWriter}
-	 *        [frames are recomputed]
-	 * <li> {@link ClassReader}
-	 *        [frames are expanded]
 	 * <li> {@link EliminatingClassAdapter}
-	 *        [via {@link EliminatingMethodAdapter}, uses frames]
+	 *        [via {@link EliminatingMethodAdapter}, uses maximal stack and locals]
 	 * <li> {@link RemappingClassWriter}
-	 *        [frames are recomputed]
+	 *        [frames are computed]
 	 * <li> Bytes array
 	 * </ul>
 	 *
+	 * The only frames computation is in the last step, and the merged code is
+	 * serialized only once. If the original XML pipeline is selected (see
+	 * {@link CodeProducer#isXmlLabels()}), {@link SAXClassAdapter} replaces
+	 * {@link LabelCloningClassAdapter}, followed by a {@link ClassReader}
+	 * that skips frames.
+	 *
+	 * If the destination class node is an {@link AnalyzedClassNode}, the
+	 * {@link #getSharedClassNode() analyzed result} reuses its frame data where possible.
+	 * In that case, the destination node must not be modified until the result
+	 * is analyzed.
+	 *
 	 * @param name full name of the new class ({@link Class#getName()})
 	 * @param origName full name of the original class ({@link Class#getName()}),
 	 *        for type checking ({@link Class#forName(String)} must work)
@@ -90,48 +96,66 @@ public class CodeMerger extends CodeProducer {
 			log.trace("SRC node was duplicated");
 		}
 
-		// Pass through XML intermediate result.
-		// This is necessary because Labels (and instructions they point to)
-		// are changed during byte code generation (instruction resizing process).
-		ByteArrayOutputStream bytesOut   = new ByteArrayOutputStream();
-		ASMContentHandler     handler    = new ASMContentHandler(bytesOut, false);
-		ClassVisitor          saxAdapter = new SAXClassAdapter(handler, false);
-
 		// Extract source section
-		AbstractInsnNode[] srcInstructions = getSection(src, srcSection);
-
-		// Merge using the merging adapter
-		ClassAdapter mergingAdapter = new MergingClassAdapter(saxAdapter, destSection, srcInstructions);
-		dest.accept(mergingAdapter);
+		MethodNode         srcMethod       = findMethod(src, srcSection.method);
+		AbstractInsnNode[] srcInstructions = getSection(srcMethod, srcSection);
 
 		// COMPUTE_FRAMES implies COMPUTE_MAXS
 		ClassWriter writer = new RemappingClassWriter(ClassWriter.COMPUTE_FRAMES, origInternalName, internalName);
 
-		// Pass through renamer after reading
+		// Eliminate unreachable code (and GOTOs to next instruction) before frames are computed
+		ClassAdapter dceAdapter = new EliminatingClassAdapter(writer, destSection.method);
+
+		// Pass through renamer before eliminating
 		Map<String, String> namesMap = new HashMap<String, String>(2);
 		namesMap.put(dest.name, internalName);
 		namesMap.put(src.name,  internalName);
-		ClassAdapter renamingAdapter = new RemappingClassAdapter(writer, new SimpleRemapper(namesMap));
+		ClassAdapter renamingAdapter = new RemappingClassAdapter(dceAdapter, new SimpleRemapper(namesMap));
 
-		// Read while skipping frames (will be recomputed anyway)
-		ClassReader reader = new ClassReader(bytesOut.toByteArray());
-		reader.accept(renamingAdapter, ClassReader.SKIP_FRAMES);
+		// Merge using the merging adapter, without touching labels of the class nodes
+		if (isXmlLabels()) {
+			LabelsSafeWriter labelsWriter = new LabelsSafeWriter(false);
+			dest.accept(new MergingClassAdapter(labelsWriter.getVisitor(), destSection, srcInstructions,
+					srcMethod.maxStack, srcMethod.maxLocals));
 
-		// Eliminate unreachable code
-		// Frames are correct and don't need recomputation *only* when elimination
-		// removes only "simple" instructions. Removing GOTOs requires recomputation
-		// W/o GOTOs: ClassWriter  dceWriter  = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-		ClassWriter  dceWriter  = new RemappingClassWriter(ClassWriter.COMPUTE_FRAMES, origInternalName, internalName);
-		ClassAdapter dceAdapter = new EliminatingClassAdapter(dceWriter, destSection.method);
-		ClassReader  dceReader  = new ClassReader(writer.toByteArray());
-		dceReader.accept(dceAdapter, 0);
+			// Read while skipping frames (will be computed anyway)
+			new ClassReader(labelsWriter.toByteArray()).accept(renamingAdapter, ClassReader.SKIP_FRAMES);
+		}
+		else
+			dest.accept(new MergingClassAdapter(new LabelCloningClassAdapter(renamingAdapter), destSection, srcInstructions,
+					srcMethod.maxStack, srcMethod.maxLocals));
 
 		// Extract bytes (not a cheap operation)
-		setBytes(dceWriter.toByteArray());
+		setBytes(writer.toByteArray());
+
+		// Keep destination for incremental analysis
+		if (dest instanceof AnalyzedClassNode) {
+			parentNode    = (AnalyzedClassNode) dest;
+			parentSection = destSection;
+		}
 	}
 
 	/**
-	 * Duplicates a class node by passing it through {@link SAXClassAdapter}.
+	 * Analyzes the merged class incrementally, if the destination
+	 * class node was analyzed.
+	 */
+	@Override
+	protected AnalyzedClassNode analyzeClass(ClassReader reader) {
+		if (parentNode == null)
+			return super.analyzeClass(reader);
+
+		AnalyzedClassNode node = AnalyzedClassNode.readClass(reader, parentNode, parentSection);
+
+		// Don't keep destination node
+		parentNode    = null;
+		parentSection = null;
+
+		return node;
+	}
+
+	/**
+	 * Duplicates a class node by passing it through {@link LabelCloningClassAdapter}
+	 * (or {@link SAXClassAdapter}, see {@link CodeProducer#isXmlLabels()}).
 	 * The class node is assumed to have been read with
 	 * {@link ClassReader#EXPAND_FRAMES} flag.
 	 *
@@ -143,17 +167,14 @@ public class CodeMerger extends CodeProducer {
 	 * @return duplicated result
 	 */
 	public static ClassNode duplicateClassNode(ClassNode classNode) {
-		// Pass through XML intermediate result.
-		ByteArrayOutputStream bytesOut   = new ByteArrayOutputStream();
-		ASMContentHandler     handler    = new ASMContentHandler(bytesOut, false);
-		ClassVisitor          saxAdapter = new SAXClassAdapter(handler, false);
-
-		classNode.accept(saxAdapter);
+		// Write without touching labels of the class node
+		LabelsSafeWriter labelsWriter = new LabelsSafeWriter(false);
+		classNode.accept(labelsWriter.getVisitor());
 
 		// Assume classNode was read with EXPAND_FRAMES
 		// Assume classNode is actually an AnalyzedClassNode
 		// (where each NEW has a label)
-		ClassReader reader  = new ClassReader(bytesOut.toByteArray());
+		ClassReader reader  = new ClassReader(labelsWriter.toByteArray());
 		ClassNode   dupNode = new AnalyzedClassNode();
 		reader.accept(dupNode, ClassReader.EXPAND_FRAMES);
 
@@ -177,20 +198,17 @@ public class CodeMerger extends CodeProducer {
 		return dupNode;
 	}
 
-	private AbstractInsnNode[] getSection(ClassNode src, CodeSection section) {
-		// Locate source method node
-		MethodNode srcMethod = null;
-		for (Object method: src.methods) {
-			MethodNode checkMethod = (MethodNode) method;
-			if (section.method.equals(new Method(checkMethod.name, checkMethod.desc))) {
-				srcMethod = checkMethod;
-				break;
-			}
+	private static MethodNode findMethod(ClassNode src, Method method) {
+		for (Object checkMethod: src.methods) {
+			MethodNode methodNode = (MethodNode) checkMethod;
+			if (method.equals(new Method(methodNode.name, methodNode.desc)))
+				return methodNode;
 		}
 
-		if (srcMethod == null)
-			throw new IllegalArgumentException("Unable to locate source method " + section.method);
+		throw new IllegalArgumentException("Unable to locate source method " + method);
+	}
 
+	private static AbstractInsnNode[] getSection(MethodNode srcMethod, CodeSection section) {
 		// Extract relevant instructions
 		AbstractInsnNode[] instructions = new AbstractInsnNode[section.end - section.start + 1];
 		for (int i = 0;  i < instructions.length;  ++i)
@@ -1,19 +1,16 @@
 package esi.bc.manip;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Collections;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 
 import org.objectweb.asm.ClassAdapter;
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.commons.EmptyVisitor;
 import org.objectweb.asm.commons.LocalVariablesSorter;
 import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.commons.RemappingClassAdapter;
 import org.objectweb.asm.commons.SimpleRemapper;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.xml.ASMContentHandler;
 import org.objectweb.asm.xml.SAXClassAdapter;
 
 import esi.bc.AnalyzedClassNode;
@@ -31,6 +28,12 @@ public class CodeModifier extends CodeProducer {
 
 	private static final Log log = Config.getLogger();
 
+	// Whether instructions mutation passed verification
+	private final boolean verified;
+
+	// Number of verified instructions mutation tries made
+	private final int     tries;
+
 	/**
 	 * Creates a new code modifier.
 	 *
@@ -46,7 +49,7 @@ public class CodeModifier extends CodeProducer {
 	 *        [via {@link ConstantsMethodAdapter}, frames+maxs are unaffected]
 	 * <li> {@link RemappingClassAdapter}
 	 *        [code changed: does not inherit from {@link LocalVariablesSorter}]
-	 * <li> {@link SAXClassAdapter}
+	 * <li> {@link LabelCloningClassAdapter} (or {@link SAXClassAdapter})
 	 *        [in order to preserve structure of original class nodes]
 	 * <li> Bytes array
 	 * </ul>
@@ -58,6 +61,26 @@ public class CodeModifier extends CodeProducer {
 	 */
 	public CodeModifier(String name, ClassNode cn, Method method, ConstantsMutator mutator,
 			InstructionsMutator instructions_mutator, boolean mutate_instructions) {
+		this(name, cn, method, mutator, instructions_mutator, mutate_instructions, 0);
+	}
+
+	/**
+	 * Creates a new code modifier, where instructions mutations are verified
+	 * on the in-memory method node before any bytes are produced (see
+	 * {@link InstructionsMethodAdapter}). The pipeline is the same as in
+	 * {@link #CodeModifier(String, ClassNode, Method, ConstantsMutator, InstructionsMutator, boolean)}.
+	 *
+	 * @param name full name of the new class ({@link Class#getName()})
+	 * @param cn source class node
+	 * @param method method to mutate
+	 * @param mutator constants mutator
+	 * @param instructions_mutator instructions mutator
+	 * @param mutate_instructions whether to mutate instructions
+	 * @param verifyTries maximum number of instructions mutation tries
+	 *        (0 for no verification)
+	 */
+	public CodeModifier(String name, ClassNode cn, Method method, ConstantsMutator mutator,
+			InstructionsMutator instructions_mutator, boolean mutate_instructions, int verifyTries) {
 		super(name);
 
 		String internalName    = name.replace('.', '/');
@@ -68,8 +91,16 @@ public class CodeModifier extends CodeProducer {
 		
 		if (mutate_instructions) {
 			// Modify instruction(s) using the instructions adapter
-			ClassAdapter instructionsAdapter = new InstructionsClassAdapter(new EmptyVisitor(), method, instructions_mutator);
+			// (analyzed class nodes are not analyzed again before mutation)
+			InstructionsClassAdapter instructionsAdapter = new InstructionsClassAdapter(new EmptyVisitor(), method,
+					instructions_mutator, verifyTries, cn instanceof AnalyzedClassNode);
 			cn.accept(instructionsAdapter);
+			verified = instructionsAdapter.isVerified();
+			tries    = instructionsAdapter.getTries();
+		}
+		else {
+			verified = false;
+			tries    = 0;
 		}
 		
 		// Count constants, and supply them to the mutator
@@ -78,22 +109,33 @@ public class CodeModifier extends CodeProducer {
 		cn.accept(countingAdapter);
 		counter.accept(mutator);
 
-		// Pass through XML intermediate result.
-		// This is necessary because Labels (and instructions they point to)
-		// are changed during byte code generation (instruction resizing process).
-		ByteArrayOutputStream bytesOut   = new ByteArrayOutputStream();
-		ASMContentHandler     handler    = new ASMContentHandler(bytesOut, false);
-		ClassVisitor          saxAdapter = new SAXClassAdapter(handler, false);
+		// Write without touching labels of the class node
+		LabelsSafeWriter labelsWriter = new LabelsSafeWriter(false);
 
 		// Pass through renamer after reading
 		Map<String, String> namesMap = Collections.singletonMap(oldInternalName, internalName);
-		ClassAdapter renamingAdapter = new RemappingClassAdapter(saxAdapter, new SimpleRemapper(namesMap));
+		ClassAdapter renamingAdapter = new RemappingClassAdapter(labelsWriter.getVisitor(), new SimpleRemapper(namesMap));
 
 		// Modify constants using the constants adapter
 		ClassAdapter constantsAdapter = new ConstantsClassAdapter(renamingAdapter, method, mutator);
 		cn.accept(constantsAdapter);
 		
-		setBytes(bytesOut.toByteArray());
+		setBytes(labelsWriter.toByteArray());
+	}
+
+	/**
+	 * @return whether instructions mutation passed verification
+	 */
+	public boolean isVerified() {
+		return verified;
+	}
+
+	/**
+	 * @return number of verified instructions mutation tries made
+	 *         (0 if instructions are not mutated or verified)
+	 */
+	public int getTries() {
+		return tries;
 	}
 
 }
@@ -1,11 +1,18 @@
 package esi.bc.manip;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.xml.ASMContentHandler;
+import org.objectweb.asm.xml.SAXClassAdapter;
 
 import esi.bc.AnalyzedClassNode;
 import esi.bc.BytesClassLoader;
+import esi.util.SpecializedConstants;
 
 /**
  * An code producer for classes that can produce
@@ -14,10 +21,21 @@ import esi.bc.BytesClassLoader;
  * It is necessary because a class loader, once produced, is tied
  * to its classes.
  *
+ * <p>
+ * Constants:
+ * <ul>
+ * <li><code>class.CodeProducer.xml-labels</code>: whether producers
+ * serialize class nodes through XML in order to obtain fresh labels
+ * (the original pipeline), instead of {@link LabelCloningClassAdapter}
+ * </ul>
+ *
  * @author Michael Orlov
  */
 public abstract class CodeProducer {
 
+	// Can be changed at runtime for cross-checking both pipelines
+	private static volatile boolean xmlLabels = SpecializedConstants.getBoolean(CodeProducer.class, "xml-labels");
+
 	/**
 	 * Binary name of the class.
 	 * @see ClassLoader
@@ -29,6 +47,11 @@ public abstract class CodeProducer {
 	 */
 	private byte[] bytes;
 
+	/**
+	 * Analyzed class node, lazily created from bytes array.
+	 */
+	private volatile AnalyzedClassNode classNode;
+
 	/**
 	 * Creates a new code producer.
 	 *
@@ -38,6 +61,25 @@ public abstract class CodeProducer {
 		this.name = name;
 	}
 
+	/**
+	 * @return whether class nodes are serialized through XML
+	 */
+	public static boolean isXmlLabels() {
+		return xmlLabels;
+	}
+
+	/**
+	 * Selects the pipeline used by producers when serializing class nodes.
+	 * Both pipelines produce identical bytes.
+	 *
+	 * @param xmlLabels whether to pass class nodes through XML
+	 *        ({@link SAXClassAdapter} and {@link ASMContentHandler}),
+	 *        or through {@link LabelCloningClassAdapter}
+	 */
+	public static void setXmlLabels(boolean xmlLabels) {
+		CodeProducer.xmlLabels = xmlLabels;
+	}
+
 	/**
 	 * @return fully-qualified class name
 	 */
@@ -75,20 +117,81 @@ public abstract class CodeProducer {
 	}
 
 	/**
-	 * Returns a new analyzed class node, loaded from bytes array.
+	 * Loads the byte-serialized class in a shared class loader, which
+	 * can hold classes of many producers. The class is defined in the
+	 * loader on first request.
+	 *
+	 * @param batchLoader extensible bytes class loader
+	 * @return the loaded class
+	 * @throws ClassNotFoundException if class cannot be loaded
+	 * @see BytesClassLoader#loadDefinition(String, byte[])
+	 */
+	public Class<?> loadClass(BytesClassLoader batchLoader) throws ClassNotFoundException {
+		assert bytes != null;
+		return batchLoader.loadDefinition(name, bytes);
+	}
+
+	/**
+	 * Returns a new analyzed class node, which can be modified by the caller.
+	 *
+	 * The node is a copy of {@link #getSharedClassNode()}, so the bytes array
+	 * is parsed and analyzed at most once per producer.
+	 *
+	 * @return a new analyzed class node
+	 * @see AnalyzedClassNode#copy()
+	 */
+	public AnalyzedClassNode getClassNode() {
+		return getSharedClassNode().copy();
+	}
+
+	/**
+	 * Returns an analyzed class node, loaded from bytes array on first
+	 * invocation. The same node is returned to all callers (possibly in
+	 * different threads), and therefore it must not be modified.
+	 * Callers that need to modify the node should use {@link #getClassNode()}.
 	 *
 	 * Debug information is not skipped while parsing the array,
 	 * but if the original classes are read with {@link ClassReader#SKIP_DEBUG}
 	 * flag, no debug information will be present in the modified class either.
 	 *
-	 * @return a new analyzed class node
+	 * @return the shared analyzed class node
 	 */
-	public AnalyzedClassNode getClassNode() {
-		ClassReader       reader    = getClassReader();
-		AnalyzedClassNode classNode = new AnalyzedClassNode();
+	public AnalyzedClassNode getSharedClassNode() {
+		AnalyzedClassNode node = classNode;
+
+		if (node == null) {
+			synchronized (this) {
+				node = classNode;
+
+				if (node == null) {
+					node = analyzeClass(getClassReader());
+
+					// NOTE: AnalyzedMethodNode already initialized the
+					// (lazily-created) instructions index caches
+					classNode = node;
+				}
+			}
+		}
+
+		return node;
+	}
 
-		reader.accept(classNode, ClassReader.EXPAND_FRAMES);
-		return classNode;
+	/**
+	 * Reads the class into a new analyzed class node.
+	 * Called at most once, by {@link #getSharedClassNode()}.
+	 *
+	 * Subclasses can override this method in order to use
+	 * incremental analysis.
+	 *
+	 * @param reader reader of the class
+	 * @return analyzed class node
+	 * @see AnalyzedClassNode#readClass(ClassReader, AnalyzedClassNode, esi.bc.flow.CodeSection)
+	 */
+	protected AnalyzedClassNode analyzeClass(ClassReader reader) {
+		AnalyzedClassNode node = new AnalyzedClassNode();
+		reader.accept(node, ClassReader.EXPAND_FRAMES);
+
+		return node;
 	}
 
 	/**
@@ -105,4 +208,66 @@ public abstract class CodeProducer {
 		return cr;
 	}
 
+	/**
+	 * Serializes a class node without changing its labels,
+	 * recomputing maximal stack and locals.
+	 *
+	 * @param cn class node
+	 * @return serialized class
+	 */
+	protected static byte[] toByteArray(ClassNode cn) {
+		LabelsSafeWriter labelsWriter = new LabelsSafeWriter(true);
+		cn.accept(labelsWriter.getVisitor());
+		return labelsWriter.toByteArray();
+	}
+
+	/**
+	 * Class visitor that serializes visited class nodes to bytes,
+	 * without changing labels of the class nodes.
+	 *
+	 * This is necessary because Labels (and instructions they point to)
+	 * are changed during byte code generation (instruction resizing process).
+	 */
+	protected static class LabelsSafeWriter {
+
+		private final ClassVisitor          visitor;
+
+		// Either XML intermediate result, or direct writer
+		private final ByteArrayOutputStream bytesOut;
+		private final ClassWriter           writer;
+
+		/**
+		 * Creates a serializer using the currently selected pipeline.
+		 *
+		 * @param computeMaxs whether to recompute maximal stack and locals
+		 */
+		public LabelsSafeWriter(boolean computeMaxs) {
+			if (xmlLabels) {
+				bytesOut = new ByteArrayOutputStream();
+				writer   = null;
+				visitor  = new SAXClassAdapter(new ASMContentHandler(bytesOut, computeMaxs), false);
+			}
+			else {
+				bytesOut = null;
+				writer   = new ClassWriter(computeMaxs ? ClassWriter.COMPUTE_MAXS : 0);
+				visitor  = new LabelCloningClassAdapter(writer);
+			}
+		}
+
+		/**
+		 * @return visitor that should accept the class
+		 */
+		public ClassVisitor getVisitor() {
+			return visitor;
+		}
+
+		/**
+		 * @return serialized class (after it was visited)
+		 */
+		public byte[] toByteArray() {
+			return (writer != null)  ?  writer.toByteArray()  :  bytesOut.toByteArray();
+		}
+
+	}
+
 }
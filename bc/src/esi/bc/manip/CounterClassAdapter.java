@@ -0,0 +1,45 @@
+package esi.bc.manip;
+
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * A class adapter that adds a call to a static callback method at the
+ * end of each basic block in every method, passing the number of
+ * instructions in the block.
+ *
+ * This allows counting of executed bytecode instructions, and also
+ * limiting their number if the callback throws an exception.
+ */
+public class CounterClassAdapter extends ClassAdapter {
+
+	private final String callbackClass;
+	private final String callbackMethod;
+	private final int    callbackArg;
+
+	/**
+	 * Creates a class adapter that makes methods countable.
+	 *
+	 * @param cv class visitor to which calls are delegated
+	 * @param callbackClass binary callback class name
+	 * @param callbackMethod static callback method name, with (int, int) arguments
+	 * @param callbackArg first argument to pass to the callback method
+	 */
+	public CounterClassAdapter(ClassVisitor cv,
+			String callbackClass, String callbackMethod, int callbackArg) {
+		super(cv);
+
+		this.callbackClass  = callbackClass.replace('.', '/');
+		this.callbackMethod = callbackMethod;
+		this.callbackArg    = callbackArg;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String desc,
+			String signature, String[] exceptions) {
+		MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+		return new CounterMethodAdapter(mv, callbackClass, callbackMethod, callbackArg);
+	}
+
+}
@@ -0,0 +1,152 @@
+package esi.bc.manip;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Method adapter that adds a call to static callback method
+ * at the end of each basic block, with the number of instructions
+ * in the block.
+ *
+ * A block ends before a label (if the label is reachable by
+ * fall-through), and at jumps, switches, returns and throws,
+ * in which case the call is inserted before the last instruction.
+ * Instructions of a block that is left due to an implicit exception
+ * are not counted.
+ */
+public class CounterMethodAdapter extends MethodAdapter {
+
+	private final String callbackClass;
+	private final String callbackMethod;
+	private final int    callbackArg;
+
+	// Instructions in the current block so far
+	private int count;
+
+	public CounterMethodAdapter(MethodVisitor mv, String callbackClass, String callbackMethod, int callbackArg) {
+		super(mv);
+
+		this.callbackClass  = callbackClass;
+		this.callbackMethod = callbackMethod;
+		this.callbackArg    = callbackArg;
+
+		count = 0;
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		// Fall-through into the next block
+		endBlock();
+		super.visitLabel(label);
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		++count;
+
+		if ((opcode >= Opcodes.IRETURN  &&  opcode <= Opcodes.RETURN)  ||  opcode == Opcodes.ATHROW)
+			endBlock();
+
+		super.visitInsn(opcode);
+	}
+
+	@Override
+	public void visitIntInsn(int opcode, int operand) {
+		++count;
+		super.visitIntInsn(opcode, operand);
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var) {
+		++count;
+
+		if (opcode == Opcodes.RET)
+			endBlock();
+
+		super.visitVarInsn(opcode, var);
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		++count;
+		super.visitTypeInsn(opcode, type);
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+		++count;
+		super.visitFieldInsn(opcode, owner, name, desc);
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+		++count;
+		super.visitMethodInsn(opcode, owner, name, desc);
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		++count;
+		endBlock();
+		super.visitJumpInsn(opcode, label);
+	}
+
+	@Override
+	public void visitLdcInsn(Object cst) {
+		++count;
+		super.visitLdcInsn(cst);
+	}
+
+	@Override
+	public void visitIincInsn(int var, int increment) {
+		++count;
+		super.visitIincInsn(var, increment);
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels) {
+		++count;
+		endBlock();
+		super.visitTableSwitchInsn(min, max, dflt, labels);
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		++count;
+		endBlock();
+		super.visitLookupSwitchInsn(dflt, keys, labels);
+	}
+
+	@Override
+	public void visitMultiANewArrayInsn(String desc, int dims) {
+		++count;
+		super.visitMultiANewArrayInsn(desc, dims);
+	}
+
+	// Insert callback(callbackArg, count), unless the block is empty
+	// (e.g., a label after an unconditional jump)
+	private void endBlock() {
+		if (count != 0) {
+			generate(callbackArg);
+			generate(count);
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, callbackClass, callbackMethod, "(II)V");
+
+			count = 0;
+		}
+	}
+
+	// Taken from ConstantsMethodAdapter (tested in ConstantsAdapterTest)
+	private void generate(int x) {
+		if (x >= -1  &&  x <= 5)
+			super.visitInsn(Opcodes.ICONST_0 + x);
+		else if (x >= Byte.MIN_VALUE  &&  x <= Byte.MAX_VALUE)
+			super.visitIntInsn(Opcodes.BIPUSH, x);
+		else if (x >= Short.MIN_VALUE  &&  x <= Short.MAX_VALUE)
+			super.visitIntInsn(Opcodes.SIPUSH, x);
+		else
+			super.visitLdcInsn(x);
+	}
+
+}
@@ -3,18 +3,21 @@ package esi.bc.manip;
 import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.Method;
 
 /**
  * A class adapter that eliminates dead code and other
  * unnecessary code, like [GOTO x; LABEL x].
  *
- * Requires correct frames in code.
+ * Requires sufficient maximal stack and locals in code
+ * (see {@link EliminatingMethodAdapter}).
  *
  * @author Michael Orlov
  */
 public class EliminatingClassAdapter extends ClassAdapter {
 
+	// Designated method, or null for all methods
 	private final Method  method;
 
 	// DCE performed on designated method
@@ -35,6 +38,16 @@ public class EliminatingClassAdapter extends ClassAdapter {
 		eliminated = false;
 	}
 
+	/**
+	 * Creates a class adapter that removes unreachable code
+	 * in all methods that have code.
+	 *
+	 * @param cv class visitor to which calls are delegated
+	 */
+	public EliminatingClassAdapter(ClassVisitor cv) {
+		this(cv, null);
+	}
+
 	@Override
 	public void visit(int version, int access, String name, String signature,
 			String superName, String[] interfaces) {
@@ -48,8 +61,9 @@ public class EliminatingClassAdapter extends ClassAdapter {
 		MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
 
 		// Use eliminating method adapter if it's the designated method
-		if (method.equals(new Method(name, desc))) {
-			assert !eliminated : "Two methods with same name";
+		if (method == null  ?  (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0
+							:  method.equals(new Method(name, desc))) {
+			assert method == null  ||  !eliminated : "Two methods with same name";
 			assert className != null;
 
 			// Prepend eliminating method adapter to the received visitor
@@ -62,7 +76,7 @@ public class EliminatingClassAdapter extends ClassAdapter {
 
 	@Override
 	public void visitEnd() {
-		if (!eliminated)
+		if (method != null  &&  !eliminated)
 			throw new IllegalArgumentException("Unable to locate method " + method);
 
 		super.visitEnd();
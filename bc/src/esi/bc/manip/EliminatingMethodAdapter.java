@@ -1,5 +1,7 @@
 package esi.bc.manip;
 
+import java.util.HashSet;
+import java.util.Set;
 import org.apache.commons.logging.Log;
 
 import org.objectweb.asm.MethodAdapter;
@@ -8,7 +10,11 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
 import org.objectweb.asm.tree.analysis.Analyzer;
 import org.objectweb.asm.tree.analysis.AnalyzerException;
 import org.objectweb.asm.tree.analysis.BasicInterpreter;
@@ -18,7 +24,12 @@ import esi.util.Config;
 
 /**
  * Method adapter that eliminates dead code and other
- * unnecessary code, like [GOTO x; LABEL x].
+ * unnecessary code, like [GOTO x; LABEL x] and line numbers
+ * of labels that are not in code.
+ *
+ * Frames in code are not required, but maximal stack and locals
+ * must be sufficient (not necessarily exact) for analysis. The
+ * merged code is new, so it is analyzed exactly once.
  *
  * Based on ch7/sec2/RemoveDeadCodeAdapter.java.
  *
@@ -65,13 +76,12 @@ public class EliminatingMethodAdapter extends MethodAdapter {
 			assert frames.length == insns.length;
 
 			// Remove unreachable instructions
+			// (they are NOPs and ATHROWs if frames were computed before)
 			for (int i = 0;  i < insns.length;  ++i) {
 				// Do not remove unreachable labels
 				// (they do not get translated into code anyway)
-				if (frames[i] == null  &&  insns[i].getType() != AbstractInsnNode.LABEL) {
-					assert insns[i].getType() < 0  ||  insns[i].getOpcode() == Opcodes.NOP;
+				if (frames[i] == null  &&  insns[i].getType() != AbstractInsnNode.LABEL)
 					mn.instructions.remove(insns[i]);
-				}
 			}
 
 			int removedInsns = insns.length - mn.instructions.size();
@@ -81,17 +91,36 @@ public class EliminatingMethodAdapter extends MethodAdapter {
 			if (removedInsns != 0)
 				insns = mn.instructions.toArray();
 
+			// Labels, lines and frames between GOTO and its target do not
+			// get translated into code, but a label between them is only
+			// skipped if no other branch targets it
+			Set<LabelNode> targets = getTargets();
 			for (int i = 0;  i+1 < insns.length;  ++i) {
 				if (insns[i].getOpcode() == Opcodes.GOTO) {
 					LabelNode target = ((JumpInsnNode) insns[i]).label;
 
-					if (insns[i+1] == target)
+					int next = i + 1;
+					while (next < insns.length  &&  insns[next] != target  &&  insns[next].getOpcode() < 0
+							&&  !targets.contains(insns[next]))
+						++next;
+
+					if (next < insns.length  &&  insns[next] == target)
 						mn.instructions.remove(insns[i]);
 				}
 			}
 
 			int removedGotos = insns.length - mn.instructions.size();
 
+			// Remove line numbers of labels that are not in code (e.g., outside of
+			// injected section), since their offsets cannot be resolved
+			Set<LabelNode> labels = new HashSet<LabelNode>();
+			for (AbstractInsnNode insn: mn.instructions.toArray()) {
+				if (insn.getType() == AbstractInsnNode.LABEL)
+					labels.add((LabelNode) insn);
+				else if (insn.getType() == AbstractInsnNode.LINE  &&  !labels.contains(((LineNumberNode) insn).start))
+					mn.instructions.remove(insn);
+			}
+
 			if (removedInsns != 0  ||  removedGotos != 0)
 				log.trace(className + "." + mn.name + ": removed "
 						+ removedInsns + " unreachable instructions and "
@@ -104,4 +133,32 @@ public class EliminatingMethodAdapter extends MethodAdapter {
 		mn.accept(next);
 	}
 
+	// Labels targeted by jumps, switches and exception handlers
+	private Set<LabelNode> getTargets() {
+		Set<LabelNode> targets = new HashSet<LabelNode>();
+
+		for (AbstractInsnNode insn: mn.instructions.toArray()) {
+			switch (insn.getType()) {
+			case AbstractInsnNode.JUMP_INSN:
+				targets.add(((JumpInsnNode) insn).label);
+				break;
+			case AbstractInsnNode.TABLESWITCH_INSN:
+				targets.add(((TableSwitchInsnNode) insn).dflt);
+				for (Object label: ((TableSwitchInsnNode) insn).labels)
+					targets.add((LabelNode) label);
+				break;
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:
+				targets.add(((LookupSwitchInsnNode) insn).dflt);
+				for (Object label: ((LookupSwitchInsnNode) insn).labels)
+					targets.add((LabelNode) label);
+				break;
+			}
+		}
+
+		for (Object tcb: mn.tryCatchBlocks)
+			targets.add(((TryCatchBlockNode) tcb).handler);
+
+		return targets;
+	}
+
 }
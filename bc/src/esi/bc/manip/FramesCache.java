@@ -0,0 +1,135 @@
+package esi.bc.manip;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Interpreter;
+
+/**
+ * Memoized {@link Analyzer} frames of a method node, which are
+ * recomputed only when the instructions list changes.
+ *
+ * Changes are detected by comparing the instructions list with
+ * the list at the last successful analysis, so only insertion,
+ * removal and replacement of instruction nodes are detected
+ * (modification of nodes in place is not). A failed analysis
+ * does not replace the last successful one, so restoring the
+ * previous instructions does not require another analysis.
+ *
+ * Frames computed with {@link BasicVerifier} also serve requests
+ * for {@link BasicInterpreter} frames, since reachability is the same.
+ *
+ * Used by {@link InstructionsMethodAdapter}, which analyzes the same
+ * method node repeatedly while mutating it.
+ */
+final class FramesCache {
+
+	// Owner class name
+	private final String       className;
+
+	// Analyzed method node
+	private final MethodNode   mn;
+
+	// Instructions at last successful analysis (null if none)
+	private AbstractInsnNode[] analyzed;
+
+	// Frames of analyzed instructions (null if code was only marked valid)
+	private Frame[]            frames;
+
+	// Whether analyzed instructions passed BasicVerifier
+	private boolean            verified;
+
+	/**
+	 * Creates an empty frames cache.
+	 *
+	 * @param className owner class name
+	 * @param mn method node
+	 */
+	FramesCache(String className, MethodNode mn) {
+		this.className = className;
+		this.mn        = mn;
+	}
+
+	/**
+	 * Marks the current instructions as valid without analyzing them,
+	 * e.g., when the code was read from an already analyzed method.
+	 */
+	void setValid() {
+		analyzed = mn.instructions.toArray();
+		frames   = null;
+		verified = false;
+	}
+
+	/**
+	 * Checks that the code passes {@link BasicInterpreter} analysis,
+	 * unless the instructions are unchanged since the last successful check.
+	 *
+	 * @throws AnalyzerException if analysis fails
+	 */
+	void checkValid() throws AnalyzerException {
+		if (! isUnchanged())
+			analyze(new BasicInterpreter(), false);
+	}
+
+	/**
+	 * Returns frames computed by {@link BasicInterpreter} (or by
+	 * {@link BasicVerifier}). A frame is <code>null</code> iff the
+	 * instruction is unreachable. The result should not be modified.
+	 *
+	 * @return frames of current instructions
+	 * @throws AnalyzerException if analysis fails
+	 */
+	Frame[] getFrames() throws AnalyzerException {
+		if (frames == null  ||  ! isUnchanged())
+			analyze(new BasicInterpreter(), false);
+
+		return frames;
+	}
+
+	/**
+	 * @return whether the code passes {@link BasicVerifier} analysis
+	 */
+	boolean isVerified() {
+		if (verified  &&  isUnchanged())
+			return true;
+
+		try {
+			analyze(new BasicVerifier(), true);
+			return true;
+		}
+		catch (AnalyzerException e) {
+			return false;
+		}
+		catch (RuntimeException e) {
+			// E.g., a removed label that is still referenced
+			return false;
+		}
+	}
+
+	// Analyzes current instructions, keeping the previous results on failure
+	private void analyze(Interpreter interpreter, boolean verify) throws AnalyzerException {
+		Frame[] result = new Analyzer(interpreter).analyze(className, mn);
+
+		analyzed = mn.instructions.toArray();
+		frames   = result;
+		verified = verify;
+	}
+
+	// Whether instructions are the same as at last successful analysis
+	private boolean isUnchanged() {
+		if (analyzed == null  ||  analyzed.length != mn.instructions.size())
+			return false;
+
+		int index = 0;
+		for (AbstractInsnNode insn = mn.instructions.getFirst();  insn != null;  insn = insn.getNext())
+			if (insn != analyzed[index++])
+				return false;
+
+		return true;
+	}
+
+}
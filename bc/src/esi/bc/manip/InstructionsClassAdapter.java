@@ -16,6 +16,15 @@ public class InstructionsClassAdapter extends ClassAdapter {
 	
 	private       String  className;
 
+	// Maximum number of verified mutation tries (0 -> no verification)
+	private final int     verifyTries;
+
+	// Whether visited code was already analyzed
+	private final boolean analyzed;
+
+	// Adapter of the designated method
+	private InstructionsMethodAdapter methodAdapter;
+
 	/**
 	 * Creates a class adapter that mutates instructions. 
 	 *
@@ -23,11 +32,30 @@ public class InstructionsClassAdapter extends ClassAdapter {
 	 * @param method method in which to eliminate unreachable code
 	 */
 	public InstructionsClassAdapter(ClassVisitor cv, Method method, InstructionsMutator mutator) {
+		this(cv, method, mutator, 0, false);
+	}
+
+	/**
+	 * Creates a class adapter that mutates instructions, and verifies
+	 * the mutations (see {@link InstructionsMethodAdapter}).
+	 *
+	 * @param cv class visitor to which calls are delegated
+	 * @param method method in which to mutate instructions
+	 * @param mutator instructions mutator
+	 * @param verifyTries maximum number of mutation tries (0 for no verification)
+	 * @param analyzed whether the visited code was already analyzed (e.g., when
+	 *        it is read from an {@link esi.bc.AnalyzedClassNode}), so that it is
+	 *        not analyzed again before mutation
+	 */
+	public InstructionsClassAdapter(ClassVisitor cv, Method method, InstructionsMutator mutator,
+			int verifyTries, boolean analyzed) {
 		super(cv);
 		
 		this.method = method;
 		this.mutator = mutator; 
 		this.mutated = false;
+		this.verifyTries = verifyTries;
+		this.analyzed = analyzed;
 	}
 
 	@Override
@@ -48,13 +76,29 @@ public class InstructionsClassAdapter extends ClassAdapter {
 			assert className != null;
 
 			// Prepend mutating method adapter to the received visitor
-			mv = new InstructionsMethodAdapter(mv, className, access, name, desc, signature, exceptions, this.mutator);
+			methodAdapter = new InstructionsMethodAdapter(mv, className, access, name, desc, signature, exceptions,
+					this.mutator, verifyTries, analyzed);
+			mv = methodAdapter;
 			mutated = true;
 		}
 
 		return mv;
 	}
 
+	/**
+	 * @return whether mutation of the designated method passed verification
+	 */
+	public boolean isVerified() {
+		return methodAdapter != null  &&  methodAdapter.isVerified();
+	}
+
+	/**
+	 * @return number of verified mutation tries made in the designated method
+	 */
+	public int getTries() {
+		return (methodAdapter != null)  ?  methodAdapter.getTries()  :  0;
+	}
+
 	@Override
 	public void visitEnd() {
 		if (!mutated)
@@ -11,10 +11,26 @@ import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.analysis.Analyzer;
 import org.objectweb.asm.tree.analysis.AnalyzerException;
-import org.objectweb.asm.tree.analysis.BasicInterpreter;
-import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+import esi.bc.AnalyzedMethodNode;
 
 import esi.util.Config;
+
+/**
+ * Method adapter that reads the method into a {@link MethodNode},
+ * mutates its instructions, and passes the result on.
+ *
+ * If verification tries are given, each mutation is checked with
+ * {@link Analyzer} and {@link BasicVerifier} (which also checks
+ * maximum stack and locals) before the code is passed on. Mutations
+ * that fail verification are undone, and if none of the tries
+ * succeeds, the original code is passed on.
+ *
+ * Analyses go through a {@link FramesCache}, so unchanged code is not
+ * analyzed again. If the code was read from an {@link AnalyzedMethodNode},
+ * it is not analyzed before mutation.
+ */
 public class InstructionsMethodAdapter extends MethodAdapter {
 	private static final Log log = Config.getLogger();
 
@@ -27,39 +43,120 @@ public class InstructionsMethodAdapter extends MethodAdapter {
 	// Next visitor which method node accepts after mutation
 	private final MethodVisitor next;
 
-	// Analyzer that does simple analysis of code in method node
-	private final Analyzer      an;
+	// Analysis of code in method node
+	private final FramesCache   cache;
+
+	// Whether the code was already analyzed
+	private final boolean       analyzed;
 
 	private InstructionsMutator mutator;
-	
+
+	// Maximum number of verified mutation tries (0 -> no verification)
+	private final int           verifyTries;
+
+	// Whether a mutation passed verification
+	private       boolean       verified;
+
+	// Number of verified mutation tries made
+	private       int           tries;
+
 	public InstructionsMethodAdapter(MethodVisitor mv, String className,
 			int access, String name, String desc,
 			String signature, String[] exceptions,
 			InstructionsMutator mutator) {
+		this(mv, className, access, name, desc, signature, exceptions, mutator, 0, false);
+	}
+
+	/**
+	 * Creates a mutating method adapter.
+	 *
+	 * @param mv method visitor to which the mutated code is passed
+	 * @param className owner class name
+	 * @param access method access flags
+	 * @param name method name
+	 * @param desc method descriptor
+	 * @param signature method signature
+	 * @param exceptions method exceptions
+	 * @param mutator instructions mutator
+	 * @param verifyTries maximum number of verified mutation tries (0 for no verification)
+	 * @param analyzed whether the visited code was already analyzed (e.g.,
+	 *        when it is read from an {@link AnalyzedMethodNode})
+	 */
+	public InstructionsMethodAdapter(MethodVisitor mv, String className,
+			int access, String name, String desc,
+			String signature, String[] exceptions,
+			InstructionsMutator mutator, int verifyTries, boolean analyzed) {
 		super(new MethodNode(access, name, desc, signature, exceptions));
 
-		this.className = className;
-		this.mutator = mutator;
-		mn   = (MethodNode) this.mv;
-		next = mv;
-		an   = new Analyzer(new BasicInterpreter());
+		this.className   = className;
+		this.mutator     = mutator;
+		this.verifyTries = verifyTries;
+		this.analyzed    = analyzed;
+		mn    = (MethodNode) this.mv;
+		next  = mv;
+		cache = new FramesCache(className, mn);
 	}
 
 	@Override
 	public void visitEnd() {
 		super.visitEnd();
 		
-		try {
-			// Analyze to initialize the method node. 
-			an.analyze(className, mn);
-		}
-		catch(AnalyzerException e) {
-			throw new RuntimeException("Exception in Analyzer", e);
+		if (analyzed)
+			cache.setValid();
+		else {
+			try {
+				// Analyze to check the method node. 
+				cache.checkValid();
+			}
+			catch(AnalyzerException e) {
+				throw new RuntimeException("Exception in Analyzer", e);
+			}
 		}
 
-		mutator.mutate(mn);
-		
+		if (verifyTries > 0)
+			mutateVerified();
+		else
+			mutator.mutate(mn);
+
 		// Propagate code further after mutation
 		mn.accept(next);
 	}
+
+	/**
+	 * @return whether a mutation passed verification
+	 */
+	public boolean isVerified() {
+		return verified;
+	}
+
+	/**
+	 * @return number of verified mutation tries made (0 if not verified)
+	 */
+	public int getTries() {
+		return tries;
+	}
+
+	// Mutates until the code passes verification, or restores the original code
+	private void mutateVerified() {
+		AbstractInsnNode[] original = mn.instructions.toArray();
+
+		for (int t = 1;  t <= verifyTries;  ++t) {
+			mutator.mutate(mn);
+			tries = t;
+
+			if (cache.isVerified()) {
+				log.trace("Verified mutation found after " + t + " attempts");
+				verified = true;
+				return;
+			}
+
+			// Mutators only insert, remove and replace nodes
+			mn.instructions.clear();
+			for (AbstractInsnNode insn: original)
+				mn.instructions.add(insn);
+		}
+
+		log.debug("Verified mutation of " + className + "." + mn.name + mn.desc
+				+ " not found after " + verifyTries + " attempts");
+	}
 }
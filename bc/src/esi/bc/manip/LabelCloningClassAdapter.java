@@ -0,0 +1,74 @@
+package esi.bc.manip;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.xml.ASMContentHandler;
+import org.objectweb.asm.xml.SAXClassAdapter;
+
+/**
+ * A class adapter that replaces every visited {@link org.objectweb.asm.Label}
+ * with a fresh one, so that the delegated visitor (usually a class writer)
+ * never touches the labels of the visited class node.
+ *
+ * This is a direct replacement for passing class nodes through
+ * {@link SAXClassAdapter} and {@link ASMContentHandler}, which was used only
+ * because labels (and instructions they point to) are changed during byte
+ * code generation (instruction resizing process). Like the XML pipeline,
+ * non-standard attributes are not passed on.
+ *
+ * @author Michael Orlov
+ */
+public class LabelCloningClassAdapter extends ClassAdapter {
+
+	/**
+	 * Creates a class adapter that clones labels in all methods.
+	 *
+	 * @param cv class visitor to which calls are delegated
+	 */
+	public LabelCloningClassAdapter(ClassVisitor cv) {
+		super(cv);
+	}
+
+	@Override
+	public void visitAttribute(Attribute attr) {
+		// Non-standard attributes are dropped (as in XML pipeline)
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String desc,
+			String signature, Object value) {
+		final FieldVisitor fv = super.visitField(access, name, desc, signature, value);
+
+		if (fv == null)
+			return null;
+
+		// Non-standard attributes are dropped (as in XML pipeline)
+		return new FieldVisitor() {
+			@Override
+			public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+				return fv.visitAnnotation(desc, visible);
+			}
+
+			@Override
+			public void visitAttribute(Attribute attr) {
+			}
+
+			@Override
+			public void visitEnd() {
+				fv.visitEnd();
+			}
+		};
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String desc,
+			String signature, String[] exceptions) {
+		MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+		return (mv == null)  ?  null  :  new LabelCloningMethodAdapter(mv);
+	}
+
+}
@@ -0,0 +1,105 @@
+package esi.bc.manip;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Method adapter that consistently maps each visited label
+ * to a new label, including labels of uninitialized types in frames.
+ *
+ * @author Michael Orlov
+ */
+public class LabelCloningMethodAdapter extends MethodAdapter {
+
+	// Original label -> cloned label
+	private final Map<Label, Label> labels;
+
+	public LabelCloningMethodAdapter(MethodVisitor mv) {
+		super(mv);
+		labels = new HashMap<Label, Label>();
+	}
+
+	@Override
+	public void visitAttribute(Attribute attr) {
+		// Non-standard attributes are dropped (as in XML pipeline)
+	}
+
+	@Override
+	public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+		super.visitFrame(type, nLocal, clone(local, nLocal), nStack, clone(stack, nStack));
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		super.visitJumpInsn(opcode, clone(label));
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		super.visitLabel(clone(label));
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels) {
+		super.visitTableSwitchInsn(min, max, clone(dflt), clone(labels));
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		super.visitLookupSwitchInsn(clone(dflt), keys, clone(labels));
+	}
+
+	@Override
+	public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+		super.visitTryCatchBlock(clone(start), clone(end), clone(handler), type);
+	}
+
+	@Override
+	public void visitLocalVariable(String name, String desc, String signature,
+			Label start, Label end, int index) {
+		super.visitLocalVariable(name, desc, signature, clone(start), clone(end), index);
+	}
+
+	@Override
+	public void visitLineNumber(int line, Label start) {
+		super.visitLineNumber(line, clone(start));
+	}
+
+	private Label clone(Label label) {
+		Label cloned = labels.get(label);
+
+		if (cloned == null) {
+			cloned = new Label();
+			labels.put(label, cloned);
+		}
+
+		return cloned;
+	}
+
+	private Label[] clone(Label[] labels) {
+		Label[] cloned = new Label[labels.length];
+		for (int i = 0;  i < labels.length;  ++i)
+			cloned[i] = clone(labels[i]);
+
+		return cloned;
+	}
+
+	// Frame types can contain labels (uninitialized types)
+	private Object[] clone(Object[] types, int n) {
+		if (types == null)
+			return null;
+
+		Object[] cloned = types.clone();
+		for (int i = 0;  i < n;  ++i)
+			if (cloned[i] instanceof Label)
+				cloned[i] = clone((Label) cloned[i]);
+
+		return cloned;
+	}
+
+}
@@ -24,6 +24,8 @@ public class MergingClassAdapter extends ClassAdapter {
 
 	private final CodeSection        destSection;
 	private final AbstractInsnNode[] srcInstructions;
+	private final int                srcMaxStack;
+	private final int                srcMaxLocals;
 
 	// srcInstructions injected into destSection
 	private boolean injected;
@@ -38,10 +40,29 @@ public class MergingClassAdapter extends ClassAdapter {
 	 * @param srcInstructions instructions to inject in place of removed section
 	 */
 	public MergingClassAdapter(ClassVisitor cv, CodeSection destSection, AbstractInsnNode[] srcInstructions) {
+		this(cv, destSection, srcInstructions, 0, 0);
+	}
+
+	/**
+	 * Creates a class adapter that replaces a code section with given instructions,
+	 * and adjusts maximal stack and locals of the destination method to upper bounds
+	 * that account for the injected instructions.
+	 *
+	 * @param cv class visitor to which calls are delegated
+	 * @param destSection destination section to remove
+	 * @param srcInstructions instructions to inject in place of removed section
+	 * @param srcMaxStack maximal stack size of the source method
+	 * @param srcMaxLocals maximal locals size of the source method
+	 * @see MergingMethodAdapter#MergingMethodAdapter(MethodVisitor, int, int, AbstractInsnNode[], int, int)
+	 */
+	public MergingClassAdapter(ClassVisitor cv, CodeSection destSection, AbstractInsnNode[] srcInstructions,
+			int srcMaxStack, int srcMaxLocals) {
 		super(cv);
 
 		this.destSection     = destSection;
 		this.srcInstructions = srcInstructions;
+		this.srcMaxStack     = srcMaxStack;
+		this.srcMaxLocals    = srcMaxLocals;
 
 		injected = false;
 	}
@@ -73,7 +94,8 @@ public class MergingClassAdapter extends ClassAdapter {
 			assert className != null;
 
 			// Prepend merging method adapter to the received visitor
-			mv = new MergingMethodAdapter(mv, destSection.start, destSection.end, srcInstructions);
+			mv = new MergingMethodAdapter(mv, destSection.start, destSection.end, srcInstructions,
+					srcMaxStack, srcMaxLocals);
 			injected = true;
 		}
 
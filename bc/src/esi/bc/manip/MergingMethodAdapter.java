@@ -24,8 +24,10 @@ public class MergingMethodAdapter extends MethodAdapter {
 	private final int                start;
 	private final int                end;
 
-	// Source instructions list
+	// Source instructions list, and source method maximal stack and locals
 	private final AbstractInsnNode[] srcInstructions;
+	private final int                srcMaxStack;
+	private final int                srcMaxLocals;
 
 	// Real and alternative (empty) visitor
 	private final MethodVisitor      realVisitor;
@@ -48,11 +50,35 @@ public class MergingMethodAdapter extends MethodAdapter {
 	 * @param srcInstructions list of instructions to inject
 	 */
 	public MergingMethodAdapter(MethodVisitor mv, int start, int end, AbstractInsnNode[] srcInstructions) {
+		this(mv, start, end, srcInstructions, 0, 0);
+	}
+
+	/**
+	 * Creates a method adapter that replaces a section given by indexes
+	 * with the supplied instructions, and visits upper bounds of maximal
+	 * stack and locals instead of the original (now invalid) ones.
+	 *
+	 * When the sections are stack-compatible, the stack inside the injected
+	 * code is at most the sum of the destination and source maximal stacks.
+	 * The bounds are only useful for analysis before the maximal stack and
+	 * locals are recomputed.
+	 *
+	 * @param mv method visitor to which calls are delegated
+	 * @param start start of section to remove (inclusive)
+	 * @param end end of section to remove (inclusive, can be start-1)
+	 * @param srcInstructions list of instructions to inject
+	 * @param srcMaxStack maximal stack size of the source method
+	 * @param srcMaxLocals maximal locals size of the source method
+	 */
+	public MergingMethodAdapter(MethodVisitor mv, int start, int end, AbstractInsnNode[] srcInstructions,
+			int srcMaxStack, int srcMaxLocals) {
 		super(mv);
 
 		this.start = start;
 		this.end   = end;
 		this.srcInstructions = srcInstructions;
+		this.srcMaxStack     = srcMaxStack;
+		this.srcMaxLocals    = srcMaxLocals;
 
 		realVisitor = mv;
 		altVisitor  = new EmptyVisitor();
@@ -99,6 +125,11 @@ public class MergingMethodAdapter extends MethodAdapter {
 		endInstruction();
 	}
 
+	@Override
+	public void visitMaxs(int maxStack, int maxLocals) {
+		super.visitMaxs(maxStack + srcMaxStack, Math.max(maxLocals, srcMaxLocals));
+	}
+
 	@Override
 	public void visitEnd() {
 		startInstruction();
@@ -3,10 +3,14 @@ package esi.bc.manip;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.RemappingClassAdapter;
 
+import esi.util.SpecializedConstants;
+
 /**
  * Class writer that supports remapping of names when frames
  * are recomputed.
@@ -15,10 +19,25 @@ import org.objectweb.asm.commons.RemappingClassAdapter;
  * ({@link ClassWriter#COMPUTE_FRAMES}) when a unification happens
  * against new name, and {@link Class#forName(String)} fails.
  *
+ * Common super classes of old names are cached process-wide,
+ * since they do not depend on the mapping.
+ *
+ * <p>
+ * Constants:
+ * <ul>
+ * <li><code>class.RemappingClassWriter.max-supers</code>: maximum number
+ * of cached common super classes (further results are not cached)
+ * </ul>
+ *
  * @author Michael Orlov
  */
 public class RemappingClassWriter extends ClassWriter {
 
+	private static final int MAX_SUPERS = SpecializedConstants.getInt(RemappingClassWriter.class, "max-supers");
+
+	// "type1 type2" (in sorted order) -> common super class
+	private static final ConcurrentMap<String, String> commonSupers = new ConcurrentHashMap<String, String>();
+
 	private Map<String, String>	map;
 	private Map<String, String> reverseMap;
 
@@ -61,11 +80,30 @@ public class RemappingClassWriter extends ClassWriter {
 		if (reverseMap.containsKey(type2))
 			type2 = reverseMap.get(type2);
 
-		String common = super.getCommonSuperClass(type1, type2);
+		String common = getCachedCommonSuperClass(type1, type2);
 		if (map.containsKey(common))
 			common = map.get(common);
 
 		return common;
 	}
 
+	// Common super class of loadable types (names are not remapped)
+	private String getCachedCommonSuperClass(String type1, String type2) {
+		if (type1.equals(type2))
+			return type1;
+
+		// Space is not allowed in internal names
+		String key = (type1.compareTo(type2) < 0)  ?  type1 + ' ' + type2  :  type2 + ' ' + type1;
+
+		String common = commonSupers.get(key);
+		if (common == null) {
+			common = super.getCommonSuperClass(type1, type2);
+
+			if (commonSupers.size() < MAX_SUPERS)
+				commonSupers.put(key, common);
+		}
+
+		return common;
+	}
+
 }
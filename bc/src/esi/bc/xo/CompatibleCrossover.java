@@ -76,6 +76,9 @@ public class CompatibleCrossover {
 		FrameActions alpha = alphaAccesses.getSection(alphaSection.start, alphaSection.end);
 		if (alpha == null)
 			return false;
+		// Sections that start in unreachable code
+		if (betaActions.isStackUnderflow()  ||  alpha.isStackUnderflow())
+			return false;
 
 		// BETA pops and pushes
 		List<Object> betaStackPops    = betaActions.getStackPops();
@@ -5,6 +5,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -17,10 +19,21 @@ import esi.bc.FrameData;
 /**
  * Implementation of is-(same-or)-narrower-than relations.
  *
+ * Results of subtype checks that do not involve the class node type
+ * are cached process-wide, since the class hierarchy of loadable
+ * classes does not change.
+ *
  * @author Michael Orlov
  */
 public class TypeVerifier extends SimpleVerifier {
 
+	private static final String OBJECT_NAME = Type.getInternalName(Object.class);
+
+	// Super type name -> sub type name -> whether it is assignable
+	private static final ConcurrentMap<String, ConcurrentMap<String, Boolean>> subTypes =
+		new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
+
+	private final String        className;
 	private Map<String, String> typesMap;
 
 	/**
@@ -34,7 +47,8 @@ public class TypeVerifier extends SimpleVerifier {
 			  (classNode.superName == null) ? null : Type.getObjectType(classNode.superName),
 			  getTypes(classNode.interfaces),
 			  false);
-		typesMap = Collections.emptyMap();
+		className = classNode.name;
+		typesMap  = Collections.emptyMap();
 	}
 
 	/**
@@ -146,8 +160,7 @@ public class TypeVerifier extends SimpleVerifier {
 				if (typesMap.containsKey(bType))
 					bType = typesMap.get(bType);
 
-				return isAssignableFrom(Type.getObjectType(bType),
-										Type.getObjectType(aType));
+				return isSubType(aType, bType);
 			}
 		}
 
@@ -162,4 +175,30 @@ public class TypeVerifier extends SimpleVerifier {
 			return a.equals(b);
 	}
 
+	// Whether internal name a is a subtype of b (or the same type)
+	private boolean isSubType(String a, String b) {
+		if (a.equals(b)  ||  b.equals(OBJECT_NAME))
+			return true;
+
+		// Class node type is not loadable, and its name is not unique
+		if (a.equals(className)  ||  b.equals(className))
+			return isAssignableFrom(Type.getObjectType(b), Type.getObjectType(a));
+
+		ConcurrentMap<String, Boolean> bSubTypes = subTypes.get(b);
+		if (bSubTypes == null) {
+			bSubTypes = new ConcurrentHashMap<String, Boolean>();
+			ConcurrentMap<String, Boolean> prev = subTypes.putIfAbsent(b, bSubTypes);
+			if (prev != null)
+				bSubTypes = prev;
+		}
+
+		Boolean result = bSubTypes.get(a);
+		if (result == null) {
+			result = isAssignableFrom(Type.getObjectType(b), Type.getObjectType(a));
+			bSubTypes.put(a, result);
+		}
+
+		return result;
+	}
+
 }
@@ -5,9 +5,17 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 
 import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
 
+import esi.bc.flow.CodeSection;
+import esi.bc.flow.test.Flow;
+import esi.bc.manip.test.Loops;
 import esi.bc.test.Fact;
 
 public class AnalyzedClassNodeTest {
@@ -64,4 +72,126 @@ public class AnalyzedClassNodeTest {
 		AnalyzedClassNode.readClass(CONTROL_NAME, false, false);
 	}
 
+	@Test
+	public void copy() throws IOException {
+		AnalyzedClassNode cn   = AnalyzedClassNode.readClass(Flow.class);
+		AnalyzedClassNode copy = cn.copy();
+
+		assertEquals(cn.name,           copy.name);
+		assertEquals(cn.fields.size(),  copy.fields.size());
+		assertEquals(cn.methods.size(), copy.methods.size());
+
+		for (int i = 0;  i < cn.methods.size();  ++i) {
+			AnalyzedMethodNode mn     = (AnalyzedMethodNode) cn.methods.get(i);
+			AnalyzedMethodNode copyMn = (AnalyzedMethodNode) copy.methods.get(i);
+
+			assertEquals(mn.getFullName(),         copyMn.getFullName());
+			assertEquals(mn.instructions.size(),   copyMn.instructions.size());
+			assertEquals(mn.tryCatchBlocks.size(), copyMn.tryCatchBlocks.size());
+			assertEquals(mn.localVariables.size(), copyMn.localVariables.size());
+			assertSame(mn.getParametersAction(),   copyMn.getParametersAction());
+
+			for (int j = 0;  j < mn.instructions.size();  ++j) {
+				AbstractInsnNode insn     = mn.instructions.get(j);
+				AbstractInsnNode copyInsn = copyMn.instructions.get(j);
+
+				assertEquals(insn.getOpcode(), copyInsn.getOpcode());
+				assertNotSame(insn, copyInsn);
+
+				// Analysis is shared
+				assertSame(mn.getFrameData(j), copyMn.getFrameData(j));
+
+				// Labels are new, and point to the copied nodes
+				if (insn instanceof LabelNode) {
+					LabelNode copyLabel = (LabelNode) copyInsn;
+					assertNotSame(((LabelNode) insn).getLabel(), copyLabel.getLabel());
+					assertSame(copyLabel, copyLabel.getLabel().info);
+				}
+				else if (insn instanceof JumpInsnNode)
+					assertEquals(mn.instructions.indexOf(((JumpInsnNode) insn).label),
+							copyMn.instructions.indexOf(((JumpInsnNode) copyInsn).label));
+			}
+		}
+
+		// Modifying the copy does not affect the original
+		AnalyzedMethodNode mn     = (AnalyzedMethodNode) cn.methods.get(1);
+		AnalyzedMethodNode copyMn = (AnalyzedMethodNode) copy.methods.get(1);
+		int size = mn.instructions.size();
+		copyMn.instructions.remove(copyMn.instructions.get(1));
+		assertEquals(size,     mn.instructions.size());
+		assertEquals(size - 1, copyMn.instructions.size());
+		assertSame(mn.instructions.get(2), mn.instructions.get(1).getNext());
+	}
+
+	@Test
+	public void readClassIncremental() throws IOException {
+		AnalyzedClassNode cn = AnalyzedClassNode.readClass(Flow.class);
+
+		// Nothing is replaced, so all frame data is reused
+		for (Object m: cn.methods) {
+			AnalyzedMethodNode method  = (AnalyzedMethodNode) m;
+			CodeSection        section = new CodeSection(new Method(method.name, method.desc), 0, -1);
+
+			ClassReader       reader = new ClassReader(Flow.class.getName());
+			AnalyzedClassNode incCn  = AnalyzedClassNode.readClass(reader, cn, section);
+
+			for (int i = 0;  i < cn.methods.size();  ++i) {
+				AnalyzedMethodNode mn    = (AnalyzedMethodNode) cn.methods.get(i);
+				AnalyzedMethodNode incMn = (AnalyzedMethodNode) incCn.methods.get(i);
+
+				assertEquals(mn.instructions.size(), incMn.instructions.size());
+				assertEquals(normalize(mn.toString()), normalize(incMn.toString()));
+
+				// Uninitialized types refer to labels, and must be recomputed
+				// (frame data of pseudo-instructions is always copied)
+				for (int j = 0;  j < mn.instructions.size();  ++j)
+					if (mn.instructions.get(j).getOpcode() >= 0  &&  mn.getFrameData(j) != null
+							&&  !mn.getFrameData(j).toString().contains(FrameData.UNINITIALIZED_PREFIX))
+						assertSame(mn.getFrameData(j), incMn.getFrameData(j));
+			}
+		}
+	}
+
+	@Test
+	public void readClassIncrementalResumed() throws IOException {
+		readClassIncrementalResumed(Flow.class);
+		readClassIncrementalResumed(Loops.class);
+		readClassIncrementalResumed(FrameData.class);
+	}
+
+	private static void readClassIncrementalResumed(Class<?> klass) throws IOException {
+		AnalyzedClassNode parent = AnalyzedClassNode.readClass(klass);
+
+		// Recomputed frames can differ from parent, so frames tracking is resumed
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		new ClassReader(klass.getName()).accept(writer, ClassReader.SKIP_FRAMES);
+
+		ClassReader       reader = new ClassReader(writer.toByteArray());
+		AnalyzedClassNode cn     = new AnalyzedClassNode();
+		reader.accept(cn, ClassReader.EXPAND_FRAMES);
+
+		// Empty section at each instruction, result is the same as in full analysis
+		for (Object m: cn.methods) {
+			AnalyzedMethodNode method = (AnalyzedMethodNode) m;
+
+			for (int start = 0;  start <= method.instructions.size();  ++start) {
+				CodeSection       section = new CodeSection(new Method(method.name, method.desc), start, start-1);
+				AnalyzedClassNode incCn   = AnalyzedClassNode.readClass(reader, parent, section);
+
+				for (int i = 0;  i < cn.methods.size();  ++i)
+					assertEquals(normalize(cn.methods.get(i).toString()), normalize(incCn.methods.get(i).toString()));
+			}
+		}
+	}
+
+	/**
+	 * Removes label identities from string representation.
+	 *
+	 * @param rep string representation
+	 * @return normalized representation
+	 */
+	static String normalize(String rep) {
+		return rep.replaceAll("L\\d+", "L");
+	}
+
 }
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -276,6 +277,46 @@ public class FrameDataTest {
 		assertEquals(5, fd.getVarsWritten().iterator().next().intValue());
 	}
 
+	@Test
+	public void testFrameDataVarsBits() {
+		AbstractInsnNode insn = new VarInsnNode(Opcodes.LSTORE, 2);
+		FrameData        fd   = new FrameData(emptyList, emptyList, uninitializedTypes, insn);
+
+		BitSet read    = new BitSet();
+		BitSet written = new BitSet();
+		fd.addVarsRead(read);
+		fd.addVarsWritten(written);
+
+		assertTrue(read.isEmpty());
+		assertEquals(2, written.cardinality());
+		assertTrue(written.get(2)  &&  written.get(3));
+	}
+
+	@Test
+	public void testFrameDataInterned() {
+		FrameTypes frameTypes = new FrameTypes();
+
+		List<Object> stack  = Arrays.asList(frameArr);
+		List<Object> locals = new ArrayList<Object>(stack);
+
+		FrameData fd1 = new FrameData(stack,  locals, uninitializedTypes, nopInsn, frameTypes);
+		FrameData fd2 = new FrameData(locals, stack,  uninitializedTypes, new IincInsnNode(1, 1), frameTypes);
+
+		assertEquals(Arrays.asList(expectedArr), fd1.getStack());
+		assertEquals(fd1.getStack(),  fd2.getLocals());
+		assertEquals(fd1.getLocals(), fd2.getStack());
+		assertEquals(stack.size(), fd2.getStackSize());
+		assertEquals(expectedArr[8], fd2.getLocal(8));
+
+		// Pseudo-instruction copies
+		assertSame(fd1, fd1.withoutAccesses());
+		assertNotSame(fd2, fd2.withoutAccesses());
+		assertTrue(fd2.withoutAccesses().getVarsWritten().isEmpty());
+
+		frameTypes.seal();
+		assertEquals(Arrays.asList(expectedArr), fd2.getLocals());
+	}
+
 	@Test
 	public void testCopyFrameListWithLegalLists() {
 		FrameData fd = new FrameData(emptyList, emptyList, uninitializedTypes, nopInsn);
@@ -0,0 +1,65 @@
+package esi.bc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.commons.Method;
+
+import esi.bc.manip.CodeModifier;
+import esi.bc.manip.IdentityConstantsMutator;
+import esi.bc.test.Fact;
+
+public class MethodDigestTest {
+
+	private static AnalyzedClassNode factNode;
+	private static Method            factMethod;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException {
+		factNode   = AnalyzedClassNode.readClass(Fact.class);
+		factMethod = new Method("fact", "(I)I");
+	}
+
+	@Test
+	public void renamedClass() {
+		ClassReader renamed1 = new CodeModifier(Fact.class.getName() + "Digest1", factNode, factMethod,
+				new IdentityConstantsMutator(), null, false).getClassReader();
+		ClassReader renamed2 = new CodeModifier(Fact.class.getName() + "Digest22", factNode, factMethod,
+				new IdentityConstantsMutator(), null, false).getClassReader();
+
+		MethodDigest digest = MethodDigest.digest(renamed1, factMethod);
+		assertEquals(digest, MethodDigest.digest(renamed2, factMethod));
+		assertEquals(digest.hashCode(), MethodDigest.digest(renamed2, factMethod).hashCode());
+		assertEquals(40, digest.toString().length());
+
+		// Same as the analyzed class node
+		assertEquals(digest, MethodDigest.digest(factNode, factMethod));
+	}
+
+	@Test
+	public void mutatedClass() {
+		ClassReader mutated = new CodeModifier(Fact.class.getName() + "Digest3", factNode, factMethod,
+				new IdentityConstantsMutator() {
+					@Override
+					public int mutate(int x) {
+						return x + 1;
+					}
+				}, null, false).getClassReader();
+
+		assertFalse(MethodDigest.digest(factNode, factMethod).equals(MethodDigest.digest(mutated, factMethod)));
+
+		// Other method of the same class
+		assertFalse(MethodDigest.digest(factNode, factMethod).equals(
+				MethodDigest.digest(factNode, new Method("<init>", "()V"))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingMethod() {
+		MethodDigest.digest(factNode, new Method("fact", "(J)J"));
+	}
+
+}
@@ -102,6 +102,49 @@ public class BranchAnalyzerTest {
 		assertEquals(check, allSecs);
 	}
 
+	@Test
+	public void getInstance() {
+		BranchAnalyzer ban = BranchAnalyzer.getInstance(factMethod, false);
+
+		assertSame(ban, BranchAnalyzer.getInstance(factMethod, false));
+		assertNotSame(ban, BranchAnalyzer.getInstance(factMethod, true));
+		assertSame(ban.getSortedSections(), ban.getSortedSections());
+
+		// Same sections as a new analyzer
+		assertEquals(new BranchAnalyzer(factMethod, false).getSortedSections(), ban.getSortedSections());
+	}
+
+	@Test
+	public void getEnclosingSection() {
+		for (boolean incoming: new boolean[] { false, true }) {
+			BranchAnalyzer    ban  = new BranchAnalyzer(factMethod, incoming);
+			List<CodeSection> secs = new ArrayList<CodeSection>();
+			for (CodeSection cs: ban)
+				secs.add(cs);
+
+			for (int start = 0;  start <= 16;  ++start)
+				for (int end = start-1;  end <= 16;  ++end) {
+					// Brute force: latest start, then shortest
+					CodeSection expected = null;
+					for (CodeSection cs: secs)
+						if (cs.start <= start  &&  end <= cs.end
+								&&  (expected == null  ||  cs.start > expected.start
+									||  (cs.start == expected.start  &&  cs.end < expected.end)))
+							expected = cs;
+
+					assertEquals(expected, ban.getEnclosingSection(start, end));
+				}
+
+			assertNull(ban.getEnclosingSection(-1, 0));
+			assertNull(ban.getEnclosingSection(5, 3));
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void getSortedSectionsUnmodifiable() {
+		new BranchAnalyzer(factMethod, true).getSortedSections().get(0).clear();
+	}
+
 	@Test
 	public void testBranchAnalyzerReadsWrites() {
 		BranchAnalyzer ban = new BranchAnalyzer(rwMethod, false);
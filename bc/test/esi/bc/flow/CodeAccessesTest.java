@@ -165,6 +165,19 @@ public class CodeAccessesTest {
 		assertTrue(fa.getVarsWrittenAlways().isEmpty());
 	}
 
+	@Test
+	public void getSectionCached() {
+		// Offsets 9-10 from ESI paper, computed by getSectionFact5
+		FrameActions fa = new CodeAccesses(factMethod).getSection(14, 15);
+		assertSame(fa, new CodeAccesses(factMethod).getSection(14, 15));
+		assertTrue(factMethod.getSectionsCache().size() > 0);
+
+		// Different section and parameters simulation are cached separately
+		assertNotSame(fa, new CodeAccesses(factMethod).getSection(14, 16));
+		assertNotSame(new CodeAccesses(factMethod).getSection(0, 5, false),
+					  new CodeAccesses(factMethod).getSection(0, 5, true));
+	}
+
 	@Test
 	public void getSectionFact5minPopDepthExtra1() {
 		// Offsets 9-10 from ESI paper
@@ -0,0 +1,77 @@
+package esi.bc.flow;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.commons.Method;
+
+import esi.bc.AnalyzedClassNode;
+import esi.bc.AnalyzedMethodNode;
+import esi.bc.test.Fact;
+
+public class SectionsIndexTest {
+
+	private static AnalyzedMethodNode factMethod;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException {
+		AnalyzedClassNode fc = AnalyzedClassNode.readClass(Fact.class);
+		factMethod = fc.findMethod(new Method("fact", "(I)I"));
+		assertNotNull(factMethod);
+	}
+
+	@Test
+	public void cached() {
+		assertSame(SectionsIndex.getDestinationIndex(factMethod), SectionsIndex.getDestinationIndex(factMethod));
+		assertSame(SectionsIndex.getSourceIndex(factMethod),      SectionsIndex.getSourceIndex(factMethod));
+		assertNotSame(SectionsIndex.getDestinationIndex(factMethod), SectionsIndex.getSourceIndex(factMethod));
+	}
+
+	@Test
+	public void destinationSections() {
+		checkIndex(SectionsIndex.getDestinationIndex(factMethod), true);
+	}
+
+	@Test
+	public void sourceSections() {
+		checkIndex(SectionsIndex.getSourceIndex(factMethod), false);
+	}
+
+	// Indexed sections are the branch analyzer sections with reachable [start] and [end]+1
+	private void checkIndex(SectionsIndex index, boolean destination) {
+		CodeAccesses ca = new CodeAccesses(factMethod);
+
+		int count = 0;
+		for (CodeSection section: new BranchAnalyzer(factMethod, destination)) {
+			Integer delta = index.getStackDelta(section);
+
+			if (factMethod.getFrameData(section.start) != null
+					&&  factMethod.getFrameData(section.end + 1) != null) {
+				assertTrue(index.getSortedSections(delta).get(section.size()).contains(section));
+				++count;
+
+				// Delta is consistent with frames actions
+				FrameActions fa = ca.getSection(section.start, section.end);
+				if (fa != null)
+					assertEquals(fa.getStackPushes().size() - fa.getStackPops().size(), delta.intValue());
+			}
+			else
+				assertNull(delta);
+		}
+
+		assertTrue(count > 0);
+		assertEquals(count, index.size());
+
+		// Lists are sorted and consistent
+		for (int delta: index.getStackDeltas())
+			for (Map.Entry<Integer, List<CodeSection>> entry: index.getSortedSections(delta).entrySet())
+				for (CodeSection section: entry.getValue())
+					assertEquals(entry.getKey().intValue(), section.size());
+	}
+
+}
@@ -0,0 +1,99 @@
+package esi.bc.manip;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+
+import com.thoughtworks.xstream.XStream;
+
+import esi.bc.AnalyzedClassNode;
+import esi.bc.manip.test.Constants;
+import esi.util.Config;
+
+public class CodeCounterTest {
+
+	private static final String COUNTED    = "esi.bc.manip.test.Counted";
+	private static final String SUM_METHOD = "sum";
+	private static final int    ID         = 7;
+
+	public static class InstructionsCounter {
+		public static long count;
+
+		public static void count(int id, int instructions) {
+			assertEquals(ID, id);
+			count += instructions;
+		}
+	}
+
+	private static XStream xstream;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		xstream = new XStream();
+	}
+
+	@Test
+	public void consistency() throws IOException {
+		AnalyzedClassNode cn = AnalyzedClassNode.readClass(COUNTED, false, true);
+		String rep = xstream.toXML(cn);
+
+		new CodeCounter(COUNTED + "Cnt", cn, InstructionsCounter.class.getName(), "count", ID);
+		String repAfter = xstream.toXML(cn);
+
+		assertEquals(rep, repAfter);
+	}
+
+	@Test
+	public void classNodeSum() throws Exception {
+		String            name = COUNTED + "CntTree";
+		AnalyzedClassNode cn   = AnalyzedClassNode.readClass(COUNTED, true, true);
+		CodeProducer      cp   = new CodeCounter(name, cn, InstructionsCounter.class.getName(), "count", ID);
+		assertEquals(name, cp.getName());
+
+		testSum(cp);
+	}
+
+	@Test
+	public void classReaderSum() throws Exception {
+		String       name = COUNTED + "CntPipe";
+		ClassReader  cr   = new ClassReader(COUNTED);
+		CodeProducer cp   = new CodeCounter(name, cr, InstructionsCounter.class.getName(), "count", ID);
+		assertEquals(name, cp.getName());
+
+		testSum(cp);
+	}
+
+	@Test
+	public void straightLine() throws Exception {
+		String       name = Constants.class.getName() + "Cnt";
+		ClassReader  cr   = new ClassReader(Constants.class.getName());
+		CodeProducer cp   = new CodeCounter(name, cr, InstructionsCounter.class.getName(), "count", ID);
+
+		Class<?> cl  = cp.getClassLoader(Config.DIR_OUT_TESTS).loadClass(cp.getName());
+		Object   obj = cl.newInstance();
+
+		// iconst_4, ireturn
+		InstructionsCounter.count = 0;
+		assertEquals(4, cl.getDeclaredMethod("getSimpleInt").invoke(obj));
+		assertEquals(2, InstructionsCounter.count);
+	}
+
+	private void testSum(CodeProducer cp) throws Exception {
+		Class<?> cl  = cp.getClassLoader(Config.DIR_OUT_TESTS).loadClass(cp.getName());
+		Method   met = cl.getDeclaredMethod(SUM_METHOD, Integer.TYPE);
+		Object   obj = cl.newInstance();
+
+		// 5 initial, 5 per iteration, 3 per condition, 2 final
+		for (int n = 0;  n < 20;  n += 7) {
+			InstructionsCounter.count = 0;
+			assertEquals(n * (n-1) / 2, met.invoke(obj, n));
+			assertEquals(8*n + 10, InstructionsCounter.count);
+		}
+	}
+
+}
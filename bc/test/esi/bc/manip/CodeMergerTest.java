@@ -3,9 +3,11 @@ package esi.bc.manip;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -14,6 +16,7 @@ import org.objectweb.asm.tree.MethodNode;
 import com.thoughtworks.xstream.XStream;
 
 import esi.bc.AnalyzedClassNode;
+import esi.bc.AnalyzedMethodNode;
 import esi.bc.BytesClassLoader;
 import esi.bc.flow.CodeSection;
 import esi.bc.flow.test.Flow;
@@ -298,6 +301,127 @@ public class CodeMergerTest {
 		new CodeMerger(newName, Fact.class.getName(), factNode, factNode, dest, src);
 	}
 
+	@Test
+	public void labelsPipelines() throws Exception {
+		Method fact = new Method("fact", "(I)I");
+
+		// Same merges as above: regular, empty dest, empty src, full
+		CodeSection[][] sections = {
+				{ new CodeSection(fact, 12, 16), new CodeSection(fact, 11, 11) },
+				{ new CodeSection(fact, 18, 17), new CodeSection(fact, 12, 17) },
+				{ new CodeSection(fact, 12, 17), new CodeSection(fact, 15, 14) },
+				{ new CodeSection(fact, 0, FACT_INSTRS-1), new CodeSection(fact, 0, FACT_INSTRS-1) },
+		};
+
+		String newName = Fact.class.getName() + "LabelsTest";
+		boolean saved  = CodeProducer.isXmlLabels();
+
+		try {
+			for (CodeSection[] xo: sections) {
+				CodeProducer.setXmlLabels(true);
+				byte[] xml    = new CodeMerger(newName, Fact.class.getName(), factNode, factNode, xo[0], xo[1]).getClassReader().b;
+
+				CodeProducer.setXmlLabels(false);
+				byte[] direct = new CodeMerger(newName, Fact.class.getName(), factNode, factNode, xo[0], xo[1]).getClassReader().b;
+
+				assertTrue(Arrays.equals(xml, direct));
+			}
+
+			// Duplication keeps all instructions
+			CodeProducer.setXmlLabels(true);
+			ClassNode xmlDup    = CodeMerger.duplicateClassNode(factNode);
+			CodeProducer.setXmlLabels(false);
+			ClassNode directDup = CodeMerger.duplicateClassNode(factNode);
+
+			assertEquals(xstream.toXML(xmlDup), xstream.toXML(directDup));
+		} finally {
+			CodeProducer.setXmlLabels(saved);
+		}
+
+		// Check that ClassNode of factNode wasn't changed
+		assertEquals(factNodeRep, xstream.toXML(factNode));
+	}
+
+	@Test
+	public void batchLoader() throws Exception {
+		Method fact = new Method("fact", "(I)I");
+
+		String name1 = Fact.class.getName() + "Batch1Test";
+		String name2 = Fact.class.getName() + "Batch2Test";
+		CodeMerger merger1 = new CodeMerger(name1, Fact.class.getName(), factNode, factNode,
+				new CodeSection(fact, 12, 16), new CodeSection(fact, 11, 11));
+		CodeMerger merger2 = new CodeMerger(name2, Fact.class.getName(), factNode, factNode,
+				new CodeSection(fact, 18, 17), new CodeSection(fact, 12, 17));
+
+		// Both classes are defined in same loader, each only once
+		BytesClassLoader loader = new BytesClassLoader();
+		Class<?> class1 = merger1.loadClass(loader);
+		Class<?> class2 = merger2.loadClass(loader);
+
+		assertSame(loader, class1.getClassLoader());
+		assertSame(loader, class2.getClassLoader());
+		assertSame(class1, merger1.loadClass(loader));
+		assertSame(class2, loader.loadClass(name2));
+
+		assertEquals(5 * 5,   class1.getMethod("fact", Integer.TYPE).invoke(class1.newInstance(), 5));
+		assertEquals(1658880, class2.getMethod("fact", Integer.TYPE).invoke(class2.newInstance(), 5));
+
+		// Same name with different bytes
+		CodeMerger other = new CodeMerger(name1, Fact.class.getName(), factNode, factNode,
+				new CodeSection(fact, 18, 17), new CodeSection(fact, 12, 17));
+		try {
+			other.loadClass(loader);
+			fail("Class defined twice");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		// Missing names (second lookup is cached)
+		for (int i = 0;  i < 2;  ++i)
+			try {
+				loader.loadClass(Fact.class.getName() + "Missing");
+				fail("Missing class loaded");
+			} catch (ClassNotFoundException e) {
+				// OK
+			}
+	}
+
+	@Test
+	public void incrementalAnalysis() throws Exception {
+		Method fact = new Method("fact", "(I)I");
+
+		// Same merges as above: regular, empty dest, empty src, full, empty dest start
+		CodeSection[][] sections = {
+				{ new CodeSection(fact, 12, 16), new CodeSection(fact, 11, 11) },
+				{ new CodeSection(fact, 18, 17), new CodeSection(fact, 12, 17) },
+				{ new CodeSection(fact, 12, 17), new CodeSection(fact, 15, 14) },
+				{ new CodeSection(fact, 0, FACT_INSTRS-1), new CodeSection(fact, 0, FACT_INSTRS-1) },
+				{ new CodeSection(fact, 0, -1), new CodeSection(fact, 3, 3) },
+		};
+
+		String newName = Fact.class.getName() + "IncrementalTest";
+
+		for (CodeSection[] xo: sections) {
+			CodeMerger merger = new CodeMerger(newName, Fact.class.getName(), factNode, factNode, xo[0], xo[1]);
+
+			AnalyzedClassNode full = new AnalyzedClassNode();
+			merger.getClassReader().accept(full, ClassReader.EXPAND_FRAMES);
+			AnalyzedClassNode incremental = merger.getSharedClassNode();
+
+			assertEquals(full.methods.size(), incremental.methods.size());
+			for (int i = 0;  i < full.methods.size();  ++i) {
+				AnalyzedMethodNode mn    = (AnalyzedMethodNode) full.methods.get(i);
+				AnalyzedMethodNode incMn = (AnalyzedMethodNode) incremental.methods.get(i);
+
+				// Representation includes frame data, frames actions, and next indexes
+				assertEquals(mn.toString().replaceAll("L\\d+", "L"), incMn.toString().replaceAll("L\\d+", "L"));
+			}
+		}
+
+		// Check that ClassNode of factNode wasn't changed
+		assertEquals(factNodeRep, xstream.toXML(factNode));
+	}
+
 	@Test
 	public void duplicateClassNode() throws IOException {
 		duplicateClassNode(AnalyzedClassNode.readClass(Flow.class));
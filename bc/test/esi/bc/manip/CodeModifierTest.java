@@ -7,6 +7,8 @@ import java.io.IOException;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import com.thoughtworks.xstream.XStream;
 
@@ -32,6 +34,23 @@ public class CodeModifierTest {
 		factNodeRep = xstream.toXML(factNode);
 	}
 
+	@Test
+	public void sharedClassNode() throws Exception {
+		String newName = Fact.class.getName() + "SharedTest";
+		CodeModifier modifier = new CodeModifier(newName, factNode, factMethod, new IdentityConstantsMutator(), null, false);
+
+		// Shared node is created once
+		AnalyzedClassNode shared = modifier.getSharedClassNode();
+		assertSame(shared, modifier.getSharedClassNode());
+		assertEquals(newName.replace('.', '/'), shared.name);
+
+		// Modifiable nodes are copies
+		AnalyzedClassNode node = modifier.getClassNode();
+		assertNotSame(shared, node);
+		assertNotSame(shared, modifier.getClassNode());
+		assertEquals(shared.findMethod(factMethod).instructions.size(), node.findMethod(factMethod).instructions.size());
+	}
+
 	@Test
 	public void testCodeModifier() throws Exception {
 		ConstantsMutator mutator = new IdentityConstantsMutator() {
@@ -85,4 +104,61 @@ public class CodeModifierTest {
 		assertEquals(factNodeRep, xstream.toXML(factNode));
 	}
 
+	@Test
+	public void verifiedMutation() throws Exception {
+		// First mutation removes the first opcode (stack underflow), second one is identity
+		InstructionsMutator mutator = new InstructionsMutator() {
+			private int calls = 0;
+
+			public void mutate(MethodNode node) {
+				if (calls++ == 0)
+					removeFirstOpcode(node);
+			}
+		};
+
+		String newName = Fact.class.getName() + "VerifiedTest";
+		CodeModifier modifier = new CodeModifier(newName, factNode.copy(), factMethod,
+				new IdentityConstantsMutator(), mutator, true, 2);
+		assertTrue(modifier.isVerified());
+		assertEquals(2, modifier.getTries());
+		checkFact(modifier, newName);
+	}
+
+	@Test
+	public void rejectedMutation() throws Exception {
+		// Always removes the first opcode
+		InstructionsMutator mutator = new InstructionsMutator() {
+			public void mutate(MethodNode node) {
+				removeFirstOpcode(node);
+			}
+		};
+
+		String newName = Fact.class.getName() + "RejectedTest";
+		CodeModifier modifier = new CodeModifier(newName, factNode.copy(), factMethod,
+				new IdentityConstantsMutator(), mutator, true, 3);
+
+		// Original code is restored
+		assertFalse(modifier.isVerified());
+		assertEquals(3, modifier.getTries());
+		checkFact(modifier, newName);
+	}
+
+	// Labels are shared with the source node, and are not removed
+	private static void removeFirstOpcode(MethodNode node) {
+		AbstractInsnNode insn = node.instructions.getFirst();
+		while (insn.getOpcode() < 0)
+			insn = insn.getNext();
+
+		node.instructions.remove(insn);
+	}
+
+	private void checkFact(CodeModifier modifier, String newName) throws Exception {
+		Class<?> klass  = modifier.getClassLoader(Config.DIR_OUT_TESTS).loadClass(newName);
+		Object instance = klass.newInstance();
+		assertEquals(120, klass.getMethod("fact", Integer.TYPE).invoke(instance, 5));
+
+		// Check that ClassNode of factNode wasn't changed
+		assertEquals(factNodeRep, xstream.toXML(factNode));
+	}
+
 }
@@ -0,0 +1,70 @@
+package esi.bc.manip;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import esi.bc.AnalyzedClassNode;
+import esi.bc.test.Fact;
+
+public class FramesCacheTest {
+
+	private MethodNode  factMethod;
+	private FramesCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		AnalyzedClassNode fc = AnalyzedClassNode.readClass(Fact.class);
+		factMethod = fc.findMethod(new Method("fact", "(I)I"));
+		cache      = new FramesCache(fc.name, factMethod);
+	}
+
+	@Test
+	public void unchangedFrames() throws Exception {
+		Frame[] frames = cache.getFrames();
+		assertEquals(factMethod.instructions.size(), frames.length);
+		assertSame(frames, cache.getFrames());
+
+		// Verifier frames serve basic requests
+		assertTrue(cache.isVerified());
+		assertNotSame(frames, cache.getFrames());
+		assertSame(cache.getFrames(), cache.getFrames());
+	}
+
+	@Test
+	public void changedFrames() throws Exception {
+		Frame[] frames = cache.getFrames();
+
+		// Remove an opcode and put it back
+		AbstractInsnNode insn = factMethod.instructions.getFirst();
+		while (insn.getOpcode() < 0)
+			insn = insn.getNext();
+		AbstractInsnNode prev = insn.getPrevious();
+
+		factMethod.instructions.remove(insn);
+		assertFalse(cache.isVerified());
+
+		// Failed analysis keeps previous frames
+		factMethod.instructions.insert(prev, insn);
+		assertSame(frames, cache.getFrames());
+	}
+
+	@Test
+	public void validCode() throws Exception {
+		cache.setValid();
+		cache.checkValid();
+
+		// Frames are still computed on demand
+		Frame[] frames = cache.getFrames();
+		assertEquals(factMethod.instructions.size(), frames.length);
+		assertSame(frames, cache.getFrames());
+	}
+
+}
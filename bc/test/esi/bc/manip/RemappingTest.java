@@ -2,6 +2,8 @@ package esi.bc.manip;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,10 +13,12 @@ import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.commons.RemappingClassAdapter;
 import org.objectweb.asm.commons.SimpleRemapper;
 
+import esi.bc.AnalyzedClassNode;
 import esi.bc.BytesClassLoader;
 import esi.bc.manip.test.Rename;
 import esi.bc.manip.test.RenameAnnotation;
@@ -66,6 +70,27 @@ public class RemappingTest {
 		renameClass(Rename.class, remapper, false);
 	}
 
+	@Test
+	public void commonSuperClass() {
+		String className  = Type.getInternalName(Rename.class);
+		String exceptName = Type.getInternalName(RenameException.class);
+		String numberName = Type.getInternalName(Number.class);
+
+		// Cached results are shared, but mapped for each writer
+		for (int i = 0;  i < 2;  ++i) {
+			RemappingClassWriter writer = new RemappingClassWriter(ClassWriter.COMPUTE_FRAMES, map);
+
+			assertEquals(numberName, writer.getCommonSuperClass(Type.getInternalName(Integer.class),
+																Type.getInternalName(Long.class)));
+			assertEquals(map.get(className), writer.getCommonSuperClass(map.get(className), map.get(className)));
+			assertEquals(Type.getInternalName(Object.class),
+					writer.getCommonSuperClass(map.get(className), map.get(exceptName)));
+		}
+
+		RemappingClassWriter writer = new RemappingClassWriter(ClassWriter.COMPUTE_FRAMES, className, "Other");
+		assertEquals("Other", writer.getCommonSuperClass("Other", "Other"));
+	}
+
 	@Test(expected = LinkageError.class)
 	public void clash() throws Exception {
 		ClassReader  reader  = new ClassReader(Type.getInternalName(Rename.class));
@@ -83,6 +108,46 @@ public class RemappingTest {
 		loader.loadClass(Rename.class.getName() + "Test1");
 	}
 
+	@Test
+	public void labelsPipelines() throws Exception {
+		String name = Rename.class.getName() + "LabelsTest";
+
+		// Both pipelines rename the class while serializing class node
+		byte[][] xml    = produceRenamed(name, true);
+		byte[][] direct = produceRenamed(name, false);
+
+		for (int i = 0;  i < xml.length;  ++i)
+			assertTrue("Producer #" + i, Arrays.equals(xml[i], direct[i]));
+
+		// Result is loadable and verifiable
+		new BytesClassLoader(name, direct[0]).loadClass(name).newInstance();
+	}
+
+	private byte[][] produceRenamed(String name, boolean xmlLabels) throws IOException {
+		boolean saved = CodeProducer.isXmlLabels();
+		CodeProducer.setXmlLabels(xmlLabels);
+
+		try {
+			AnalyzedClassNode cn     = AnalyzedClassNode.readClass(Rename.class);
+			Method            method = new Method("f", "(L" + Type.getInternalName(Rename.class) + ";)L"
+					+ Type.getInternalName(Rename.class) + ";");
+
+			// CodeMerger is cross-checked in CodeMergerTest
+			CodeProducer[] producers = {
+					new CodeModifier(name, cn, method, new IdentityConstantsMutator(), null, false),
+					new CodeInterrupter(name, cn, RemappingTest.class.getName(), "interrupt", 0)
+			};
+
+			byte[][] bytes = new byte[producers.length][];
+			for (int i = 0;  i < producers.length;  ++i)
+				bytes[i] = producers[i].getClassReader().b;
+
+			return bytes;
+		} finally {
+			CodeProducer.setXmlLabels(saved);
+		}
+	}
+
 	private Class<?> renameClass(Class<?> klass, Remapper remapper) throws Exception {
 		return renameClass(klass, remapper, true);
 	}
@@ -3,8 +3,10 @@ package esi.bc.xo;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -101,6 +103,23 @@ public class TypeVerifierTest {
 		assertFalse(tv.isNarrowerThan(objType1, objType3));
 	}
 
+	@Test
+	public void isNarrowerThanCached() {
+		String objType   = Type.getInternalName(Object.class);
+		String listType  = Type.getInternalName(List.class);
+		String arrayType = Type.getInternalName(ArrayList.class);
+
+		// Results are the same for new verifiers (cached process-wide)
+		for (int i = 0;  i < 2;  ++i) {
+			TypeVerifier tv = new TypeVerifier(controlNode);
+
+			assertTrue(tv.isNarrowerThan(arrayType, listType));
+			assertFalse(tv.isNarrowerThan(listType, arrayType));
+			assertTrue(tv.isNarrowerThan(listType, objType));
+			assertTrue(tv.isNarrowerThan(listType, listType));
+		}
+	}
+
 	@Test
 	public void isNarrowerThanNoClass() {
 		TypeVerifier tv = new TypeVerifier(controlNode);
@@ -0,0 +1,199 @@
+package esi.finch.ecj.bc;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.apache.commons.logging.Log;
+
+import ec.EvolutionState;
+import ec.Individual;
+import ec.Problem;
+import ec.eval.MasterProblem;
+import ec.simple.SimpleFitness;
+import ec.simple.SimpleProblemForm;
+import ec.steadystate.QueueIndividual;
+import ec.steadystate.SteadyStateEvaluator;
+import esi.util.Config;
+
+/**
+ * Asynchronous variant of {@link SteadyStateEvaluator}, with a persistent
+ * pool of local evaluation threads.
+ *
+ * ECJ supports asynchronous evolution only with a {@link MasterProblem}
+ * and remote slaves. Here, <code>evalthreads-1</code> daemon threads
+ * evaluate individuals with <code>threadnum</code> 1, 2, ..., while the
+ * main thread breeds new individuals with <code>threadnum</code> 0, so
+ * random number generators and step counters are never shared.
+ *
+ * A new individual is submitted whenever an evaluation thread is free,
+ * and evaluated individuals are returned in order of completion. Thus, a
+ * slow evaluation (e.g., a timeout) only occupies its own thread, and the
+ * main thread only waits when all evaluation threads are busy.
+ *
+ * If the evaluation of an individual with {@link SimpleFitness} fails with
+ * an exception or a {@link LinkageError} (e.g., a {@link VerifyError} of an
+ * evolved class), the individual gets the worst fitness, so that one bad
+ * individual does not fail the run. Other failures are rethrown in the main
+ * thread when the individual would have been returned.
+ *
+ * With a single evaluation thread, individuals are evaluated synchronously,
+ * as in {@link SteadyStateEvaluator}.
+ */
+public class AsynchronousEvaluator extends SteadyStateEvaluator {
+
+	private static final long	serialVersionUID = 1L;
+	private static final Log	log = Config.getLogger();
+
+	// Evaluation threads and their queues (not checkpointed)
+	private transient Worker[]	workers;
+	private transient BlockingQueue<QueueIndividual>	submitted;
+	private transient BlockingQueue<QueueIndividual>	evaluated;
+
+	// Individuals submitted and not yet returned
+	private transient int		pending;
+
+	// First failure of an evaluation thread
+	private transient volatile Throwable	failure;
+
+	// Subpopulation of the last returned individual
+	private int					subpop = -1;
+
+	@Override
+	public void prepareToEvaluate(EvolutionState state, int thread) {
+		if (state.evalthreads == 1) {
+			super.prepareToEvaluate(state, thread);
+			return;
+		}
+
+		submitted = new LinkedBlockingQueue<QueueIndividual>();
+		evaluated = new LinkedBlockingQueue<QueueIndividual>();
+		pending   = 0;
+
+		workers = new Worker[state.evalthreads - 1];
+		for (int x = 0;  x < workers.length;  ++x) {
+			workers[x] = new Worker(state, (SimpleProblemForm) p_problem.clone(), x + 1);
+			workers[x].start();
+		}
+	}
+
+	@Override
+	public void evaluateIndividual(EvolutionState state, Individual ind, int subpop) {
+		if (workers == null)
+			super.evaluateIndividual(state, ind, subpop);
+		else {
+			submitted.add(new QueueIndividual(ind, subpop));
+			++pending;
+		}
+	}
+
+	@Override
+	public boolean canEvaluate() {
+		if (workers == null)
+			return super.canEvaluate();
+
+		return pending < workers.length;
+	}
+
+	@Override
+	public Individual getNextEvaluatedIndividual() {
+		if (workers == null)
+			return super.getNextEvaluatedIndividual();
+
+		QueueIndividual qind;
+		if (pending < workers.length)
+			qind = evaluated.poll();
+		else {
+			// All threads are busy, so there is nothing else to do
+			try {
+				qind = evaluated.take();
+			} catch (InterruptedException e) {
+				throw new Error("Interrupted while waiting for evaluation", e);
+			}
+		}
+
+		if (failure != null)
+			throw new Error("Evaluation thread failed", failure);
+
+		if (qind == null)
+			return null;
+
+		--pending;
+		subpop = qind.subpop;
+		return qind.ind;
+	}
+
+	@Override
+	public int getSubpopulationOfEvaluatedIndividual() {
+		if (workers == null)
+			return super.getSubpopulationOfEvaluatedIndividual();
+
+		return subpop;
+	}
+
+	@Override
+	public void closeContacts(EvolutionState state, int result) {
+		super.closeContacts(state, result);
+
+		// Individuals still being evaluated are discarded
+		if (workers != null)
+			for (Worker worker: workers)
+				worker.interrupt();
+	}
+
+	/**
+	 * Persistent evaluation thread with a fixed thread number.
+	 */
+	private class Worker extends Thread {
+		final EvolutionState	state;
+		final SimpleProblemForm	problem;
+		final int				threadnum;
+
+		Worker(EvolutionState state, SimpleProblemForm problem, int threadnum) {
+			super("Evaluator-" + threadnum);
+			setDaemon(true);
+
+			this.state     = state;
+			this.problem   = problem;
+			this.threadnum = threadnum;
+		}
+
+		@Override
+		public void run() {
+			((Problem) problem).prepareToEvaluate(state, threadnum);
+
+			try {
+				while (true) {
+					QueueIndividual qind = submitted.take();
+
+					try {
+						problem.evaluate(state, qind.ind, qind.subpop, threadnum);
+					} catch (Throwable e) {
+						if (! invalidate(qind.ind, e))
+							synchronized (AsynchronousEvaluator.this) {
+								if (failure == null)
+									failure = e;
+							}
+					}
+
+					// Returned even on failure, so that the main thread does not wait forever
+					evaluated.add(qind);
+				}
+			} catch (InterruptedException e) {
+				((Problem) problem).finishEvaluating(state, threadnum);
+			}
+		}
+
+		// Gives an individual that failed evaluation the worst fitness, if possible
+		private boolean invalidate(Individual ind, Throwable e) {
+			if (!(e instanceof RuntimeException  ||  e instanceof LinkageError)
+					||  !(ind.fitness instanceof SimpleFitness))
+				return false;
+
+			log.debug("Failed evaluation: " + e + " in " + ind);
+			((SimpleFitness) ind.fitness).setFitness(state, Integer.MIN_VALUE, false);
+			ind.evaluated = true;
+
+			return true;
+		}
+	}
+
+}
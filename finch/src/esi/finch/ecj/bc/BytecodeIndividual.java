@@ -10,11 +10,15 @@ import org.xml.sax.SAXException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import org.apache.commons.logging.Log;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
 import ec.EvolutionState;
 import ec.Individual;
 import ec.simple.SimpleFitness;
@@ -22,22 +26,29 @@ import ec.util.MersenneTwisterFast;
 import ec.util.Parameter;
 import esi.bc.AnalyzedClassNode;
 import esi.bc.AnalyzedMethodNode;
+import esi.bc.BytesClassLoader;
+import esi.bc.MethodDigest;
+import esi.bc.manip.CodeCounter;
 import esi.bc.manip.CodeInterrupter;
 import esi.bc.manip.CodeMerger;
 import esi.bc.manip.CodeModifier;
 import esi.bc.manip.CodeProducer;
 import esi.bc.manip.ConstantsMutator;
+import esi.bc.manip.IdentityConstantsMutator;
 import esi.bc.manip.InstructionsMutator;
 import esi.bc.xo.CompatibleCrossover;
 import esi.bc.xo.TypeVerifier;
 import esi.finch.ecj.immutable.ImmutableIndividual;
 import esi.finch.ecj.immutable.ImmutableSpecies;
+import esi.finch.mut.LocalizedMutator;
 import esi.finch.mut.MutationVerifier;
 import esi.finch.mut.MutatorFactory;
 import esi.finch.xo.CrossoverFinder;
 import esi.finch.xo.CrossoverFinder.Sections;
 import esi.util.Config;
 import esi.util.Loader;
+import esi.util.PaddedCounters;
+import esi.util.SandBox;
 import esi.util.SpecializedConstants;
 
 /**
@@ -51,7 +62,11 @@ import esi.util.SpecializedConstants;
  * <li><tt>method-desc</tt> (optional method descriptor),
  * <li><tt>xo-class</tt> (crossover finder class)
  * <li><tt>mut-class</tt> (constants mutation class, assumes mut-prob > 0)
- * <li><tt>max-growth</tt> (optional maximal method growth factor).
+ * <li><tt>max-growth</tt> (optional maximal method growth factor)
+ * <li><tt>cancellable</tt> (optional, whether {@link #getMethod()} returns a
+ * method instrumented with {@link SandBox#checkpoint(int)}, so that timed out
+ * evaluations are cancelled cooperatively; default is
+ * <code>class.BytecodeIndividual.cancellable</code>).
  * </ul>
  *
  * <p>
@@ -61,6 +76,11 @@ import esi.util.SpecializedConstants;
  * individuals in {@link Config#DIR_OUT_ECJ}
  * <li><code>class.BytecodeIndividual.steps-indexes</code>: number of supported
  * indexes for given evaluation thread step counters
+ * <li><code>class.BytecodeIndividual.batch-loader</code>: whether classes of
+ * each generation are loaded by a single shared class loader (see
+ * {@link #setGeneration(int)}), instead of a class loader per class request
+ * <li><code>class.BytecodeIndividual.cancellable</code>: default of the
+ * <tt>cancellable</tt> parameter
  * </ul>
  *
  * @author Michael Orlov
@@ -69,6 +89,12 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 
 	private static final boolean DUMP = SpecializedConstants.getBoolean(BytecodeIndividual.class, "dump");
 	private static final int STEPS_MULT = SpecializedConstants.getInt(BytecodeIndividual.class, "steps-indexes");
+	private static final boolean BATCH_LOADER = SpecializedConstants.getBoolean(BytecodeIndividual.class, "batch-loader");
+	private static final boolean CANCELLABLE = SpecializedConstants.getBoolean(BytecodeIndividual.class, "cancellable");
+	// Class name suffixes of instrumented genome classes
+	private static final String INTERRUPTIBLE_SUFFIX = "_Int";
+	private static final String CANCELLABLE_SUFFIX = "_Can";
+	private static final String COUNTABLE_SUFFIX = "_Cnt";
 	private static int BYTE_COUNT_LIMIT;
 	private static final Log log = Config.getLogger();
 
@@ -82,10 +108,12 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	private static final String P_XO_CLASS = "xo-class";
 	private static final String P_MUT_CLASS = "mut-class";
 	private static final String P_MAX_GROWTH = "max-growth";
+	private static final String P_CANCELLABLE = "cancellable";
 
 	private boolean mutateInstructions;
 	private boolean useDistribution;
 	private boolean verifyMutations;
+	private boolean verifyAnalyzer;
 	private int verifyTries;
 	private Map<MutatorFactory.MutationType, Double> mutationDistribution;
 
@@ -93,23 +121,33 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	 * If steps limit for the given thread is set, decrement it and throw
 	 * {@link InterruptedException} if zero is reached.
 	 *
-	 * If steps limit is not set, call {@link Thread#sleep(long)} to allow
-	 * interruption of the thread.
+	 * If steps limit is not set, call {@link SandBox#checkpoint(int)} to allow
+	 * cancellation of the thread.
 	 *
 	 * NOTE: the interrupt method is static in order to keep
 	 * {@link CodeInterrupter} framework simple, which implies appropriate
 	 * limitations.
 	 */
 	public static class StepsInterrupter {
-		// Per-evaluation steps (initialized in setup)
-		private static long[] steps;
+		// Per-evaluation steps, padded against false sharing (initialized in setup)
+		private static PaddedCounters steps;
+
+		/**
+		 * Sets the steps limit for a counter before evaluation.
+		 *
+		 * @param id counter id
+		 * @param maxSteps maximum number of steps (0 means no limit)
+		 */
+		public static void reset(int id, long maxSteps) {
+			steps.set(id, maxSteps);
+		}
 
 		public static void interrupt(int id) throws InterruptedException {
-			if (steps[id] != 0) {
-				if (--steps[id] == 0)
+			if (steps.get(id) != 0) {
+				if (steps.decrement(id) == 0)
 					throw new InterruptedException("Steps limit exceeded");
 			} else
-				Thread.sleep(0);
+				SandBox.checkpoint(id);
 		}
 	}
 	
@@ -118,22 +156,41 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	 * Steps interrupter counts when a backward jump or invocation is made,
 	 * for some improvement tasks we'd like to count how many bytecode instructions
 	 * are executed by a method. 
+	 *
+	 * The count callback is invoked by {@link CodeCounter} instrumentation
+	 * once per basic block, and throws {@link InterruptedException} if the
+	 * count reaches the <tt>bytecode.count.limit</tt> parameter (if positive).
+	 * Counters can be passed to {@link SandBox}, which resets them before
+	 * each call and reports the count in its results.
 	 */
 	public static class ByteCodeCounter {
-		private static long[] bytecodes;
+		// Per-evaluation counts, same ids as steps (initialized in setup)
+		private static PaddedCounters bytecodes;
 		
-		public static void count(int id) throws InterruptedException {
-			if (bytecodes[id] < BYTE_COUNT_LIMIT) {
-				if (++bytecodes[id] >= BYTE_COUNT_LIMIT) {
-					throw new InterruptedException("Bytecode limit exceeded");
-				}
-			}
-			else {
-				Thread.sleep(0);
-			}
+		public static void count(int id, int instructions) throws InterruptedException {
+			long count = bytecodes.get(id) + instructions;
+			bytecodes.set(id, count);
+
+			if (BYTE_COUNT_LIMIT > 0  &&  count >= BYTE_COUNT_LIMIT)
+				throw new InterruptedException("Bytecode limit exceeded");
+
+			SandBox.checkpoint(id);
+		}
+
+		/**
+		 * @return per-evaluation counters, indexed by {@link BytecodeIndividual#getCounterId(int, int)}
+		 */
+		public static PaddedCounters getCounters() {
+			return bytecodes;
 		}
 	}
 	
+	// Shared class loader of the evaluated generation (batch loader mode)
+	private static BytesClassLoader generationLoader;
+	private static int loaderGeneration = -1;
+	// Generation being evaluated
+	private static int evaluatedGeneration = -1;
+
 	// Per-breed counters (initialized in setup)
 	private int[] counters;
 	// Initial values (filled in setup)
@@ -145,16 +202,41 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	private Class<? extends ConstantsMutator> mutConstantsClass;
 	private int initSize;
 	private float maxGrowth;
+	private boolean cancellable;
 
 	// Genome
 	private int size; // bytecode length (or initSize)
 	private CodeProducer producer; // for accessing individuals' classes
 	private Object info; // used in genome representation
 
+	// Interruptible classes of the genome (shared by clones)
+	private transient InterruptibleMethods interruptibles;
+
+	// Interruptible methods per steps counter id, loaded by given class loader
+	private static class InterruptibleMethods {
+		final BytesClassLoader loader;
+		final Map<String, java.lang.reflect.Method> methods;
+
+		InterruptibleMethods(BytesClassLoader loader) {
+			this.loader = loader;
+			methods = new HashMap<String, java.lang.reflect.Method>();
+		}
+	}
+
 	@Override
 	public BytecodeIndividual crossover(BytecodeIndividual other, EvolutionState state, int thread) {
+		return crossover(Collections.singletonList(other), state, thread);
+	}
+
+	/**
+	 * Crossover sections are searched in all other individuals at once (see
+	 * {@link CrossoverFinder#getSuggestions(Class, AnalyzedMethodNode, List, List, MersenneTwisterFast, int)}),
+	 * and one of the found suggestions is picked at random.
+	 */
+	@Override
+	public BytecodeIndividual crossover(List<BytecodeIndividual> others, EvolutionState state, int thread) {
 		// Individuals entering crossover pipeline are already evaluated
-		assert evaluated && other.evaluated;
+		assert evaluated;
 
 		ImmutableSpecies species = (ImmutableSpecies) this.species;
 		MersenneTwisterFast random = state.random[thread];
@@ -169,9 +251,8 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 
 			// Alpha and beta class nodes
 			AnalyzedClassNode alphaClassNode;
-			AnalyzedClassNode betaClassNode;
 			try {
-				alphaClassNode = getClassNode();
+				alphaClassNode = getSharedClassNode();
 
 			} catch (RuntimeException e) {
 				// Invalid code structure, assign minimal fitness.
@@ -181,32 +262,39 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 				return res;
 			}
 
-			try {
-				betaClassNode = other.getClassNode();
-			} catch (RuntimeException e) {
-				// Other has invalid code structure.
-				// Assign it minimal fitness, and quit crossover attempt.
-				SimpleFitness sfit = (SimpleFitness) other.fitness;
-				sfit.setFitness(state, Integer.MIN_VALUE, false);
-				other.fitness = sfit;
-				return res;
-			}
+			List<AnalyzedClassNode> betaClassNodes = new ArrayList<AnalyzedClassNode>(others.size());
+			for (BytecodeIndividual other: others) {
+				assert other.evaluated;
 
-			TypeVerifier verifier = new TypeVerifier(alphaClassNode, betaClassNode);
+				try {
+					betaClassNodes.add(other.getSharedClassNode());
+				} catch (RuntimeException e) {
+					// Other has invalid code structure.
+					// Assign it minimal fitness, and skip it.
+					SimpleFitness sfit = (SimpleFitness) other.fitness;
+					sfit.setFitness(state, Integer.MIN_VALUE, false);
+					other.fitness = sfit;
+				}
+			}
 
 			// Alpha and beta method nodes
 			AnalyzedMethodNode alphaMethod = alphaClassNode.findMethod(methodDef);
-			AnalyzedMethodNode betaMethod = betaClassNode.findMethod(methodDef);
+			List<AnalyzedMethodNode> betaMethods = new ArrayList<AnalyzedMethodNode>(betaClassNodes.size());
+			List<TypeVerifier> verifiers = new ArrayList<TypeVerifier>(betaClassNodes.size());
+			for (AnalyzedClassNode betaClassNode: betaClassNodes) {
+				betaMethods.add(betaClassNode.findMethod(methodDef));
+				verifiers.add(new TypeVerifier(alphaClassNode, betaClassNode));
+			}
 
 			// Pick crossover sections
-			CompatibleCrossover xo;
-			CrossoverFinder xoFinder;
-			Sections xoSections;
+			List<Sections> suggestions;
 			try {
-				 xo = new CompatibleCrossover(alphaMethod, betaMethod, verifier);
-				 xoFinder = Loader.loadClassInstance(xoFinderClass, alphaMethod, betaMethod, xo, random,
-							Math.round(initSize * maxGrowth));
-				 xoSections = xoFinder.getSuggestion();
+				List<CompatibleCrossover> xos = new ArrayList<CompatibleCrossover>(betaMethods.size());
+				for (int i = 0;  i < betaMethods.size();  ++i)
+					xos.add(new CompatibleCrossover(alphaMethod, betaMethods.get(i), verifiers.get(i)));
+
+				suggestions = CrossoverFinder.getSuggestions(xoFinderClass, alphaMethod, betaMethods, xos, random,
+						Math.round(initSize * maxGrowth));
 			}
 			catch (RuntimeException e) {
 				// Something wrong with the stack data. 
@@ -216,13 +304,22 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 				// Something wrong with the frame layout.
 				return res; 
 			}
-			
+
+			// Indexes of individuals for which crossover was found
+			List<Integer> found = new ArrayList<Integer>(suggestions.size());
+			for (int i = 0;  i < suggestions.size();  ++i)
+				if (suggestions.get(i) != null)
+					found.add(i);
+
 			// If crossover was found
-			if (xoSections != null) {
+			if (! found.isEmpty()) {
+				int      chosen     = found.get((found.size() == 1) ? 0 : random.nextInt(found.size()));
+				Sections xoSections = suggestions.get(chosen);
+
 				// Bytecode merger
 				CodeMerger merger;
 				try {
-					 merger = new CodeMerger(name, origName, alphaClassNode, betaClassNode, xoSections.alpha,
+					 merger = new CodeMerger(name, origName, alphaClassNode, betaClassNodes.get(chosen), xoSections.alpha,
 							xoSections.beta);
 				}
 				catch (RuntimeException e) {
@@ -277,13 +374,18 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	 */
 	public BytecodeIndividual safeMutation(EvolutionState state, int thread, 
 			ImmutableSpecies species, MersenneTwisterFast random, BytecodeIndividual res) {
+		// Cheaper pre-verification on the in-memory method node
+		if (verifyAnalyzer) {
+			BytecodeIndividual mutant = analyzerMutation(state, thread, species, random, res);
+			return (mutant != null)  ?  mutant  :  res;
+		}
+
 		// New name (although same names are ok)
 		String name = createClassName(state.generation, thread);
 
-		AnalyzedClassNode originalClassNode = getClassNode();
-		AnalyzedMethodNode originalMethod = originalClassNode.findMethod(methodDef);
+		AnalyzedClassNode originalClassNode = getSharedClassNode();
 		
-		ConstantsMutator mutator = Loader.loadClassInstance(mutConstantsClass, species.getMutProb(), random);
+		ConstantsMutator mutator = createConstantsMutator(species, random);
 
 		InstructionsMutator instructions_mutator;
 		if (useDistribution) {
@@ -292,39 +394,26 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 			instructions_mutator = MutatorFactory.makeMutator(random, species.getMutProb());
 		}
 		
-		AnalyzedClassNode mutantClassNode = null;
 		CodeModifier modifier = null;
-		AnalyzedMethodNode mutantMethod = null;
-		TypeVerifier verifier = null;
-		CompatibleCrossover xo = null;
-		MutationVerifier mutVerifier = null;
 		
 		int i = 0; 
 		// Attempt to mutate until we find a valid mutation.
 		do {
-			mutantClassNode = getClassNode(); // Not a reference, points to the same class but different object than original.
-			
 			try {
-				modifier = new CodeModifier(name, mutantClassNode, methodDef, mutator, instructions_mutator,
+				// Copy, since modifier changes the class node.
+				modifier = new CodeModifier(name, getClassNode(), methodDef, mutator, instructions_mutator,
 						mutateInstructions);
 			}
 			catch (RuntimeException e) {
 				return res;
 			}
 			
-			mutantMethod = mutantClassNode.findMethod(methodDef);
-			
-			verifier = new TypeVerifier(originalClassNode, mutantClassNode);
-			xo = new CompatibleCrossover(originalMethod, mutantMethod, verifier);
-			
-			mutVerifier = new MutationVerifier(originalMethod, mutantMethod, xo);
-			
 			if (i++ >= verifyTries) {
 				//System.out.println("Too many tries at mutation.");
 				break;
 			}
 			
-		} while(! mutVerifier.isValidMutation());
+		} while(! isValidMutation(originalClassNode, modifier, instructions_mutator));
 		
 		//System.out.println("Made a good mutation!");
 		
@@ -335,6 +424,120 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		return res;
 	}
 	
+	/**
+	 * Checks a mutant with {@link MutationVerifier}, comparing it to the
+	 * original method. If the instructions mutator reports the edited range,
+	 * only the enclosing sections are compared.
+	 *
+	 * @param originalClassNode original class node
+	 * @param modifier producer of the mutant
+	 * @param instructions_mutator instructions mutator that was used
+	 * @return whether the mutation is valid
+	 */
+	private boolean isValidMutation(AnalyzedClassNode originalClassNode, CodeModifier modifier,
+			InstructionsMutator instructions_mutator) {
+		// Analyzed mutant (shared, so analysis is reused if the mutant is accepted)
+		AnalyzedClassNode mutantClassNode;
+		try {
+			mutantClassNode = modifier.getSharedClassNode();
+		}
+		catch (RuntimeException e) {
+			return false;
+		}
+
+		AnalyzedMethodNode originalMethod = originalClassNode.findMethod(methodDef);
+		AnalyzedMethodNode mutantMethod   = mutantClassNode.findMethod(methodDef);
+
+		TypeVerifier        verifier = new TypeVerifier(originalClassNode, mutantClassNode);
+		CompatibleCrossover xo       = new CompatibleCrossover(originalMethod, mutantMethod, verifier);
+
+		MutationVerifier mutVerifier;
+		if (mutateInstructions  &&  instructions_mutator instanceof LocalizedMutator)
+			mutVerifier = new MutationVerifier(originalMethod, mutantMethod, xo, (LocalizedMutator) instructions_mutator);
+		else
+			mutVerifier = new MutationVerifier(originalMethod, mutantMethod, xo);
+
+		return mutVerifier.isValidMutation();
+	}
+
+	/**
+	 * Perform a safe mutation where each instructions mutation is checked
+	 * with ASM's analyzer on the in-memory method node, before any bytes are
+	 * produced (see {@link CodeModifier#CodeModifier(String, org.objectweb.asm.tree.ClassNode,
+	 * org.objectweb.asm.commons.Method, esi.bc.manip.ConstantsMutator, InstructionsMutator, boolean, int)}).
+	 * Only the accepted mutant is serialized.
+	 *
+	 * {@link BasicVerifier} does not distinguish reference types, so the
+	 * accepted mutant is also checked with {@link MutationVerifier}. If it
+	 * is rejected, mutation continues on the in-memory method node, until a
+	 * mutant passes both verifications or <tt>verify-tries</tt> mutations
+	 * were tried.
+	 *
+	 * @param state
+	 * @param thread
+	 * @param species
+	 * @param random
+	 * @param res
+	 * @return mutated individual, or <code>null</code> if no mutation passed
+	 *   both verifications
+	 */
+	public BytecodeIndividual analyzerMutation(EvolutionState state, int thread,
+			ImmutableSpecies species, MersenneTwisterFast random, BytecodeIndividual res) {
+		// New name (although same names are ok)
+		String name = createClassName(state.generation, thread);
+
+		ConstantsMutator mutator = createConstantsMutator(species, random);
+
+		InstructionsMutator instructions_mutator;
+		if (useDistribution) {
+			instructions_mutator = MutatorFactory.makeMutator(random, mutationDistribution, species.getMutProb());
+		} else {
+			instructions_mutator = MutatorFactory.makeMutator(random, species.getMutProb());
+		}
+
+		AnalyzedClassNode originalClassNode = getSharedClassNode();
+
+		int tries = 0;
+		while (tries < verifyTries) {
+			CodeModifier modifier;
+			try {
+				// Copy, since modifier changes the class node
+				modifier = new CodeModifier(name, getClassNode(), methodDef, mutator, instructions_mutator,
+						mutateInstructions, verifyTries - tries);
+			}
+			catch (RuntimeException e) {
+				return null;
+			}
+
+			if (mutateInstructions  &&  ! modifier.isVerified()) {
+				log.debug("No instructions mutation passed analyzer verification: " + this);
+				return null;
+			}
+
+			// Constants-only mutation is a single try
+			tries += mutateInstructions  ?  modifier.getTries()  :  1;
+
+			if (isValidMutation(originalClassNode, modifier, instructions_mutator)) {
+				// Create and fill new individual
+				res = clone();
+				res.fillGenome(modifier);
+
+				return res;
+			}
+		}
+
+		log.debug("No analyzer-verified mutation passed type verification: " + this);
+		return null;
+	}
+
+	// Constants are not mutated if no constants mutator class is given
+	private ConstantsMutator createConstantsMutator(ImmutableSpecies species, MersenneTwisterFast random) {
+		if (mutConstantsClass == null)
+			return new IdentityConstantsMutator();
+
+		return Loader.loadClassInstance(mutConstantsClass, species.getMutProb(), random);
+	}
+
 	/**
 	 * Perform an unsafe mutation with no verification.
 	 *
@@ -350,7 +553,7 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		// New name (although same names are ok)
 		String name = createClassName(state.generation, thread);
 
-		ConstantsMutator mutator = Loader.loadClassInstance(mutConstantsClass, species.getMutProb(), random);
+		ConstantsMutator mutator = createConstantsMutator(species, random);
 
 		InstructionsMutator instructions_mutator;
 		if (useDistribution) {
@@ -390,6 +593,8 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 				new Parameter("insn.mut.custom-distrib"), false);
 		verifyMutations = state.parameters.getBoolean(new Parameter("insn.mut.verify-mutations"),
 				new Parameter("insn.mut.verify-mutations"), true);
+		verifyAnalyzer = state.parameters.getBoolean(new Parameter("insn.mut.verify-analyzer"),
+				new Parameter("insn.mut.verify-analyzer"), true);
 		verifyTries = state.parameters.getInt(new Parameter("insn.mut.verify-tries"),
 				new Parameter("insn.mut.verify-tries"), 1000);
 		
@@ -427,9 +632,15 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		return producer == null;
 	}
 
+	// Class node shared by all users of this genome, must not be modified
+	private AnalyzedClassNode getSharedClassNode() {
+		// NOTE: Expensive operation on first access - production of AnalyzedClassNode
+		return isInitial() ? initClassNode : producer.getSharedClassNode();
+	}
+
+	// Class node that can be modified (e.g., by CodeModifier)
 	private AnalyzedClassNode getClassNode() {
-		// NOTE: Expensive operation - production of AnalyzedClassNode
-		return isInitial() ? initClassNode : producer.getClassNode();
+		return getSharedClassNode().copy();
 	}
 
 	// Fills the genome's fields
@@ -438,6 +649,7 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		this.producer = producer;
 		evaluated = false;
 		info = null;
+		interruptibles = null;
 
 		// size (for parsimony pressure, if applicable)
 		// class size, not the size used for max growth
@@ -467,12 +679,12 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		synchronized (getClass()) {
 			if (StepsInterrupter.steps == null) {
 				// Initialize per-eval-thread*multiplier step counters
-				StepsInterrupter.steps = new long[state.evalthreads * STEPS_MULT];
+				StepsInterrupter.steps = new PaddedCounters(state.evalthreads * STEPS_MULT);
 			} else
 				log.warn("ECJ attempted to initialize prototype individual more than once");
 			
 			if (ByteCodeCounter.bytecodes == null) {
-				ByteCodeCounter.bytecodes = new long[state.evalthreads * BYTE_COUNT_LIMIT];
+				ByteCodeCounter.bytecodes = new PaddedCounters(state.evalthreads * STEPS_MULT);
 			}
 		}
 
@@ -535,12 +747,15 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		if (maxGrowth == 1 - 1)
 			maxGrowth = 0;
 
+		// Load cooperative cancellation flag (default is given by constant)
+		cancellable = state.parameters.getBoolean(base.push(P_CANCELLABLE), def.push(P_CANCELLABLE), CANCELLABLE);
+
 		setMutationDistribution(state);
 
 		log.info("Bytecode individual set up:" + "\n    class=" + initClass.getName() + "\n    method=" + methodDef
 				+ "\n    size=" + initSize + "\n    xo-class=" + xoFinderClass.getName() + "\n    mut-class="
 				+ (mutConstantsClass == null ? "none" : mutConstantsClass.getName()) + "\n    max-growth=" + maxGrowth
-				+ "\n    mut-insn=" + mutateInstructions);
+				+ "\n    mut-insn=" + mutateInstructions + "\n    cancellable=" + cancellable);
 	}
 
 	@Override
@@ -553,11 +768,17 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	 * {@link BytecodeEvaluator}.
 	 *
 	 * @return Java method of the genome's class
+	 * @throws VerifyError if the class is invalid, or cannot be instrumented
+	 *         (treated as an invalid individual by {@link BytecodeProblem})
 	 */
 	public java.lang.reflect.Method getMethod() {
+		// Instrumented for cooperative cancellation on sandbox timeout
+		if (cancellable)
+			return getInstrumentedMethod(CANCELLABLE_SUFFIX, 0);
+
 		try {
 			// NOTE: Expensive operation - production of Class
-			Class<?> klass = isInitial() ? initClass : producer.getClassLoader().loadClass(producer.getName());
+			Class<?> klass = isInitial() ? initClass : loadClass(producer);
 			assert isInitial() || producer.getName().equals(klass.getName());
 
 			// Use getDeclaredMethod (and not getMethod), since the method can
@@ -576,12 +797,13 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	 * {@link BytecodeEvaluator} that need to get an interruptible class version
 	 * of the genome class.
 	 *
-	 * Uses {@link CodeInterrupter}.
+	 * Uses {@link CodeInterrupter}. The interruptible class is created once
+	 * per genome and steps counter, and the steps limit is reset on each call.
 	 *
 	 * @param maxSteps
 	 *            maximum number of steps before throwing
 	 *            {@link InterruptedException} (0 means no limit, in which case
-	 *            {@link Thread#sleep(long)} is invoked every time)
+	 *            {@link SandBox#checkpoint(int)} is invoked every time)
 	 * @param threadnum
 	 *            number of evaluation thread
 	 * @param index
@@ -591,40 +813,153 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 	 * @return Java method of the genome's interruptible class
 	 */
 	public java.lang.reflect.Method getInterruptibleMethod(long maxSteps, int threadnum, int index) {
-		assert threadnum < (StepsInterrupter.steps.length / STEPS_MULT) && index < STEPS_MULT;
-		int id = index * (StepsInterrupter.steps.length / STEPS_MULT) + threadnum;
-
-		StepsInterrupter.steps[id] = maxSteps;
+		int id = getCounterId(threadnum, index);
 
-		CodeProducer cp = isInitial()
-				? new CodeInterrupter(initClass.getName() + "_Int", initClassNode, StepsInterrupter.class.getName(),
-						"interrupt", id)
-				: new CodeInterrupter(producer.getName() + "_Int", producer.getClassReader(),
-						StepsInterrupter.class.getName(), "interrupt", id);
-
-		try {
-			Class<?> klass = cp.getClassLoader().loadClass(cp.getName());
-			return klass.getDeclaredMethod(methodDef.getName(), methodParams);
-		} catch (ClassNotFoundException e) {
-			throw new Error("Unexpected: class not found", e);
-		} catch (NoSuchMethodException e) {
-			throw new Error("Unexpected: method not found", e);
-		}
+		StepsInterrupter.reset(id, maxSteps);
+		return getInstrumentedMethod(INTERRUPTIBLE_SUFFIX, id);
 	}
-	
+
 	/**
-	 * Just like getInterruptibleMethod, however it counts the number of Bytecode instructions
-	 * executed by a method. 
-	 * 
-	 * **Note: only can work on a singular method, won't count bytecodes executed by external method calls.
-	 * **Note (2): {@link getInterruptibleMethod} won't interrupt external methods either.
+	 * Evolving method accessor, intended to be used by implementers of
+	 * {@link BytecodeEvaluator} that need to count the bytecode instructions
+	 * executed by the genome's method.
+	 *
+	 * Uses {@link CodeCounter}. The countable class is created once per genome
+	 * and counter, and the count is reset on each call. Counts are accumulated
+	 * in {@link ByteCodeCounter#getCounters()} at {@link #getCounterId(int, int)}.
+	 * Instructions executed by methods of other classes are not counted.
+	 *
 	 * @param threadnum
+	 *            number of evaluation thread
 	 * @param index
-	 * @return
+	 *            index to disambiguate several method in same thread (must be
+	 *            less than the "steps-indexes" specialized parameter)
+	 *
+	 * @return Java method of the genome's countable class
 	 */
 	public java.lang.reflect.Method getCountableMethod(int threadnum, int index) {
-		// Ignore me!
-		return null;
+		int id = getCounterId(threadnum, index);
+
+		ByteCodeCounter.bytecodes.set(id, 0);
+		return getInstrumentedMethod(COUNTABLE_SUFFIX, id);
+	}
+
+	/**
+	 * Returns id of the steps and bytecode counters of an evaluation thread.
+	 *
+	 * @param threadnum number of evaluation thread
+	 * @param index index to disambiguate several method in same thread
+	 * @return counter id
+	 */
+	public static int getCounterId(int threadnum, int index) {
+		assert threadnum < (StepsInterrupter.steps.size() / STEPS_MULT) && index < STEPS_MULT;
+		return index * (StepsInterrupter.steps.size() / STEPS_MULT) + threadnum;
+	}
+
+	// Returns cached instrumented method, or creates it
+	private java.lang.reflect.Method getInstrumentedMethod(String suffix, int id) {
+		BytesClassLoader loader = getGenerationLoader();
+
+		// Classes loaded in a previous generation's loader are not reused
+		InterruptibleMethods cache;
+		synchronized (this) {
+			if (interruptibles == null || interruptibles.loader != loader)
+				interruptibles = new InterruptibleMethods(loader);
+
+			cache = interruptibles;
+		}
+
+		synchronized (cache) {
+			// Class name includes id, since a shared loader can hold several versions
+			String name = (isInitial() ? initClass.getName() : producer.getName()) + suffix + id;
+			java.lang.reflect.Method method = cache.methods.get(name);
+
+			if (method == null) {
+				CodeProducer cp;
+
+				try {
+					if (suffix.equals(COUNTABLE_SUFFIX)) {
+						String callback = ByteCodeCounter.class.getName();
+						cp = isInitial()
+								? new CodeCounter(name, initClassNode, callback, "count", id)
+								: new CodeCounter(name, producer.getClassReader(), callback, "count", id);
+					} else {
+						// Cancellable method calls the sandbox directly, without steps counting
+						boolean cancellable    = suffix.equals(CANCELLABLE_SUFFIX);
+						String  callback       = cancellable ? SandBox.class.getName() : StepsInterrupter.class.getName();
+						String  callbackMethod = cancellable ? "checkpoint" : "interrupt";
+
+						cp = isInitial()
+								? new CodeInterrupter(name, initClassNode, callback, callbackMethod, id)
+								: new CodeInterrupter(name, producer.getClassReader(), callback, callbackMethod, id);
+					}
+				} catch (RuntimeException e) {
+					// Frames computation can fail on invalid evolved code
+					VerifyError error = new VerifyError("Cannot instrument " + name + ": " + e);
+					error.initCause(e);
+					throw error;
+				}
+
+				try {
+					Class<?> klass = (loader != null) ? cp.loadClass(loader) : cp.getClassLoader().loadClass(cp.getName());
+					method = klass.getDeclaredMethod(methodDef.getName(), methodParams);
+				} catch (ClassNotFoundException e) {
+					throw new Error("Unexpected: class not found", e);
+				} catch (NoSuchMethodException e) {
+					throw new Error("Unexpected: method not found", e);
+				}
+
+				cache.methods.put(name, method);
+			}
+
+			return method;
+		}
+	}
+
+	/**
+	 * Loads the class of a code producer, either in the shared class loader
+	 * of the current generation, or in a new class loader.
+	 *
+	 * @param cp code producer
+	 * @return the loaded class
+	 * @throws ClassNotFoundException if class cannot be loaded
+	 */
+	private static Class<?> loadClass(CodeProducer cp) throws ClassNotFoundException {
+		BytesClassLoader loader = getGenerationLoader();
+
+		return (loader != null) ? cp.loadClass(loader) : cp.getClassLoader().loadClass(cp.getName());
+	}
+
+	private static synchronized BytesClassLoader getGenerationLoader() {
+		return generationLoader;
+	}
+
+	/**
+	 * Notifies individuals that the given generation is being evaluated.
+	 * In batch loader mode, classes are loaded by a class loader shared
+	 * by all individuals of the generation. When a new generation is
+	 * evaluated, the previous class loader is released as a unit (together
+	 * with its classes). Individuals that survive to the new generation
+	 * have their classes loaded again.
+	 *
+	 * Until the first call, each class request creates a new class loader.
+	 *
+	 * @param generation evaluated generation
+	 */
+	public static synchronized void setGeneration(int generation) {
+		evaluatedGeneration = generation;
+
+		if (BATCH_LOADER  &&  generation != loaderGeneration) {
+			generationLoader = new BytesClassLoader();
+			loaderGeneration = generation;
+		}
+	}
+
+	/**
+	 * @return generation last passed to {@link #setGeneration(int)}, or -1
+	 */
+	public static synchronized int getGeneration() {
+		return evaluatedGeneration;
 	}
 
 	/**
@@ -679,6 +1014,14 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		return (BytecodeIndividual) super.clone();
 	}
 
+	// For testing purposes
+	BytecodeIndividual evolve(CodeProducer producer) {
+		BytecodeIndividual res = clone();
+		res.fillGenome(producer);
+
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		return "Bytecode = " + (isInitial() ? initClass.getName() : producer.getName()) + "." + methodDef + " ["
@@ -695,6 +1038,18 @@ public class BytecodeIndividual extends Individual implements ImmutableIndividua
 		return rep;
 	}
 
+	/**
+	 * Digest of the evolving method, which is the same for individuals
+	 * with the same code, regardless of their class names.
+	 *
+	 * @return digest of the evolving method
+	 * @see FitnessCache
+	 */
+	public MethodDigest getMethodDigest() {
+		return isInitial() ? MethodDigest.digest(initClassNode, methodDef)
+				: MethodDigest.digest(producer.getClassReader(), methodDef);
+	}
+
 	public void setInfo(Object info) {
 		this.info = info;
 	}
@@ -8,6 +8,7 @@ import ec.EvolutionState;
 import ec.Individual;
 import ec.Population;
 import ec.Problem;
+import ec.Setup;
 import ec.Subpopulation;
 import ec.coevolve.CompetitiveEvaluator;
 import ec.coevolve.GroupedProblemForm;
@@ -15,6 +16,7 @@ import ec.simple.SimpleEvaluator;
 import ec.simple.SimpleFitness;
 import ec.simple.SimpleProblemForm;
 import ec.util.Parameter;
+import esi.bc.MethodDigest;
 import esi.finch.ecj.bc.BytecodeEvaluator.MatchResult;
 import esi.finch.ecj.bc.BytecodeEvaluator.Result;
 import esi.util.Config;
@@ -27,18 +29,25 @@ import esi.util.Config;
  * {@link BytecodeEvaluator#evaluate(BytecodeIndividual, long, long, ec.util.MersenneTwisterFast, int)}
  * and {@link BytecodeEvaluator#evaluate(BytecodeIndividual, BytecodeIndividual, long, long, ec.util.MersenneTwisterFast, int)},
  * with <tt>eval</tt> set to {@link SimpleEvaluator} or {@link CompetitiveEvaluator}.
+ * If the bytecode evaluator implements {@link Setup}, it is set up with
+ * <tt>eval-class</tt> as base. Individuals whose classes cannot be loaded
+ * or instrumented ({@link LinkageError}, e.g., {@link VerifyError}) get the
+ * worst fitness.
  *
  * <p>Default base: <tt>bytecode.prob</tt>.
  * Parameters:
  * <ul>
  * <li><tt>eval-class</tt> (name of evaluating class),
  * <li><tt>timeout</tt>    (evaluation timeout in ms),
- * <li><tt>steps</tt>      (optional maximum number of steps).
+ * <li><tt>steps</tt>      (optional maximum number of steps),
+ * <li><tt>fitness-cache</tt> (optional maximum number of cached results,
+ *                     for deterministic evaluators, see {@link FitnessCache}).
  * </ul>
  *
  * @author Michael Orlov
  */
-public class BytecodeProblem extends Problem implements SimpleProblemForm, GroupedProblemForm {
+public class BytecodeProblem extends Problem implements SimpleProblemForm, GroupedProblemForm,
+		DynamicBreeder.GenerationDependent {
 
 	private static final long   serialVersionUID   = 1L;
 	private static final String P_BYTECODE_PROBLEM = "prob";
@@ -48,26 +57,57 @@ public class BytecodeProblem extends Problem implements SimpleProblemForm, Group
 	private static final String P_EVAL_CLASS = "eval-class";
 	private static final String P_TIMEOUT    = "timeout";
 	private static final String P_STEPS      = "steps";
+	private static final String P_CACHE      = "fitness-cache";
 
 	// Initial values (filled in setup)
 	private BytecodeEvaluator	evaluator;
 	private long				timeout;
 	private long				steps;		// 0 = no limit
 
+	// Shared by clones of evaluation threads (not checkpointed)
+	private transient FitnessCache	fitnessCache;	// null = no cache
+
+	// Evaluated generation of this clone (-1 = state.generation)
+	private int					generation = -1;
+
 	@Override
 	public void evaluate(EvolutionState state, Individual ind,
 			int subpopulation, int threadnum) {
 		// don't evaluate if already evaluated
 		if (! ind.evaluated) {
 			log.trace("Evaluating: " + ind);
+			BytecodeIndividual.setGeneration(getEvaluatedGeneration(state));
 
 			assert ind         instanceof BytecodeIndividual;
 			assert ind.fitness instanceof SimpleFitness;
 			SimpleFitness sfit = (SimpleFitness) ind.fitness;
 
+			// individuals with same code have same fitness
+			MethodDigest digest = null;
+			Result       result = null;
+			if (fitnessCache != null) {
+				digest = ((BytecodeIndividual) ind).getMethodDigest();
+				result = fitnessCache.get(digest);
+
+				if (result != null)
+					log.trace("Cached fitness: " + ind);
+			}
+
 			// evaluate individual (higher fitness is better)
 			// and report fitness (ideal if full match)
-			Result result = evaluator.evaluate((BytecodeIndividual) ind, timeout, steps, state.random[threadnum], threadnum);
+			if (result == null) {
+				try {
+					result = evaluator.evaluate((BytecodeIndividual) ind, timeout, steps, state.random[threadnum], threadnum);
+				} catch (LinkageError e) {
+					// Evolved class that cannot be loaded or instrumented (e.g., VerifyError)
+					log.debug("Invalid individual: " + e + " in " + ind);
+					result = new Result(Integer.MIN_VALUE, false);
+				}
+
+				if (fitnessCache != null)
+					fitnessCache.put(digest, result);
+			}
+
 			sfit.setFitness(state, result.fitness, result.ideal);
 
 			log.trace(sfit.fitnessToStringForHumans() + ", " + ind);
@@ -98,6 +138,9 @@ public class BytecodeProblem extends Problem implements SimpleProblemForm, Group
 		}
 
 		log.info("Best individual: " + ind);
+
+		if (fitnessCache != null)
+			log.info("Fitness cache: " + fitnessCache);
 	}
 
 	@Override
@@ -108,6 +151,8 @@ public class BytecodeProblem extends Problem implements SimpleProblemForm, Group
 
 		// Load evaluator class
 		evaluator = (BytecodeEvaluator) state.parameters.getInstanceForParameter(base.push(P_EVAL_CLASS), def.push(P_EVAL_CLASS), BytecodeEvaluator.class);
+		if (evaluator instanceof Setup)
+			((Setup) evaluator).setup(state, base.push(P_EVAL_CLASS));
 
 		// Load non-negative timeout
 		timeout = state.parameters.getLong(base.push(P_TIMEOUT), def.push(P_TIMEOUT), 0);
@@ -119,10 +164,26 @@ public class BytecodeProblem extends Problem implements SimpleProblemForm, Group
 		if (steps == 1-1)
 			steps = 0;
 
+		// Load optional fitness cache size (0 = no cache)
+		int cacheSize = state.parameters.getIntWithDefault(base.push(P_CACHE), def.push(P_CACHE), 0);
+		if (cacheSize < 0)
+			state.output.error("Fitness cache size is negative", base.push(P_CACHE), def.push(P_CACHE));
+		fitnessCache = (cacheSize > 0)  ?  new FitnessCache(cacheSize)  :  null;
+
 		log.info("Bytecode problem set up:"
-				+ "\n    eval-class=" + evaluator.getClass().getName()
-				+ "\n    timeout="    + timeout + "ms"
-				+ "\n    steps="      + steps);
+				+ "\n    eval-class="    + evaluator.getClass().getName()
+				+ "\n    timeout="       + timeout + "ms"
+				+ "\n    steps="         + steps
+				+ "\n    fitness-cache=" + cacheSize);
+	}
+
+	@Override
+	public void setEvaluatedGeneration(int generation) {
+		this.generation = generation;
+	}
+
+	private int getEvaluatedGeneration(EvolutionState state) {
+		return (generation == -1)  ?  state.generation  :  generation;
 	}
 
 	@Override
@@ -187,6 +248,8 @@ public class BytecodeProblem extends Problem implements SimpleProblemForm, Group
 		BytecodeIndividual bind2 = (BytecodeIndividual) ind[1];
 		assert bind1 != bind2  &&  bind1.fitness != bind2.fitness;
 
+		BytecodeIndividual.setGeneration(getEvaluatedGeneration(state));
+
 		// evaluate individuals one against the other
 		// and increment fitness of the winner (if draw pick randomly)
 		MatchResult result = evaluator.evaluate(bind1, bind2, timeout, steps, state.random[threadnum], threadnum);
@@ -0,0 +1,290 @@
+package esi.finch.ecj.bc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ec.BreedingPipeline;
+import ec.EvolutionState;
+import ec.Individual;
+import ec.Population;
+import ec.Problem;
+import ec.simple.SimpleBreeder;
+import ec.simple.SimpleProblemForm;
+import ec.util.MersenneTwisterFast;
+import ec.util.Parameter;
+
+/**
+ * Variant of {@link SimpleBreeder} with a persistent pool of breeding
+ * threads (see {@link WorkerPool}) that take small chunks of children
+ * dynamically.
+ *
+ * FINCH breeding cost varies per child (e.g., a crossover may find
+ * a section on the first try, or give up after many tries), so equal
+ * static chunks leave threads idle.
+ *
+ * Each chunk is bred with its own random number generator, installed
+ * as <code>state.random[threadnum]</code> of the breeding thread. Chunk
+ * generators are seeded from <code>state.random[0]</code> before breeding
+ * starts, so for a fixed seed the new population does not depend on the
+ * scheduling of chunks, nor on the number of breeding threads.
+ * Breeding pipelines must thus not keep state between produced children.
+ *
+ * In pipelined mode, bred chunks are queued for evaluation, and the
+ * breeding threads evaluate queued chunks while other chunks are still
+ * being bred. Breeding only reads the previous population, so parents
+ * and selection are the same as without pipelining. The evaluator then
+ * only evaluates the remaining individuals (e.g., re-evaluated elites),
+ * since its problem skips evaluated individuals. A breeding thread
+ * evaluates with the same <code>threadnum</code> (and its own random
+ * number generator), so the numbers of breeding and evaluation threads
+ * must be equal. If breeding or evaluation fails, the other threads stop,
+ * and the failure is rethrown in the main thread.
+ *
+ * Children are evaluated before <code>state.generation</code> is
+ * incremented. A problem whose evaluation depends on the generation
+ * (e.g., {@link BytecodeProblem}, which sets the generation for batch class
+ * loading and per-generation test sets) must implement
+ * {@link GenerationDependent}, and its clones then evaluate the children
+ * with the next generation, as without pipelining. Other problems must not
+ * depend on the generation.
+ *
+ * <p><b>Parameters</b><br>
+ * <table>
+ * <tr><td valign=top><tt><i>base</i>.chunk-size</tt><br>
+ * <font size=-1>int >= 1 (default=4)</font></td>
+ * <td valign=top>(maximal number of children in a chunk)</td></tr>
+ * <tr><td valign=top><tt><i>base</i>.pipelined</tt><br>
+ * <font size=-1>boolean (default=false)</font></td>
+ * <td valign=top>(whether bred children are evaluated during breeding)</td></tr>
+ * </table>
+ */
+public class DynamicBreeder extends SimpleBreeder {
+
+	private static final long	serialVersionUID = 1L;
+
+	public static final String	P_CHUNK_SIZE = "chunk-size";
+	public static final String	P_PIPELINED  = "pipelined";
+	public static final int		DEFAULT_CHUNK_SIZE = 4;
+
+	// Marks the end of bred chunks in pipelined mode
+	private static final Chunk	END = new Chunk(-1, 0, 0, 0);
+
+	private int					chunkSize;
+	private boolean				pipelined;
+
+	// Breeding threads (not checkpointed)
+	private transient WorkerPool	workers;
+
+	@Override
+	public void setup(EvolutionState state, Parameter base) {
+		super.setup(state, base);
+
+		chunkSize = state.parameters.getIntWithDefault(base.push(P_CHUNK_SIZE), null, DEFAULT_CHUNK_SIZE);
+		if (chunkSize < 1)
+			state.output.fatal("Chunk size must be >= 1", base.push(P_CHUNK_SIZE));
+
+		pipelined = state.parameters.getBoolean(base.push(P_PIPELINED), null, false);
+		if (pipelined  &&  state.breedthreads != state.evalthreads)
+			state.output.fatal("Pipelined breeding requires equal numbers of breeding and evaluation threads",
+					base.push(P_PIPELINED));
+	}
+
+	@Override
+	public Population breedPopulation(EvolutionState state) {
+		Population newpop = (Population) state.population.emptyClone();
+
+		// load elites into top of newpop
+		loadElites(state, newpop);
+
+		if (pipelined  &&  ! (state.evaluator.p_problem instanceof SimpleProblemForm))
+			state.output.fatal("Pipelined breeding requires a Problem of SimpleProblemForm");
+
+		Generation generation = new Generation(state, newpop);
+
+		if (state.breedthreads == 1) {
+			try {
+				generation.run(0);
+			} catch (InterruptedException e) {
+				state.output.fatal("Whoa! The main breeding thread got interrupted!  Dying...");
+			}
+		}
+		else {
+			if (workers == null  ||  workers.size() != state.breedthreads)
+				workers = new WorkerPool("Breeder", state.breedthreads);
+
+			try {
+				workers.execute(generation);
+			} catch (InterruptedException e) {
+				state.output.fatal("Whoa! The main breeding thread got interrupted!  Dying...");
+			}
+
+			if (generation.isFailed())
+				throw new Error("Breeding thread failed", generation.getFailure());
+		}
+
+		return newpop;
+	}
+
+	/**
+	 * Problem whose evaluation depends on the evaluated generation.
+	 */
+	public interface GenerationDependent {
+		/**
+		 * Sets the generation that this problem (clone) evaluates, instead
+		 * of <code>state.generation</code>.
+		 *
+		 * @param generation evaluated generation
+		 */
+		void setEvaluatedGeneration(int generation);
+	}
+
+	/**
+	 * Children [from,to) of a subpopulation.
+	 */
+	private static class Chunk {
+		final int					subpop;
+		final int					from;
+		final int					to;
+		final MersenneTwisterFast	random;
+
+		Chunk(int subpop, int from, int to, long seed) {
+			this.subpop = subpop;
+			this.from   = from;
+			this.to     = to;
+			random      = new MersenneTwisterFast(seed);
+		}
+	}
+
+	/**
+	 * Breeding of one generation by all threads.
+	 */
+	private class Generation extends WorkerPool.Task {
+		final EvolutionState	state;
+		final Population		newpop;
+
+		final List<Chunk>		chunks;
+		final AtomicInteger		nextChunk;
+
+		// Pipelined mode: bred chunks, and number of threads still breeding
+		final BlockingQueue<Chunk>	bred;
+		final AtomicInteger		breeding;
+
+		Generation(EvolutionState state, Population newpop) {
+			this.state  = state;
+			this.newpop = newpop;
+
+			// Chunks and their seeds are determined in advance
+			chunks = new ArrayList<Chunk>();
+			for (int x = 0;  x < newpop.subpops.length;  ++x) {
+				int length = computeSubpopulationLength(newpop, x);
+
+				for (int from = 0;  from < length;  from += chunkSize)
+					chunks.add(new Chunk(x, from, Math.min(from + chunkSize, length), state.random[0].nextLong()));
+			}
+
+			nextChunk = new AtomicInteger();
+			bred      = new LinkedBlockingQueue<Chunk>();
+			breeding  = new AtomicInteger(state.breedthreads);
+		}
+
+		// Breeds (and in pipelined mode, evaluates) chunks until none are left
+		@Override
+		void run(int threadnum) throws InterruptedException {
+			BreedingPipeline[] pipes   = new BreedingPipeline[newpop.subpops.length];
+			SimpleProblemForm  problem = null;
+
+			try {
+				int index;
+				while (! isFailed()  &&  (index = nextChunk.getAndIncrement()) < chunks.size()) {
+					Chunk chunk = chunks.get(index);
+					breed(chunk, pipes, threadnum);
+
+					if (pipelined) {
+						bred.add(chunk);
+
+						// Evaluate while other threads are still breeding
+						// (END is only added after all threads finish breeding)
+						Chunk bredChunk = bred.poll();
+						if (bredChunk != null)
+							problem = evaluate(bredChunk, problem, threadnum);
+					}
+				}
+
+				for (int subpop = 0;  subpop < pipes.length;  ++subpop)
+					if (pipes[subpop] != null)
+						pipes[subpop].finishProducing(state, subpop, threadnum);
+			} finally {
+				// Last breeding thread marks the end for all threads
+				if (pipelined  &&  breeding.decrementAndGet() == 0)
+					for (int y = 0;  y < state.breedthreads;  ++y)
+						bred.add(END);
+			}
+
+			if (pipelined) {
+				Chunk chunk;
+				while (! isFailed()  &&  (chunk = bred.take()) != END)
+					problem = evaluate(chunk, problem, threadnum);
+
+				if (problem != null)
+					((Problem) problem).finishEvaluating(state, threadnum);
+			}
+		}
+
+		private void breed(Chunk chunk, BreedingPipeline[] pipes, int threadnum) {
+			MersenneTwisterFast random = state.random[threadnum];
+			state.random[threadnum] = chunk.random;
+
+			try {
+				BreedingPipeline bp = pipes[chunk.subpop];
+				if (bp == null)
+					pipes[chunk.subpop] = bp = preparePipeline(chunk.subpop, threadnum);
+
+				int x = chunk.from;
+				while (x < chunk.to)
+					x += bp.produce(1, chunk.to - x, x, chunk.subpop,
+							newpop.subpops[chunk.subpop].individuals, state, threadnum);
+
+				if (x > chunk.to)
+					state.output.fatal("Whoa!  A breeding pipeline overwrote the space of another pipeline in subpopulation "
+							+ chunk.subpop + ".  You need to check your breeding pipeline code (in produce() ).");
+			} finally {
+				state.random[threadnum] = random;
+			}
+		}
+
+		private SimpleProblemForm evaluate(Chunk chunk, SimpleProblemForm problem, int threadnum) {
+			if (problem == null) {
+				problem = (SimpleProblemForm) state.evaluator.p_problem.clone();
+
+				// Children belong to the next generation
+				if (problem instanceof GenerationDependent)
+					((GenerationDependent) problem).setEvaluatedGeneration(state.generation + 1);
+
+				((Problem) problem).prepareToEvaluate(state, threadnum);
+			}
+
+			Individual[] inds = newpop.subpops[chunk.subpop].individuals;
+			for (int x = chunk.from;  x < chunk.to;  ++x)
+				problem.evaluate(state, inds[x], chunk.subpop, threadnum);
+
+			return problem;
+		}
+
+		private BreedingPipeline preparePipeline(int subpop, int threadnum) {
+			BreedingPipeline bp = (BreedingPipeline) newpop.subpops[subpop].species.pipe_prototype.clone();
+
+			if (! bp.produces(state, newpop, subpop, threadnum))
+				state.output.fatal("The Breeding Pipeline of subpopulation " + subpop
+						+ " does not produce individuals of the expected species "
+						+ newpop.subpops[subpop].species.getClass().getName()
+						+ " or fitness " + newpop.subpops[subpop].species.f_prototype);
+
+			bp.prepareToProduce(state, subpop, threadnum);
+			return bp;
+		}
+	}
+
+}
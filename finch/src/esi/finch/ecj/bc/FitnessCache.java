@@ -0,0 +1,101 @@
+package esi.finch.ecj.bc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import esi.bc.MethodDigest;
+import esi.finch.ecj.bc.BytecodeEvaluator.Result;
+
+/**
+ * Bounded cache of evaluation results, keyed by digests of evolving methods
+ * (see {@link BytecodeIndividual#getMethodDigest()}).
+ *
+ * Individuals with the same code (e.g., after a crossover that swaps
+ * equivalent sections, or a mutation that is eliminated as dead code) get
+ * the same result without being evaluated. Thus, the cache should only be
+ * used with deterministic evaluators.
+ *
+ * Least recently used results are evicted when the cache is full. The cache
+ * is thread-safe, and is shared by all evaluation threads. Concurrent
+ * evaluations of the same code may happen, in which case the last result
+ * is kept.
+ */
+public class FitnessCache {
+
+	// Digest -> result, in access order
+	private final Map<MethodDigest, Result> results;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Creates an empty fitness cache.
+	 *
+	 * @param maxSize maximum number of cached results
+	 */
+	public FitnessCache(final int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("Non-positive cache size: " + maxSize);
+
+		results = new LinkedHashMap<MethodDigest, Result>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<MethodDigest, Result> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @param digest method digest
+	 * @return cached result, or <code>null</code> if there is none
+	 */
+	public synchronized Result get(MethodDigest digest) {
+		Result result = results.get(digest);
+
+		if (result != null)
+			++hits;
+		else
+			++misses;
+
+		return result;
+	}
+
+	/**
+	 * Caches an evaluation result.
+	 *
+	 * @param digest method digest
+	 * @param result evaluation result
+	 */
+	public synchronized void put(MethodDigest digest, Result result) {
+		results.put(digest, result);
+	}
+
+	/**
+	 * @return number of cached results
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * @return number of lookups that found a result
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that did not find a result
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "size=" + results.size() + ", hits=" + hits + ", misses=" + misses;
+	}
+
+}
@@ -0,0 +1,243 @@
+package esi.finch.ecj.bc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import ec.EvolutionState;
+import ec.Individual;
+import ec.Problem;
+import ec.simple.SimpleEvaluator;
+import ec.simple.SimpleProblemForm;
+import esi.util.Config;
+
+/**
+ * Variant of {@link SimpleEvaluator} with a persistent pool of evaluation
+ * threads that steal work from each other.
+ *
+ * FINCH evaluation times differ by orders of magnitude (e.g., timeouts
+ * versus immediate verification errors), so equal static chunks leave
+ * threads idle. Here, each thread starts with an equal range of the
+ * (concatenated) subpopulations, and takes individuals from the front
+ * of its range. A thread with an empty range steals the back half of
+ * the largest remaining range.
+ *
+ * Thread <i>i</i> always evaluates with <code>threadnum</code> <i>i</i>,
+ * so per-thread resources such as <code>state.random[threadnum]</code>
+ * and step counters are never shared. Threads are daemons (see
+ * {@link WorkerPool}), and are started on the first evaluation with
+ * more than one thread.
+ *
+ * Busy and idle evaluation time of each thread is logged after each
+ * generation. If an evaluation fails, the other threads stop taking
+ * individuals, and the failure is rethrown in the main thread.
+ */
+public class WorkStealingEvaluator extends SimpleEvaluator {
+
+	private static final long	serialVersionUID = 1L;
+	private static final Log	log = Config.getLogger();
+
+	// Evaluation threads (not checkpointed)
+	private transient WorkerPool	workers;
+
+	// Accumulated busy and idle time per thread (ns)
+	private long[]				busyTime;
+	private long[]				idleTime;
+
+	@Override
+	public void evaluatePopulation(EvolutionState state) {
+		if (state.evalthreads == 1) {
+			super.evaluatePopulation(state);
+			return;
+		}
+
+		startWorkers(state.evalthreads);
+		Generation generation = new Generation(state, state.evalthreads);
+
+		try {
+			workers.execute(generation);
+		} catch (InterruptedException e) {
+			state.output.fatal("Whoa! The main evaluation thread got interrupted!  Dying...");
+		}
+
+		if (generation.isFailed())
+			throw new Error("Evaluation thread failed", generation.getFailure());
+
+		reportTimes(state, System.nanoTime() - generation.startTime, generation.busyTime);
+	}
+
+	private void startWorkers(int threads) {
+		if (workers != null  &&  workers.size() == threads)
+			return;
+
+		workers = new WorkerPool("Evaluator", threads);
+
+		if (busyTime == null  ||  busyTime.length != threads) {
+			busyTime = new long[threads];
+			idleTime = new long[threads];
+		}
+	}
+
+	private void reportTimes(EvolutionState state, long wallTime, long[] busy) {
+		StringBuilder buf = new StringBuilder("Evaluation threads at generation ")
+			.append(state.generation).append(" (busy/idle ms):");
+
+		for (int threadnum = 0;  threadnum < busy.length;  ++threadnum) {
+			long idle = Math.max(0, wallTime - busy[threadnum]);
+
+			busyTime[threadnum] += busy[threadnum];
+			idleTime[threadnum] += idle;
+
+			buf.append(' ').append(threadnum).append('=')
+			   .append(busy[threadnum] / 1000000).append('/').append(idle / 1000000);
+		}
+
+		log.info(buf.toString());
+	}
+
+	/**
+	 * Returns total time that a thread spent evaluating individuals
+	 * in all generations evaluated by this evaluator so far.
+	 *
+	 * @param threadnum thread number
+	 * @return busy time in nanoseconds
+	 */
+	public long getBusyTime(int threadnum) {
+		return (busyTime == null)  ?  0  :  busyTime[threadnum];
+	}
+
+	/**
+	 * Returns total time that a thread was not evaluating individuals
+	 * while other threads were (e.g., after its work ran out).
+	 *
+	 * @param threadnum thread number
+	 * @return idle time in nanoseconds
+	 */
+	public long getIdleTime(int threadnum) {
+		return (idleTime == null)  ?  0  :  idleTime[threadnum];
+	}
+
+	/**
+	 * Evaluation of one generation by all threads.
+	 */
+	private class Generation extends WorkerPool.Task {
+		final EvolutionState		state;
+		final SimpleProblemForm[]	problems;
+
+		// Start index of each subpopulation in concatenated population
+		final int[]					offsets;
+
+		// Range of each thread, as (start << 32 | end)
+		final AtomicLong[]			ranges;
+
+		final long[]				busyTime;
+		final long					startTime;
+
+		Generation(EvolutionState state, int threads) {
+			this.state = state;
+
+			int subpops = state.population.subpops.length;
+			offsets = new int[subpops + 1];
+			for (int x = 0;  x < subpops;  ++x)
+				offsets[x+1] = offsets[x] + state.population.subpops[x].individuals.length;
+
+			int size = offsets[subpops];
+			problems = new SimpleProblemForm[threads];
+			ranges   = new AtomicLong[threads];
+			for (int y = 0;  y < threads;  ++y) {
+				problems[y] = (SimpleProblemForm) p_problem.clone();
+				ranges[y]   = new AtomicLong(range((int) ((long) size * y / threads),
+						(int) ((long) size * (y+1) / threads)));
+			}
+
+			busyTime  = new long[threads];
+			startTime = System.nanoTime();
+		}
+
+		// Evaluates individuals until no thread has any left
+		@Override
+		void run(int threadnum) {
+			SimpleProblemForm p = problems[threadnum];
+			((Problem) p).prepareToEvaluate(state, threadnum);
+
+			int index;
+			while ((index = next(threadnum)) != -1) {
+				int subpop = 0;
+				while (index >= offsets[subpop+1])
+					++subpop;
+
+				Individual ind   = state.population.subpops[subpop].individuals[index - offsets[subpop]];
+				long       start = System.nanoTime();
+
+				p.evaluate(state, ind, subpop, threadnum);
+				busyTime[threadnum] += System.nanoTime() - start;
+			}
+
+			((Problem) p).finishEvaluating(state, threadnum);
+		}
+
+		// Next index for thread, or -1 if all ranges are empty (or a thread failed)
+		private int next(int threadnum) {
+			if (isFailed())
+				return -1;
+
+			AtomicLong own = ranges[threadnum];
+
+			while (true) {
+				long range = own.get();
+				int  start = start(range);
+				int  end   = end(range);
+
+				if (start < end) {
+					// Only fails if a thief took the back half
+					if (own.compareAndSet(range, range(start + 1, end)))
+						return start;
+				}
+				else if (! steal(own))
+					return -1;
+			}
+		}
+
+		// Moves back half of largest range to an empty one
+		private boolean steal(AtomicLong own) {
+			while (true) {
+				AtomicLong victim = null;
+				long       range  = 0;
+
+				for (AtomicLong candidate: ranges) {
+					long r = candidate.get();
+					if (end(r) - start(r) > end(range) - start(range)) {
+						victim = candidate;
+						range  = r;
+					}
+				}
+
+				if (victim == null)
+					return false;
+
+				int start = start(range);
+				int end   = end(range);
+				int mid   = start + (end - start) / 2;
+
+				// Own range is empty, so nobody else modifies it
+				if (victim.compareAndSet(range, range(start, mid))) {
+					own.set(range(mid, end));
+					return true;
+				}
+			}
+		}
+	}
+
+	private static long range(int start, int end) {
+		return ((long) start << 32) | (end & 0xFFFFFFFFL);
+	}
+
+	private static int start(long range) {
+		return (int) (range >>> 32);
+	}
+
+	private static int end(long range) {
+		return (int) range;
+	}
+
+}
@@ -0,0 +1,140 @@
+package esi.finch.ecj.bc;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Pool of persistent daemon threads with fixed thread numbers.
+ *
+ * Each task is run by all threads at once, and thread <i>i</i> always runs
+ * it with <code>threadnum</code> <i>i</i>, so per-thread resources such as
+ * <code>state.random[threadnum]</code> are never shared. If a thread fails,
+ * the first failure is kept in the task, whose other threads can then stop.
+ *
+ * Pools are not checkpointed. A pool that is no longer used keeps its
+ * threads waiting, and they never get work.
+ */
+class WorkerPool {
+
+	/**
+	 * Task run by all threads of a pool.
+	 */
+	abstract static class Task {
+		// First failure of a thread
+		private volatile Throwable failure;
+
+		/**
+		 * Runs the part of the task of one thread.
+		 *
+		 * @param threadnum thread number
+		 * @throws InterruptedException if the thread is interrupted
+		 */
+		abstract void run(int threadnum) throws InterruptedException;
+
+		/**
+		 * @return whether a thread failed
+		 */
+		boolean isFailed() {
+			return failure != null;
+		}
+
+		/**
+		 * @return first failure of a thread, or <code>null</code>
+		 */
+		Throwable getFailure() {
+			return failure;
+		}
+
+		private synchronized void fail(Throwable e) {
+			if (failure == null)
+				failure = e;
+		}
+	}
+
+	// Task with its own completion latch
+	private static class Job {
+		final Task				task;
+		final CountDownLatch	done;
+
+		Job(Task task, CountDownLatch done) {
+			this.task = task;
+			this.done = done;
+		}
+	}
+
+	private final Worker[] workers;
+
+	/**
+	 * Creates and starts the threads.
+	 *
+	 * @param name thread name prefix
+	 * @param threads number of threads
+	 */
+	WorkerPool(String name, int threads) {
+		workers = new Worker[threads];
+		for (int threadnum = 0;  threadnum < threads;  ++threadnum) {
+			workers[threadnum] = new Worker(name, threadnum);
+			workers[threadnum].start();
+		}
+	}
+
+	/**
+	 * @return number of threads
+	 */
+	int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Runs a task on all threads, and waits until all of them finish.
+	 * A failure is not rethrown, see {@link Task#getFailure()}.
+	 *
+	 * @param task task to run
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void execute(Task task) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(workers.length);
+
+		for (Worker worker: workers)
+			worker.jobs.add(new Job(task, done));
+
+		done.await();
+	}
+
+	/**
+	 * Persistent thread with a fixed thread number.
+	 */
+	private static class Worker extends Thread {
+		final BlockingQueue<Job> jobs;
+		final int                threadnum;
+
+		Worker(String name, int threadnum) {
+			super(name + "-" + threadnum);
+			setDaemon(true);
+
+			this.threadnum = threadnum;
+			jobs           = new LinkedBlockingQueue<Job>();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Job job = jobs.take();
+
+					try {
+						job.task.run(threadnum);
+					} catch (Throwable e) {
+						job.task.fail(e);
+					} finally {
+						job.done.countDown();
+					}
+				}
+			} catch (InterruptedException e) {
+				// Exit
+			}
+		}
+	}
+
+}
@@ -1,5 +1,8 @@
 package esi.finch.ecj.immutable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 
 import ec.BreedingPipeline;
@@ -16,8 +19,19 @@ import esi.util.Config;
  * If no crossover occurred, the individual from the first source is cloned
  * in order to have separate {@link Individual#fitness} and {@link Individual#evaluated}.
  *
+ * Several individuals can be produced by the second source, so that the
+ * first individual is crossed over with one of them
+ * (see {@link ImmutableIndividual#crossover(java.util.List, EvolutionState, int)}).
+ *
  * Default base: <tt>immutable.xo</tt>.
  *
+ * <p><b>Parameters</b><br>
+ * <table>
+ * <tr><td valign=top><tt><i>base</i>.betas</tt><br>
+ * <font size=-1>int >= 1 (default=1)</font></td>
+ * <td valign=top>(number of individuals produced by the second source)</td></tr>
+ * </table>
+ *
  * @author Michael Orlov
  */
 public class ImmutableCrossoverPipeline extends BreedingPipeline {
@@ -26,6 +40,10 @@ public class ImmutableCrossoverPipeline extends BreedingPipeline {
 
 	private static final long   serialVersionUID = 1L;
 	private static final String P_XO_PIPELINE    = "xo";
+	private static final String P_BETAS          = "betas";
+
+	// Number of individuals from second source
+	private int betas;
 
 	@Override
 	public int produce(int min, int max, int start, int subpopulation,
@@ -37,15 +55,27 @@ public class ImmutableCrossoverPipeline extends BreedingPipeline {
 		if (min > 1)
 			throw new IllegalArgumentException("Can produce only one individual");
 
-		// Get two source individuals
-		Individual[] src = new Individual[2];
+		// Get source individuals
+		Individual[] src = new Individual[1 + betas];
 		sources[0].produce(1, 1, 0, subpopulation, src, state, thread);
-		sources[1].produce(1, 1, 1, subpopulation, src, state, thread);
+		for (int i = 1;  i < src.length;  ++i)
+			sources[1].produce(1, 1, i, subpopulation, src, state, thread);
 
 		// Produce crossed-over individual
 		// <? extends Individual> doesn't work for some reason
 		@SuppressWarnings("unchecked")
-		Individual res = ((ImmutableIndividual<Individual>) src[0]).crossover(src[1], state, thread);
+		ImmutableIndividual<Individual> alpha = (ImmutableIndividual<Individual>) src[0];
+
+		Individual res;
+		if (betas == 1)
+			res = alpha.crossover(src[1], state, thread);
+		else {
+			List<Individual> others = new ArrayList<Individual>(betas);
+			for (int i = 1;  i < src.length;  ++i)
+				others.add(src[i]);
+
+			res = alpha.crossover(others, state, thread);
+		}
 
 		// If same individual was returned, clone it, so that it has separate fitness and evaluated status
 		// This prevents problems in e.g., single-elimination tournament
@@ -66,7 +96,12 @@ public class ImmutableCrossoverPipeline extends BreedingPipeline {
 	@Override
 	public void setup(EvolutionState state, Parameter base) {
 		super.setup(state, base);
-		log.info("Crossover pipeline set up");
+
+		betas = state.parameters.getIntWithDefault(base.push(P_BETAS), defaultBase().push(P_BETAS), 1);
+		if (betas < 1)
+			state.output.fatal("Number of betas must be >= 1", base.push(P_BETAS), defaultBase().push(P_BETAS));
+
+		log.info("Crossover pipeline set up (betas=" + betas + ")");
 	}
 
 	@Override
@@ -1,5 +1,7 @@
 package esi.finch.ecj.immutable;
 
+import java.util.List;
+
 import ec.EvolutionState;
 import ec.Individual;
 import ec.Species;
@@ -54,6 +56,18 @@ public interface ImmutableIndividual<T extends Individual> {
 	 */
 	T crossover(T other, EvolutionState state, int thread);
 
+	/**
+	 * Possibly crossover this individual with one of several other
+	 * individuals, e.g., one for which a crossover can be found.
+	 * Otherwise, same as {@link #crossover(Individual, EvolutionState, int)}.
+	 *
+	 * @param others other individuals for crossover
+	 * @param state evolution state
+	 * @param thread thread index
+	 * @return a new {@link Individual}, or <code>this</code>
+	 */
+	T crossover(List<T> others, EvolutionState state, int thread);
+
 	/**
 	 * Possibly mutate this individual.
 	 *
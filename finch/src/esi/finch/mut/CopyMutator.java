@@ -2,12 +2,16 @@ package esi.finch.mut;
 
 import org.objectweb.asm.tree.MethodNode;
 import ec.util.MersenneTwisterFast;
-import esi.bc.manip.InstructionsMutator;
 import org.objectweb.asm.tree.AbstractInsnNode;
 
-public class CopyMutator implements InstructionsMutator {
+public class CopyMutator implements LocalizedMutator {
 	private final MersenneTwisterFast random;
 	private final float mutProb;
+
+	// Range edited by the last mutation (see LocalizedMutator)
+	private int editStart = -1;
+	private int originalEditEnd;
+	private int mutantEditEnd;
 	
 	public CopyMutator(MersenneTwisterFast random, float mutProb) {
 		this.random = random;
@@ -15,9 +19,26 @@ public class CopyMutator implements InstructionsMutator {
 	}
 	
 	public void mutate(MethodNode node) {
-		CopyMutator.copyInstruction(node, 
-				random.nextInt(node.instructions.size() - 1), 
-				random.nextInt(node.instructions.size() - 1)); // -1 so we don't mess with RETURN. 
+		int origin      = random.nextInt(node.instructions.size() - 1);
+		int destination = random.nextInt(node.instructions.size() - 1); // -1 so we don't mess with RETURN. 
+		CopyMutator.copyInstruction(node, origin, destination);
+
+		// Instruction is inserted after destination
+		editStart       = destination + 1;
+		originalEditEnd = destination;
+		mutantEditEnd   = destination + 1;
+	}
+
+	public int getEditStart() {
+		return editStart;
+	}
+
+	public int getOriginalEditEnd() {
+		return originalEditEnd;
+	}
+
+	public int getMutantEditEnd() {
+		return mutantEditEnd;
 	}
 	
 	/**
@@ -3,17 +3,21 @@ package esi.finch.mut;
 import org.objectweb.asm.tree.MethodNode;
 
 import ec.util.MersenneTwisterFast;
-import esi.bc.manip.InstructionsMutator;
 
 /**
  * Deletion mutator class.
  * @author Ian Whalen
  *
  */
-public class DeletionMutator implements InstructionsMutator {
+public class DeletionMutator implements LocalizedMutator {
 
 	private final MersenneTwisterFast random;
 	private final float mutProb;
+
+	// Range edited by the last mutation (see LocalizedMutator)
+	private int editStart = -1;
+	private int originalEditEnd;
+	private int mutantEditEnd;
 	
 	public DeletionMutator(MersenneTwisterFast random, float mutProb) {
 		this.random = random;
@@ -21,7 +25,24 @@ public class DeletionMutator implements InstructionsMutator {
 	}
 	
 	public void mutate(MethodNode node) {
-		DeletionMutator.deleteInstruction(node, random.nextInt(node.instructions.size() - 1)); // -1 so we don't mess with RETURN. 
+		int position = random.nextInt(node.instructions.size() - 1); // -1 so we don't mess with RETURN. 
+		DeletionMutator.deleteInstruction(node, position);
+
+		editStart       = position;
+		originalEditEnd = position;
+		mutantEditEnd   = position - 1;
+	}
+
+	public int getEditStart() {
+		return editStart;
+	}
+
+	public int getOriginalEditEnd() {
+		return originalEditEnd;
+	}
+
+	public int getMutantEditEnd() {
+		return mutantEditEnd;
 	}
 	
 	/**
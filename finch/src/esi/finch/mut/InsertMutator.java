@@ -2,9 +2,13 @@ package esi.finch.mut;
 
 import org.objectweb.asm.tree.MethodNode;
 import ec.util.MersenneTwisterFast;
-import esi.bc.manip.InstructionsMutator;
 
-public class InsertMutator extends MaterialIntroducer implements InstructionsMutator {
+public class InsertMutator extends MaterialIntroducer implements LocalizedMutator {
+
+	// Range edited by the last mutation (see LocalizedMutator)
+	private int editStart = -1;
+	private int originalEditEnd;
+	private int mutantEditEnd;
 	
 	public InsertMutator(MersenneTwisterFast random, float mutProb) {
 		super(random, mutProb);
@@ -27,5 +31,22 @@ public class InsertMutator extends MaterialIntroducer implements InstructionsMut
 	 */
 	public void newInstruction(MethodNode method, int position) {
 		method.instructions.insert(method.instructions.get(position), getRandomInsnNode(method));
+
+		// Instruction is inserted after position
+		editStart       = position + 1;
+		originalEditEnd = position;
+		mutantEditEnd   = position + 1;
+	}
+
+	public int getEditStart() {
+		return editStart;
+	}
+
+	public int getOriginalEditEnd() {
+		return originalEditEnd;
+	}
+
+	public int getMutantEditEnd() {
+		return mutantEditEnd;
 	}
 }
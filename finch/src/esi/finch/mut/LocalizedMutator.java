@@ -0,0 +1,32 @@
+package esi.finch.mut;
+
+import esi.bc.manip.InstructionsMutator;
+
+/**
+ * Instructions mutator that reports the range of instructions edited by
+ * its last mutation, so that {@link MutationVerifier} can check only that
+ * range instead of the whole method.
+ *
+ * The edited range starts at the same index in the original and in the
+ * mutant method, and ends at different indexes if instructions were
+ * inserted or deleted. Ends are inclusive, and are start-1 for empty ranges
+ * (e.g., the original range of an insertion).
+ */
+public interface LocalizedMutator extends InstructionsMutator {
+
+	/**
+	 * @return start of range edited by the last mutation, or -1 if there was none
+	 */
+	public int getEditStart();
+
+	/**
+	 * @return end of edited range in the original method (inclusive)
+	 */
+	public int getOriginalEditEnd();
+
+	/**
+	 * @return end of edited range in the mutant method (inclusive)
+	 */
+	public int getMutantEditEnd();
+
+}
@@ -2,12 +2,16 @@ package esi.finch.mut;
 
 import org.objectweb.asm.tree.MethodNode;
 import ec.util.MersenneTwisterFast;
-import esi.bc.manip.InstructionsMutator;
 import org.objectweb.asm.tree.AbstractInsnNode;
 
-public class MoveMutator implements InstructionsMutator {
+public class MoveMutator implements LocalizedMutator {
 	private final MersenneTwisterFast random;
 	private final float mutProb;
+
+	// Range edited by the last mutation (see LocalizedMutator)
+	private int editStart = -1;
+	private int originalEditEnd;
+	private int mutantEditEnd;
 	
 	public MoveMutator(MersenneTwisterFast random, float mutProb) {
 		this.random = random;
@@ -31,6 +35,23 @@ public class MoveMutator implements InstructionsMutator {
 		CopyMutator.copyInstruction(node, 
 				origin, 
 				destination);
+
+		// Instruction is copied after destination
+		editStart       = destination + 1;
+		originalEditEnd = destination;
+		mutantEditEnd   = destination + 1;
+	}
+
+	public int getEditStart() {
+		return editStart;
+	}
+
+	public int getOriginalEditEnd() {
+		return originalEditEnd;
+	}
+
+	public int getMutantEditEnd() {
+		return mutantEditEnd;
 	}
 	
 	/**
@@ -1,9 +1,31 @@
 package esi.finch.mut;
 
+import java.util.List;
+
+import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
 import esi.bc.xo.CompatibleCrossover;
 import esi.bc.AnalyzedMethodNode;
+import esi.bc.flow.BranchAnalyzer;
+import esi.bc.flow.CodeAccesses;
 import esi.bc.flow.CodeSection;
+import esi.bc.flow.FrameActions;
 
 /**
  * For verifying mutations. 
@@ -44,6 +66,67 @@ public class MutationVerifier {
 		setupCodeSections(original, mutant, original_begin, original_end, mutant_begin, mutant_end);
 	}
 	
+	/**
+	 * Uses only the minimal enclosing code sections of the range edited by
+	 * the mutator, so that verification cost scales with the edit size.
+	 * The original section has no incoming branches, and the mutant section
+	 * has no outgoing branches, as in crossover. If the edited range is not
+	 * known, if the code outside of it differs (e.g., shifted indexes), if
+	 * no such sections exist, or if their frames actions are unusable (e.g.,
+	 * a section starting in unreachable code), the entire methods are used.
+	 * @param original
+	 * @param mutant
+	 * @param xo
+	 * @param mutator mutator that produced the mutant
+	 */
+	public MutationVerifier(AnalyzedMethodNode original, AnalyzedMethodNode mutant,
+			CompatibleCrossover xo, LocalizedMutator mutator) {
+		this(original, mutant, xo);
+
+		int start = mutator.getEditStart();
+		int end   = mutator.getOriginalEditEnd();
+		int delta = mutator.getMutantEditEnd() - end;
+
+		// Edited range must account for the size difference,
+		// and code outside of it must be the same
+		if (start < 0  ||  mutant.instructions.size() - original.instructions.size() != delta
+				||  !new EditedRange(original, mutant, start, end, delta).isUnchangedOutside())
+			return;
+
+		BranchAnalyzer originalBranches = BranchAnalyzer.getInstance(original, true);
+		BranchAnalyzer mutantBranches   = BranchAnalyzer.getInstance(mutant,   false);
+
+		// Extend both sections until they enclose the same range
+		while (true) {
+			CodeSection originalEnclosing = originalBranches.getEnclosingSection(start, end);
+			if (originalEnclosing == null)
+				return;
+
+			CodeSection mutantEnclosing = mutantBranches.getEnclosingSection(originalEnclosing.start,
+					originalEnclosing.end + delta);
+			if (mutantEnclosing == null)
+				return;
+
+			if (mutantEnclosing.start == originalEnclosing.start
+					&&  mutantEnclosing.end - delta == originalEnclosing.end) {
+				if (hasStackActions(original, originalEnclosing)  &&  hasStackActions(mutant, mutantEnclosing)) {
+					originalSection = originalEnclosing;
+					mutantSection   = mutantEnclosing;
+				}
+				return;
+			}
+
+			start = mutantEnclosing.start;
+			end   = Math.max(originalEnclosing.end, mutantEnclosing.end - delta);
+		}
+	}
+
+	// Whether section has frames actions, and does not pop more than its "before" stack
+	private static boolean hasStackActions(AnalyzedMethodNode method, CodeSection section) {
+		FrameActions actions = new CodeAccesses(method).getSection(section.start, section.end);
+		return actions != null  &&  !actions.isStackUnderflow();
+	}
+
 	/**
 	 * Initialize the code sections. 
 	 * @param original
@@ -62,7 +145,155 @@ public class MutationVerifier {
 				 mutant_begin, mutant_end);
 	}
 	
+	/**
+	 * @return original section that is checked
+	 */
+	public CodeSection getOriginalSection() {
+		return originalSection;
+	}
+
+	/**
+	 * @return mutant section that is checked
+	 */
+	public CodeSection getMutantSection() {
+		return mutantSection;
+	}
+
 	public boolean isValidMutation() {
 		return xo.isCompatible(originalSection, mutantSection);
 	}
+
+	/**
+	 * Edited range of a localized mutation, for matching the instructions
+	 * outside of it. Instructions match if they have the same opcode and
+	 * operands, where labels are compared by their (shifted) indexes, and
+	 * references to the original class match references to the mutant class.
+	 */
+	private static class EditedRange {
+		private final AnalyzedMethodNode original;
+		private final AnalyzedMethodNode mutant;
+		private final String             originalOwner;
+		private final String             mutantOwner;
+		private final int                start;
+		private final int                end;		// in original
+		private final int                delta;
+
+		EditedRange(AnalyzedMethodNode original, AnalyzedMethodNode mutant, int start, int end, int delta) {
+			this.original = original;
+			this.mutant   = mutant;
+			this.start    = start;
+			this.end      = end;
+			this.delta    = delta;
+
+			originalOwner = getOwner(original);
+			mutantOwner   = getOwner(mutant);
+		}
+
+		boolean isUnchangedOutside() {
+			for (int i = 0;  i < original.instructions.size();  ++i)
+				if (i < start  ||  i > end) {
+					AbstractInsnNode insn  = original.instructions.get(i);
+					AbstractInsnNode other = mutant.instructions.get(i < start ? i : i + delta);
+
+					if (!isSame(insn, other))
+						return false;
+				}
+
+			return true;
+		}
+
+		private boolean isSame(AbstractInsnNode insn, AbstractInsnNode other) {
+			if (insn.getOpcode() != other.getOpcode()  ||  insn.getType() != other.getType())
+				return false;
+
+			switch (insn.getType()) {
+			case AbstractInsnNode.INT_INSN:
+				return ((IntInsnNode) insn).operand == ((IntInsnNode) other).operand;
+			case AbstractInsnNode.VAR_INSN:
+				return ((VarInsnNode) insn).var == ((VarInsnNode) other).var;
+			case AbstractInsnNode.TYPE_INSN:
+				return isSameName(((TypeInsnNode) insn).desc, ((TypeInsnNode) other).desc);
+			case AbstractInsnNode.FIELD_INSN:
+				FieldInsnNode field = (FieldInsnNode) insn, otherField = (FieldInsnNode) other;
+				return isSameName(field.owner, otherField.owner)
+					&&  field.name.equals(otherField.name)  &&  isSameName(field.desc, otherField.desc);
+			case AbstractInsnNode.METHOD_INSN:
+				MethodInsnNode method = (MethodInsnNode) insn, otherMethod = (MethodInsnNode) other;
+				return isSameName(method.owner, otherMethod.owner)
+					&&  method.name.equals(otherMethod.name)  &&  isSameName(method.desc, otherMethod.desc);
+			case AbstractInsnNode.JUMP_INSN:
+				return isSameLabel(((JumpInsnNode) insn).label, ((JumpInsnNode) other).label);
+			case AbstractInsnNode.LDC_INSN:
+				Object cst = ((LdcInsnNode) insn).cst, otherCst = ((LdcInsnNode) other).cst;
+				if (cst instanceof Type  &&  otherCst instanceof Type)
+					return isSameName(((Type) cst).getDescriptor(), ((Type) otherCst).getDescriptor());
+				return cst.equals(otherCst);
+			case AbstractInsnNode.IINC_INSN:
+				return ((IincInsnNode) insn).var  == ((IincInsnNode) other).var
+					&& ((IincInsnNode) insn).incr == ((IincInsnNode) other).incr;
+			case AbstractInsnNode.TABLESWITCH_INSN:
+				TableSwitchInsnNode table = (TableSwitchInsnNode) insn, otherTable = (TableSwitchInsnNode) other;
+				return table.min == otherTable.min  &&  table.max == otherTable.max
+					&&  isSameLabel(table.dflt, otherTable.dflt)  &&  isSameLabels(table.labels, otherTable.labels);
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:
+				LookupSwitchInsnNode lookup = (LookupSwitchInsnNode) insn, otherLookup = (LookupSwitchInsnNode) other;
+				return lookup.keys.equals(otherLookup.keys)
+					&&  isSameLabel(lookup.dflt, otherLookup.dflt)  &&  isSameLabels(lookup.labels, otherLookup.labels);
+			case AbstractInsnNode.MULTIANEWARRAY_INSN:
+				return isSameName(((MultiANewArrayInsnNode) insn).desc, ((MultiANewArrayInsnNode) other).desc)
+					&& ((MultiANewArrayInsnNode) insn).dims == ((MultiANewArrayInsnNode) other).dims;
+			case AbstractInsnNode.FRAME:
+				FrameNode frame = (FrameNode) insn, otherFrame = (FrameNode) other;
+				return frame.type == otherFrame.type
+					&&  size(frame.local) == size(otherFrame.local)  &&  size(frame.stack) == size(otherFrame.stack);
+			case AbstractInsnNode.LINE:
+				return ((LineNumberNode) insn).line == ((LineNumberNode) other).line
+					&& isSameLabel(((LineNumberNode) insn).start, ((LineNumberNode) other).start);
+			default:
+				return true;
+			}
+		}
+
+		// Label in original matches label in mutant at the shifted index
+		// (or anywhere in the edited range, if it is in the edited range)
+		private boolean isSameLabel(LabelNode label, LabelNode other) {
+			int index      = original.instructions.indexOf(label);
+			int otherIndex = mutant.instructions.indexOf(other);
+
+			if (index < start)
+				return otherIndex == index;
+			else if (index > end)
+				return otherIndex == index + delta;
+			else
+				return otherIndex >= start  &&  otherIndex <= end + delta;
+		}
+
+		private boolean isSameLabels(List<?> labels, List<?> otherLabels) {
+			if (labels.size() != otherLabels.size())
+				return false;
+
+			for (int i = 0;  i < labels.size();  ++i)
+				if (!isSameLabel((LabelNode) labels.get(i), (LabelNode) otherLabels.get(i)))
+					return false;
+
+			return true;
+		}
+
+		// Internal name or descriptor, with original class renamed to mutant class
+		private boolean isSameName(String name, String otherName) {
+			return name.equals(otherName)  ||  name.replace(originalOwner, mutantOwner).equals(otherName);
+		}
+
+		private static int size(List<?> list) {
+			return (list == null)  ?  0  :  list.size();
+		}
+
+		// Internal name of the class containing the method
+		private static String getOwner(AnalyzedMethodNode method) {
+			String fullName = method.getFullName();
+			int    length   = fullName.length() - method.name.length() - method.desc.length() - 1;
+
+			return fullName.substring(0, length).replace('.', '/');
+		}
+	}
 }
@@ -3,13 +3,17 @@ package esi.finch.mut;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import ec.util.MersenneTwisterFast;
-import esi.bc.manip.InstructionsMutator;
 
 /**
  * @see also {@link TypeSensitiveReplaceMutator}
  *
  */
-public class ReplaceMutator extends MaterialIntroducer implements InstructionsMutator {
+public class ReplaceMutator extends MaterialIntroducer implements LocalizedMutator {
+
+	// Range edited by the last mutation (see LocalizedMutator)
+	private int editStart = -1;
+	private int originalEditEnd;
+	private int mutantEditEnd;
 	
 	public ReplaceMutator(MersenneTwisterFast random, float mutProb) {
 		super(random, mutProb);
@@ -31,6 +35,22 @@ public class ReplaceMutator extends MaterialIntroducer implements InstructionsMu
 		}
 		
 		replaceInstruction(method, position);
+
+		editStart       = position;
+		originalEditEnd = position;
+		mutantEditEnd   = position;
+	}
+
+	public int getEditStart() {
+		return editStart;
+	}
+
+	public int getOriginalEditEnd() {
+		return originalEditEnd;
+	}
+
+	public int getMutantEditEnd() {
+		return mutantEditEnd;
 	}
 	
 	/**
@@ -53,18 +53,29 @@ public class PolynomialSymbolicRegressionEvaluator implements BytecodeEvaluator
 		int          degree    = 0;
 		int          hits      = 0;
 
-		for (int i = 0;  valid  &&  i < samples;  ++i) {
+		// All samples are evaluated in a single sandbox batch
+		double[]   xs    = new double[samples];
+		Object[][] batch = new Object[samples][];
+		for (int i = 0;  i < samples;  ++i) {
 			// x = [ -1, 1 )
-			double x = getSample(random, i);
-			SandBox.Result result = sandbox.call(x);
+			xs[i]    = getSample(random, i);
+			batch[i] = new Object[] { xs[i] };
+		}
+
+		SandBox.Result[] results = sandbox.callBatch(batch);
+
+		// Timeout invalidates the individual
+		if (results == null) {
+			log.debug("Timeout in " + ind);
+			valid = false;
+		}
+
+		for (int i = 0;  valid  &&  i < samples;  ++i) {
+			double         x      = xs[i];
+			SandBox.Result result = results[i];
 
-			// Timeout invalidates the individual
-			if (result == null) {
-				log.debug("Timeout in " + ind);
-				valid = false;
-			}
 			// An exception invalidates the individual
-			else if (result.exception != null) {
+			if (result.exception != null) {
 				log.debug("Exception: " + result.exception + " in " + ind);
 				valid = false;
 			}
@@ -60,21 +60,32 @@ public class SimpleSymbolicRegressionEvaluator implements BytecodeEvaluator {
 		boolean      valid     = true;
 		int          hits      = 0;
 
-		for (int i = 0;  valid  &&  i < samples;  ++i) {
+		// All samples are evaluated in a single sandbox batch
+		double[]   xs    = new double[samples];
+		Object[][] batch = new Object[samples][];
+		for (int i = 0;  i < samples;  ++i) {
 			// x = [ -1, 1 )
-			double x = getSample(random, i);
+			xs[i]    = getSample(random, i);
+			batch[i] = new Object[] { xs[i] };
+		}
+
+		SandBox.Result[] results = sandbox.callBatch(batch);
+
+		// Timeout invalidates the individual
+		if (results == null) {
+			Tracker.timeout.getAndIncrement();
+			log.debug("Timeout in " + ind);
+			valid = false;
+		}
+
+		for (int i = 0;  valid  &&  i < samples;  ++i) {
+			double x = xs[i];
 			double y = getValue(x);
 
-			SandBox.Result result = sandbox.call(x);
+			SandBox.Result result = results[i];
 
-			// Timeout invalidates the individual
-			if (result == null) {
-				Tracker.timeout.getAndIncrement();
-				log.debug("Timeout in " + ind);
-				valid = false;
-			}
 			// An exception invalidates the individual
-			else if (result.exception != null) {
+			if (result.exception != null) {
 				Tracker.runtime.getAndIncrement();
 				log.debug("Exception: " + result.exception + " in " + ind);
 				valid = false;
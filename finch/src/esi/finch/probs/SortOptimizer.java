@@ -3,30 +3,85 @@ package esi.finch.probs;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
+import org.apache.commons.logging.Log;
+
+import ec.EvolutionState;
+import ec.Setup;
 import ec.util.MersenneTwisterFast;
+import ec.util.Parameter;
 import esi.finch.ecj.bc.BytecodeEvaluator;
 import esi.finch.ecj.bc.BytecodeIndividual;
-import esi.util.SandBoxByCounter;
+import esi.finch.ecj.bc.BytecodeIndividual.ByteCodeCounter;
+import esi.util.Config;
+import esi.util.PaddedCounters;
+import esi.util.SandBox;
 
 /**
  * Sort Optimizer is used code improvement. 
  * Uses evaluation defined in the locoGP paper. 
  * For bug fixing, see {@link SortEvaluator}. 
+ * 
+ * All individuals of a generation are evaluated on the same test lists,
+ * so that the cost of the (unchanged) seed program is computed once per
+ * generation. The lists are generated with a random number generator
+ * seeded by the run seed (drawn from the main random number generator in
+ * setup, so it depends on <tt>seed.0</tt>) and the generation number, so
+ * they differ between runs, but do not depend on the thread that
+ * evaluates the first individual of the generation. If the seed
+ * program fails on the lists (e.g., a timeout on a loaded machine), new
+ * lists are generated. If it keeps failing, the evaluated individual gets
+ * the worst fitness, and the next evaluation tries again. 
  */
-public class SortOptimizer implements BytecodeEvaluator {
+public class SortOptimizer implements BytecodeEvaluator, Setup {
 	
-	private static final String SORT_DESC = "public int[] sort(int[] list)";
-	private static final String SEED_DESC = "public int[] seed(int[] list)";
+	private static final long serialVersionUID = 1L;
+	private static final String SEED_NAME = "seed";
 	private static final int NUM_LISTS = 3;
+	private static final int SEED_TRIES = 3;
+	private static final Log log = Config.getLogger();
+	
+	// Seed of the test lists random number generator (with the generation)
+	private int runSeed;
+	
+	// Test lists of the evaluated generation (shared by evaluation threads)
+	private transient TestSet testSet;
+	
+	/**
+	 * Test lists and the seed program's bytecode counts on them. 
+	 */
+	static class TestSet {
+		final int generation;
+		final int[][] lists;
+		final long[] seedCounts;
+		
+		TestSet(int generation, int[][] lists, long[] seedCounts) {
+			this.generation = generation;
+			this.lists = lists;
+			this.seedCounts = seedCounts;
+		}
+	}
+	
+	public SortOptimizer() {
+	}
+	
+	// Used by tests instead of setup
+	SortOptimizer(int runSeed) {
+		this.runSeed = runSeed;
+	}
+	
+	@Override
+	public void setup(EvolutionState state, Parameter base) {
+		runSeed = state.random[0].nextInt();
+	}
 	
 	@Override
 	public Result evaluate(BytecodeIndividual ind, long timeout, long steps, MersenneTwisterFast random, int threadnum) {
 		Tracker.maybe_print();
 		
-		// Get the non-interruptible version as ByCounter will handle infinite loops. 
+		// Get the countable version, the bytecode count limit handles infinite loops. 
 		Method method;
 		try {
-			method = ind.getMethod();
+			method = ind.getCountableMethod(threadnum, 0);
 		}
 		catch (ClassFormatError e) {
 			return new Result(Integer.MIN_VALUE, false);
@@ -35,23 +90,24 @@ public class SortOptimizer implements BytecodeEvaluator {
 			return new Result(Integer.MIN_VALUE, false);
 		}
 		
-		int[][] test_lists = Derange.generateRandomLists(random, NUM_LISTS);
+		PaddedCounters counters = ByteCodeCounter.getCounters();
+		int counterId = BytecodeIndividual.getCounterId(threadnum, 0);
+		Object instance = newInstance(method.getDeclaringClass());
+		if (instance == null)
+			return new Result(Integer.MIN_VALUE, false);
 		
-		// Get seed score and bytecounts. 
-		// The seed always gets a perfect error score, which is just the sum of the length of the lists. 
-		long[] seed_counts = new long[NUM_LISTS];
-		long seed_exe_count = seedExecutionCount(test_lists, ind.getMethod().getDeclaringClass(), timeout, seed_counts);
-		float seed_error = 0;
-		for (int[] list : test_lists) {
-			seed_error += list.length;
-			
-		}
+		// Get seed bytecounts (computed once per generation). 
+		TestSet tests = getTestSet(BytecodeIndividual.getGeneration(), instance, timeout, counters, counterId);
+		if (tests == null)
+			return new Result(Integer.MIN_VALUE, false);
+		int[][] test_lists = tests.lists;
+		long[] seed_counts = tests.seedCounts;
 
 		// Get evolving method score and bytecounts.
 		LocoScore locoscore = new LocoScore(test_lists);
 		
-		SandBoxByCounter sandbox = new SandBoxByCounter(method.getDeclaringClass().getCanonicalName(), SORT_DESC, timeout);
-		SandBoxByCounter.Result result = null;
+		SandBox sandbox = new SandBox(instance, method, timeout, counters, counterId);
+		SandBox.Result result = null;
 		float score = 0; 
 		int i = 0;
 		for (int[] list : test_lists) {	
@@ -86,26 +142,82 @@ public class SortOptimizer implements BytecodeEvaluator {
 		return new Result(-1 * score, false); // Always non-ideal since we're not evolving toward a specific goal. 
 	}
 	
+	// Returns test set of the evaluated generation, creating it if necessary
+	// (null if the seed program failed on all tries)
+	synchronized TestSet getTestSet(int generation, Object instance, long timeout,
+			PaddedCounters counters, int counterId) {
+		if (testSet == null || testSet.generation != generation) {
+			MersenneTwisterFast random = new MersenneTwisterFast(new int[] { runSeed, generation });
+			
+			for (int tries = 0; tries < SEED_TRIES; tries++) {
+				int[][] test_lists = Derange.generateRandomLists(random, NUM_LISTS);
+				long[] seed_counts = new long[NUM_LISTS];
+				
+				if (seedExecutionCount(test_lists, instance, timeout, counters, counterId, seed_counts) >= 0) {
+					testSet = new TestSet(generation, test_lists, seed_counts);
+					return testSet;
+				}
+			}
+			
+			log.warn("Seed program failed on " + SEED_TRIES + " test sets in generation " + generation);
+			return null;
+		}
+		
+		return testSet;
+	}
+	
 	/**
 	 * Gets the bytecode count for the seed program on the specific test list. 
 	 * @param test_lists
-	 * @param klass class containing the seed method named "seed"
-	 * @return
+	 * @param instance instance of the countable class containing the seed method named "seed"
+	 * @param counters bytecode counters updated by the countable class
+	 * @param counterId counter id of the countable class
+	 * @return total bytecode count, or -1 if the seed program failed (timeout or exception)
 	 */
-	public long seedExecutionCount(int[][] test_lists, Class<?> klass, long timeout, long[] seed_counts) {
-		SandBoxByCounter sandbox = new SandBoxByCounter(klass.getCanonicalName(), SEED_DESC, timeout);
+	public long seedExecutionCount(int[][] test_lists, Object instance, long timeout,
+			PaddedCounters counters, int counterId, long[] seed_counts) {
+		Method seed;
+		try {
+			seed = instance.getClass().getDeclaredMethod(SEED_NAME, int[].class);
+		} catch (NoSuchMethodException e) {
+			throw new Error("Unexpected: seed method not found", e);
+		}
+		
+		SandBox sandbox = new SandBox(instance, seed, timeout, counters, counterId);
 		
 		long count = 0;
-		SandBoxByCounter.Result result = null;
+		SandBox.Result result = null;
 		for (int i = 0; i < test_lists.length; i++) {
-			result = sandbox.call(test_lists[i]);
-			count += result.byteCodeCount;
-			seed_counts[i] = result.byteCodeCount;
+			// Seed sorts in place, and test lists are shared
+			result = sandbox.call(Arrays.copyOf(test_lists[i], test_lists[i].length));
+			if (result == null || result.exception != null) {
+				log.debug("Seed program failed on test list " + Arrays.toString(test_lists[i]));
+				return -1;
+			}
+			
+			count += result.count;
+			seed_counts[i] = result.count;
 		}
 		
 		return count;
 	}
 	
+	// Returns null if the individual's class cannot be instantiated
+	private static Object newInstance(Class<?> klass) {
+		try {
+			return klass.newInstance();
+		} catch (InstantiationException e) {
+			log.debug("Cannot instantiate " + klass.getName() + ": " + e);
+		} catch (IllegalAccessException e) {
+			log.debug("Cannot instantiate " + klass.getName() + ": " + e);
+		} catch (VerifyError e) {
+			// Malformed method from mutation
+			Tracker.verify.getAndIncrement();
+		}
+		
+		return null;
+	}
+	
 	@Override
 	public MatchResult evaluate(BytecodeIndividual ind1, BytecodeIndividual ind2, long timeout, long steps, MersenneTwisterFast random, int threadnum) {
 		throw new UnsupportedOperationException("Tournament evaluation is not implemented");
@@ -89,7 +89,7 @@ public class TicTacToeEvaluator implements BytecodeEvaluator {
 		// No. of moves class1 takes to win (+1), but 0 actually means infinity
 		int movesA = playMatch(class1, class2, timeout, random);
 
-		// produce the classes again (to compensate for decreased steps / steps interrupts)
+		// reset the steps limits (interruptible classes are cached by individuals)
 		class1 = ind1.getInterruptibleMethod(steps, threadnum, 0).getDeclaringClass().asSubclass(TicTacToePlayer.class);
 		class2 = ind2.getInterruptibleMethod(steps, threadnum, 1).getDeclaringClass().asSubclass(TicTacToePlayer.class);
 		int movesB = -playMatch(class2, class1, timeout, random);
@@ -1,12 +1,22 @@
 package esi.finch.xo;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import ec.util.MersenneTwisterFast;
 import esi.bc.AnalyzedMethodNode;
 import esi.bc.flow.BranchAnalyzer;
 import esi.bc.flow.CodeSection;
+import esi.bc.xo.CompatibleCrossover;
+import esi.util.Loader;
 
 /**
  * A finder for crossovers.
  *
+ * Branch analyzers are shared per method node (see
+ * {@link BranchAnalyzer#getInstance(AnalyzedMethodNode, boolean)}),
+ * so a method that takes part in many crossovers is analyzed once.
+ *
  * @author Michael Orlov
  */
 public abstract class CrossoverFinder {
@@ -36,8 +46,39 @@ public abstract class CrossoverFinder {
 	}
 
 	public CrossoverFinder(AnalyzedMethodNode alphaMethod, AnalyzedMethodNode betaMethod) {
-		alphaBranches = new BranchAnalyzer(alphaMethod, true);
-		betaBranches  = new BranchAnalyzer(betaMethod, false);
+		alphaBranches = BranchAnalyzer.getInstance(alphaMethod, true);
+		betaBranches  = BranchAnalyzer.getInstance(betaMethod, false);
+	}
+
+	/**
+	 * Produces crossover suggestions for one destination method and
+	 * several source methods. A finder of the given class is created for
+	 * each source method, with the constructor arguments of
+	 * {@link RandomCrossoverFinder}.
+	 *
+	 * @param finderClass crossover finder class
+	 * @param alphaMethod destination method
+	 * @param betaMethods source methods
+	 * @param xos compatible crossover checkers, one per source method
+	 * @param random random numbers generator
+	 * @param maxSize maximum size of resulting method (0 for no limit)
+	 * @return suggestion for each source method, or <code>null</code>
+	 *         where no suggestion was found
+	 */
+	public static List<Sections> getSuggestions(Class<? extends CrossoverFinder> finderClass,
+			AnalyzedMethodNode alphaMethod, List<AnalyzedMethodNode> betaMethods,
+			List<CompatibleCrossover> xos, MersenneTwisterFast random, int maxSize) {
+		if (betaMethods.size() != xos.size())
+			throw new IllegalArgumentException("Expected one crossover checker per source method");
+
+		List<Sections> suggestions = new ArrayList<Sections>(betaMethods.size());
+		for (int i = 0;  i < betaMethods.size();  ++i) {
+			CrossoverFinder finder = Loader.loadClassInstance(finderClass,
+					alphaMethod, betaMethods.get(i), xos.get(i), random, maxSize);
+			suggestions.add(finder.getSuggestion());
+		}
+
+		return suggestions;
 	}
 
 	/**
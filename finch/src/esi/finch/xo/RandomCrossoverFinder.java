@@ -1,12 +1,18 @@
 package esi.finch.xo;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import org.apache.commons.logging.Log;
 
 import ec.util.MersenneTwisterFast;
 import esi.bc.AnalyzedMethodNode;
 import esi.bc.flow.CodeSection;
+import esi.bc.flow.SectionsIndex;
 import esi.bc.xo.CompatibleCrossover;
 import esi.util.Config;
 import esi.util.SpecializedConstants;
@@ -18,11 +24,20 @@ import esi.util.SpecializedConstants;
  * <ul>
  * <li> Maximum number of tries
  * <li> Maximum size of post-crosover method (approximate)
+ * <li> Search over indexed sections ({@link SectionsIndex})
  * </ul>
  *
+ * With indexed search, sections are only picked among sections that have
+ * a counterpart with the same stack delta, and the beta section is picked
+ * among sections with the same stack delta as alpha. If there are no such
+ * pairs, the search fails immediately. If there are at most
+ * <code>xo-tries</code> such pairs, and random tries fail, the remaining
+ * pairs are checked exhaustively, so that failure is definite.
+ *
  * <p>Constants:
  * <ul>
  * <li><code>class.RandomCrossoverFinder.xo-tries</code>: maximum number of tries
+ * <li><code>class.RandomCrossoverFinder.xo-index</code>: whether to use indexed search
  * </ul>
  *
  * @author Michael Orlov
@@ -31,11 +46,19 @@ public abstract class RandomCrossoverFinder extends CrossoverFinder {
 
 	private   static final Log log      = Config.getLogger();
 	protected static final int    XO_TRIES = SpecializedConstants.getInt(RandomCrossoverFinder.class, "xo-tries");
+	protected static final boolean XO_INDEX = SpecializedConstants.getBoolean(RandomCrossoverFinder.class, "xo-index");
 
 	private final Map<Integer, List<CodeSection>>	alphaSections;
 	private final Map<Integer, List<CodeSection>>	betaSections;
 	private final CompatibleCrossover				xo;
 
+	// Indexed search: alpha index, beta sections (and keys) by stack delta,
+	// and number of candidate pairs (null / 0 if not used)
+	private final SectionsIndex									alphaIndex;
+	private final Map<Integer, Map<Integer, List<CodeSection>>>	betaDeltaSections;
+	private final Map<Integer, Integer[]>						betaDeltaKeys;
+	private final long											candidates;
+
 	protected final MersenneTwisterFast				random;
 
 	private final int		maxSize;		// 0 -> not used
@@ -50,45 +73,145 @@ public abstract class RandomCrossoverFinder extends CrossoverFinder {
 		super(alphaMethod, betaMethod);
 		assert alphaBranches != betaBranches;
 
-		this.alphaSections = alphaBranches.getSortedSections();
-		this.betaSections  = betaBranches.getSortedSections();
 		this.xo            = xo;
 		this.random        = random;
 
 		this.maxSize       = maxSize;
 		alphaSize          = alphaMethod.instructions.size();
 
-		alphaKeys = this.alphaSections.keySet().toArray(new Integer[0]);
-		betaKeys  = this.betaSections .keySet().toArray(new Integer[0]);
+		if (XO_INDEX) {
+			alphaIndex = SectionsIndex.getDestinationIndex(alphaMethod);
+			SectionsIndex betaIndex = SectionsIndex.getSourceIndex(betaMethod);
+
+			alphaSections     = new TreeMap<Integer, List<CodeSection>>();
+			betaSections      = null;
+			betaDeltaSections = new HashMap<Integer, Map<Integer, List<CodeSection>>>();
+			betaDeltaKeys     = new HashMap<Integer, Integer[]>();
+
+			// Alpha sections with a beta counterpart of the same stack delta
+			long pairs = 0;
+			for (int delta: alphaIndex.getStackDeltas()) {
+				Map<Integer, List<CodeSection>> betaBySize = betaIndex.getSortedSections(delta);
+				if (betaBySize == null)
+					continue;
+
+				int alphaCount = addSections(alphaSections, alphaIndex.getSortedSections(delta));
+				int betaCount  = addSections(null, betaBySize);
+				pairs += (long) alphaCount * betaCount;
+
+				betaDeltaSections.put(delta, betaBySize);
+				betaDeltaKeys    .put(delta, betaBySize.keySet().toArray(new Integer[0]));
+			}
+
+			candidates = pairs;
+		}
+		else {
+			alphaSections     = alphaBranches.getSortedSections();
+			betaSections      = betaBranches.getSortedSections();
+
+			alphaIndex        = null;
+			betaDeltaSections = null;
+			betaDeltaKeys     = null;
+			candidates        = 0;
+		}
+
+		alphaKeys = alphaSections.keySet().toArray(new Integer[0]);
+		betaKeys  = (betaSections == null)  ?  null  :  betaSections.keySet().toArray(new Integer[0]);
+
+		assert XO_INDEX  ||  alphaKeys[0] == 0;
+		assert XO_INDEX  ||  betaKeys [0] == 0;
+	}
+
+	// Adds sections by size to target (if not null), returns number of sections
+	private static int addSections(Map<Integer, List<CodeSection>> target, Map<Integer, List<CodeSection>> source) {
+		int count = 0;
+
+		for (Map.Entry<Integer, List<CodeSection>> entry: source.entrySet()) {
+			count += entry.getValue().size();
 
-		assert alphaKeys[0] == 0;
-		assert betaKeys [0] == 0;
+			if (target != null) {
+				List<CodeSection> list = target.get(entry.getKey());
+				if (list == null) {
+					list = new ArrayList<CodeSection>();
+					target.put(entry.getKey(), list);
+				}
+
+				list.addAll(entry.getValue());
+			}
+		}
+
+		return count;
 	}
 
 	@Override
 	public Sections getSuggestion() {
+		// No stack-compatible pairs at all
+		if (XO_INDEX  &&  candidates == 0) {
+			log.warn("Compatible crossover: DEST=" + alphaBranches.getName() + ", SRC=" + betaBranches.getName()
+					+ " has no compatible sections");
+			return null;
+		}
+
+		// Pairs that were already checked, if exhaustive search is possible
+		Set<Long> checked = (XO_INDEX  &&  candidates <= XO_TRIES)  ?  new HashSet<Long>()  :  null;
+
 		for (int t = 1;  t <= XO_TRIES;  ++t) {
 			CodeSection alpha = pickCodeSection(alphaSections, alphaKeys);
-			CodeSection beta  = pickCodeSection(betaSections,  betaKeys);
+			CodeSection beta;
 
-			// Skip crossovers resulting in over-maximum size methods
-			// (the computation is an approximation, due to frame nodes)
-			if (maxSize != 0  &&  alphaSize - alpha.size() + beta.size() > maxSize)
+			if (XO_INDEX) {
+				int delta = alphaIndex.getStackDelta(alpha);
+				beta = pickCodeSection(betaDeltaSections.get(delta), betaDeltaKeys.get(delta));
+			}
+			else
+				beta = pickCodeSection(betaSections, betaKeys);
+
+			if (checked != null  &&  !checked.add(pairKey(alpha, beta)))
 				continue;
 
 			// Success - produce sections pair
-			if (xo.isCompatible(alpha, beta)) {
+			if (isCandidate(alpha, beta)  &&  xo.isCompatible(alpha, beta)) {
 				log.trace("Crossover found after " + t + " attempts");
 				return new Sections(alpha, beta);
 			}
 		}
 
+		// Check remaining pairs, in order
+		if (checked != null) {
+			for (int delta: betaDeltaSections.keySet())
+				for (List<CodeSection> alphaList: alphaIndex.getSortedSections(delta).values())
+					for (CodeSection alpha: alphaList)
+						for (List<CodeSection> betaList: betaDeltaSections.get(delta).values())
+							for (CodeSection beta: betaList)
+								if (!checked.contains(pairKey(alpha, beta))
+										&&  isCandidate(alpha, beta)  &&  xo.isCompatible(alpha, beta)) {
+									log.trace("Crossover found after exhaustive search");
+									return new Sections(alpha, beta);
+								}
+
+			log.warn("Compatible crossover: DEST=" + alphaBranches.getName() + ", SRC=" + betaBranches.getName()
+					+ " failed after checking all " + candidates + " candidates");
+			return null;
+		}
+
 		// null indicates failure
 		log.warn("Compatible crossover: DEST=" + alphaBranches.getName() + ", SRC=" + betaBranches.getName()
 				+ " failed after " + XO_TRIES + " attempts");
 		return null;
 	}
 
+	// Skip crossovers resulting in over-maximum size methods
+	// (the computation is an approximation, due to frame nodes)
+	private boolean isCandidate(CodeSection alpha, CodeSection beta) {
+		return maxSize == 0  ||  alphaSize - alpha.size() + beta.size() <= maxSize;
+	}
+
+	// Unique key of sections pair (method code is limited to 64K)
+	private static long pairKey(CodeSection alpha, CodeSection beta) {
+		return ((long) alpha.start << 48)  |  ((long) (alpha.end + 1) << 32)
+			|  ((long) beta.start  << 16)  |  (beta.end + 1);
+	}
+
 	/**
 	 * Randomly picks a code section (e.g., Gaussian or Uniform distribution of
 	 * section sizes).
@@ -20,6 +20,15 @@ public class FinchExperimentTest {
 		exp.run();
 	}
 
+	@Test
+	public void betasExperiment() {
+		URL params = FinchExperimentTest.class.getResource("probs/test-bytecode-betas.params");
+		assertNotNull(params);
+
+		Experiment exp = new Experiment(params, BytecodeProblem.class, 0);
+		exp.run();
+	}
+
 	@Test
 	public void SETexperiment() {
 		URL params = FinchExperimentTest.class.getResource("probs/test-bytecode-set.params");
@@ -0,0 +1,202 @@
+package esi.finch.ecj.bc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ec.EvolutionState;
+import ec.Evolve;
+import ec.Individual;
+import ec.Problem;
+import ec.simple.SimpleFitness;
+import ec.steadystate.SteadyStateEvolutionState;
+import ec.util.MersenneTwisterFast;
+import ec.util.ParameterDatabase;
+import esi.finch.ecj.ExperimentTest;
+import esi.finch.probs.BytecodeTestProblem;
+import esi.finch.probs.BytecodeTestProblemEvaluator;
+
+public class AsynchronousEvaluatorTest {
+
+	private static final int THREADS = 4;
+
+	public static class ThreadsProblem extends ExperimentTest.TestProblem {
+		private static final long serialVersionUID = 1L;
+
+		// Threads that evaluated individuals
+		static final Set<Integer> threads = Collections.synchronizedSet(new HashSet<Integer>());
+
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			threads.add(threadnum);
+			super.evaluate(state, ind, subpopulation, threadnum);
+		}
+	}
+
+	public static class FailingProblem extends ExperimentTest.TestProblem {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			throw new IllegalStateException("Failed evaluation");
+		}
+	}
+
+	public static class BrokenProblem extends ExperimentTest.TestProblem {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			throw new AssertionError("Broken evaluation");
+		}
+	}
+
+	/**
+	 * Evaluator that fails on every third evaluation, as if the evolved
+	 * class could not be loaded, or the evaluation failed.
+	 */
+	public static class FailingEvaluator extends BytecodeTestProblemEvaluator {
+		static final AtomicInteger evaluations = new AtomicInteger();
+
+		@Override
+		public Result evaluate(BytecodeIndividual ind, long timeout, long steps, MersenneTwisterFast random, int threadnum) {
+			int evaluation = evaluations.incrementAndGet();
+			if (evaluation % 6 == 0)
+				throw new VerifyError("Invalid individual");
+			if (evaluation % 6 == 3)
+				throw new IllegalStateException("Failed evaluation");
+
+			return super.evaluate(ind, timeout, steps, random, threadnum);
+		}
+	}
+
+	@Test
+	public void steadyState() throws URISyntaxException, IOException {
+		SteadyStateEvolutionState state = createState(ThreadsProblem.class);
+		state.startFresh();
+
+		int result;
+		while ((result = state.evolve()) == EvolutionState.R_NOTDONE)
+			;
+		assertEquals(EvolutionState.R_FAILURE, result);
+
+		// Full population of evaluated individuals
+		assertEquals(3 * 50, state.evaluations);
+		for (Individual ind: state.population.subpops[0].individuals)
+			assertTrue(ind.evaluated);
+
+		// Only evaluation threads evaluate (thread 0 breeds)
+		assertFalse(ThreadsProblem.threads.contains(0));
+		assertTrue(ThreadsProblem.threads.size() > 1);
+
+		state.finish(result);
+	}
+
+	@Test
+	public void failedEvaluation() throws URISyntaxException, IOException {
+		SteadyStateEvolutionState state = createState(FailingProblem.class);
+		state.startFresh();
+
+		// Failed individuals get the worst fitness, and the run continues
+		int result;
+		while ((result = state.evolve()) == EvolutionState.R_NOTDONE)
+			;
+		assertEquals(EvolutionState.R_FAILURE, result);
+		assertEquals(3 * 50, state.evaluations);
+
+		for (Individual ind: state.population.subpops[0].individuals) {
+			assertTrue(ind.evaluated);
+			assertEquals(Integer.MIN_VALUE, ((SimpleFitness) ind.fitness).fitness(), 0);
+		}
+
+		state.finish(result);
+	}
+
+	@Test
+	public void brokenEvaluation() throws URISyntaxException, IOException {
+		SteadyStateEvolutionState state = createState(BrokenProblem.class);
+
+		try {
+			state.startFresh();
+			while (state.evolve() == EvolutionState.R_NOTDONE)
+				;
+			fail("Failure was not rethrown");
+		} catch (Error e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+	}
+
+	@Test
+	public void bytecodeSteadyState() throws URISyntaxException, IOException {
+		URL params = BytecodeTestProblem.class.getResource("test-bytecode.params");
+		assertNotNull(params);
+
+		// Evolved individuals are cancellable-instrumented, and some of them fail
+		SteadyStateEvolutionState state = createState(params, BytecodeProblem.class,
+				"pop.subpop.0.size=20",
+				"bytecode.ind.cancellable=true",
+				"bytecode.prob.eval-class=" + FailingEvaluator.class.getName());
+		state.startFresh();
+
+		int result;
+		while ((result = state.evolve()) == EvolutionState.R_NOTDONE)
+			;
+		assertTrue(FailingEvaluator.evaluations.get() >= 6);
+
+		for (Individual ind: state.population.subpops[0].individuals)
+			assertTrue(ind.evaluated);
+
+		state.finish(result);
+	}
+
+	private static SteadyStateEvolutionState createState(Class<? extends Problem> problem) throws URISyntaxException, IOException {
+		URL params = ExperimentTest.class.getResource("test-simple.params");
+		assertNotNull(params);
+
+		return createState(params, problem, "pop.subpop.0.size=50");
+	}
+
+	private static SteadyStateEvolutionState createState(URL params, Class<? extends Problem> problem, String... overrides) throws URISyntaxException, IOException {
+		List<String> args = new ArrayList<String>(Arrays.asList(
+				"-p", "evalthreads=" + THREADS,
+				"-p", "checkpoint=false",
+				"-p", "prefix=cp",
+				"-p", "seed.0=1",
+				"-p", "seed.1=2",
+				"-p", "seed.2=3",
+				"-p", "seed.3=4",
+				"-p", "generations=3",
+				"-p", "state=" + SteadyStateEvolutionState.class.getName(),
+				"-p", "breed=ec.steadystate.SteadyStateBreeder",
+				"-p", "steady.deselector.0=ec.select.TournamentSelection",
+				"-p", "steady.deselector.0.size=2",
+				"-p", "steady.deselector.0.pick-worst=true",
+				"-p", "eval=" + AsynchronousEvaluator.class.getName(),
+				"-p", "eval.problem=" + problem.getName()));
+
+		for (String override: overrides) {
+			args.add("-p");
+			args.add(override);
+		}
+
+		ParameterDatabase parameters = new ParameterDatabase(new File(params.toURI()), args.toArray(new String[args.size()]));
+
+		return (SteadyStateEvolutionState) Evolve.initialize(parameters, 0);
+	}
+
+}
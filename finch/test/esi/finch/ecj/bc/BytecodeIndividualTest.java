@@ -0,0 +1,90 @@
+package esi.finch.ecj.bc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import ec.EvolutionState;
+import ec.Evolve;
+import ec.util.ParameterDatabase;
+import esi.bc.AnalyzedClassNode;
+import esi.bc.manip.CodeModifier;
+import esi.bc.manip.IdentityConstantsMutator;
+import esi.bc.manip.InstructionsMutator;
+import esi.finch.probs.BytecodeTestProblem;
+
+public class BytecodeIndividualTest {
+
+	@Test
+	public void cancellableEvolved() throws Exception {
+		EvolutionState state = createState();
+		state.startFresh();
+
+		BytecodeIndividual ind = (BytecodeIndividual) state.population.subpops[0].individuals[0];
+		assertTrue(ind.isInitial());
+
+		// Evolved code without stack map frames at the jump target and after the jump
+		InstructionsMutator mutator = new InstructionsMutator() {
+			public void mutate(MethodNode node) {
+				LabelNode label = new LabelNode();
+
+				InsnList insns = new InsnList();
+				insns.add(new JumpInsnNode(Opcodes.GOTO, label));
+				insns.add(new InsnNode(Opcodes.ICONST_0));
+				insns.add(new InsnNode(Opcodes.POP));
+				insns.add(label);
+
+				AbstractInsnNode first = node.instructions.getFirst();
+				while (first.getOpcode() < 0)
+					first = first.getNext();
+				node.instructions.insertBefore(first, insns);
+			}
+		};
+
+		CodeModifier modifier = new CodeModifier(BytecodeTestProblem.class.getName() + "_G1_T0_1",
+				AnalyzedClassNode.readClass(BytecodeTestProblem.class), new org.objectweb.asm.commons.Method("product", "(DD)D"),
+				new IdentityConstantsMutator(), mutator, true);
+
+		BytecodeIndividual evolved = ind.evolve(modifier);
+		assertFalse(evolved.isInitial());
+
+		// Instrumented class has recomputed frames
+		Method method = evolved.getMethod();
+		assertEquals(modifier.getName() + "_Can0", method.getDeclaringClass().getName());
+
+		Object instance = method.getDeclaringClass().newInstance();
+		assertEquals(2.0 + 2.0 * 3.0, (Double) method.invoke(instance, 2.0, 3.0), 0);
+
+		Evolve.cleanup(state);
+	}
+
+	// Initial individuals with cancellable instrumentation
+	private static EvolutionState createState() throws URISyntaxException, IOException {
+		URL params = BytecodeTestProblem.class.getResource("test-bytecode.params");
+		assertNotNull(params);
+
+		ParameterDatabase parameters = new ParameterDatabase(new File(params.toURI()), new String[] {
+				"-p", "checkpoint=false",
+				"-p", "prefix=cp",
+				"-p", "seed.0=1",
+				"-p", "pop.subpop.0.size=2",
+				"-p", "eval.problem=" + BytecodeProblem.class.getName(),
+				"-p", "bytecode.ind.cancellable=true" });
+
+		return Evolve.initialize(parameters, 0);
+	}
+
+}
@@ -0,0 +1,175 @@
+package esi.finch.ecj.bc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import org.junit.Test;
+
+import ec.EvolutionState;
+import ec.Evolve;
+import ec.Individual;
+import ec.Population;
+import ec.Problem;
+import ec.simple.SimpleFitness;
+import ec.util.ParameterDatabase;
+import ec.vector.BitVectorIndividual;
+import esi.finch.ecj.ExperimentTest;
+
+public class DynamicBreederTest {
+
+	@Test
+	public void breedPopulation() throws URISyntaxException, IOException {
+		Population one  = breed(1, 7, false);
+		Population four = breed(4, 7, false);
+
+		Individual[] oneInds  = one .subpops[0].individuals;
+		Individual[] fourInds = four.subpops[0].individuals;
+		assertEquals(oneInds.length, fourInds.length);
+
+		// Same children regardless of number of threads and chunk scheduling
+		for (int i = 0;  i < oneInds.length;  ++i) {
+			assertNotNull(oneInds[i]);
+			assertEquals(oneInds[i], fourInds[i]);
+		}
+
+		// Different seeds breed different children
+		Individual[] otherInds = breed(4, 8, false).subpops[0].individuals;
+		boolean same = true;
+		for (int i = 0;  i < oneInds.length;  ++i)
+			same &= oneInds[i].equals(otherInds[i]);
+		assertFalse(same);
+	}
+
+	@Test
+	public void pipelined() throws URISyntaxException, IOException {
+		Individual[] inds          = breed(4, 7, false).subpops[0].individuals;
+		Individual[] pipelinedInds = breed(4, 7, true) .subpops[0].individuals;
+
+		// Same children, which are already evaluated
+		for (int i = 0;  i < inds.length;  ++i) {
+			assertFalse(inds[i].evaluated);
+			assertTrue(pipelinedInds[i].evaluated);
+			assertEquals(inds[i], pipelinedInds[i]);
+		}
+	}
+
+	@Test
+	public void pipelinedGeneration() throws URISyntaxException, IOException {
+		Individual[] inds          = breedAndEvaluate(false);
+		Individual[] pipelinedInds = breedAndEvaluate(true);
+
+		// Children are evaluated in the next generation, as without pipelining
+		for (int i = 0;  i < inds.length;  ++i) {
+			float fitness = inds[i].fitness.fitness();
+			assertTrue(fitness >= 100  &&  fitness < 200);
+			assertEquals(fitness, pipelinedInds[i].fitness.fitness(), 0);
+		}
+	}
+
+	public static class GenerationProblem extends ExperimentTest.TestProblem
+			implements DynamicBreeder.GenerationDependent {
+		private static final long serialVersionUID = 1L;
+
+		private int generation = -1;
+
+		@Override
+		public void setEvaluatedGeneration(int generation) {
+			this.generation = generation;
+		}
+
+		// Fitness is 100 * generation + number of set bits
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			if (! ind.evaluated) {
+				int bits = 0;
+				for (boolean bit: ((BitVectorIndividual) ind).genome)
+					if (bit)
+						++bits;
+
+				int gen = (generation == -1)  ?  state.generation  :  generation;
+				((SimpleFitness) ind.fitness).setFitness(state, 100 * gen + bits, false);
+				ind.evaluated = true;
+			}
+		}
+	}
+
+	@Test
+	public void failedPipelinedEvaluation() throws URISyntaxException, IOException {
+		try {
+			breed(4, 7, true, FailingProblem.class);
+			fail("Failure was not rethrown");
+		} catch (Error e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	public static class FailingProblem extends ExperimentTest.TestProblem {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			throw new IllegalStateException("Failed evaluation");
+		}
+	}
+
+	private static Population breed(int threads, int seed, boolean pipelined) throws URISyntaxException, IOException {
+		return breed(threads, seed, pipelined, ExperimentTest.TestProblem.class);
+	}
+
+	private static Population breed(int threads, int seed, boolean pipelined, Class<? extends Problem> problem)
+			throws URISyntaxException, IOException {
+		EvolutionState state = createState(threads, seed, pipelined, problem);
+		return state.breeder.breedPopulation(state);
+	}
+
+	// Breeds and evaluates a generation as in SimpleEvolutionState
+	private static Individual[] breedAndEvaluate(boolean pipelined) throws URISyntaxException, IOException {
+		EvolutionState state = createState(4, 7, pipelined, GenerationProblem.class);
+
+		state.population = state.breeder.breedPopulation(state);
+		++state.generation;
+		state.evaluator.evaluatePopulation(state);
+
+		return state.population.subpops[0].individuals;
+	}
+
+	private static EvolutionState createState(int threads, int seed, boolean pipelined, Class<? extends Problem> problem)
+			throws URISyntaxException, IOException {
+		URL params = ExperimentTest.class.getResource("test-simple.params");
+		assertNotNull(params);
+
+		ParameterDatabase parameters = new ParameterDatabase(new File(params.toURI()), new String[] {
+				"-p", "breedthreads=" + threads,
+				"-p", "evalthreads=" + threads,
+				"-p", "checkpoint=false",
+				"-p", "prefix=cp",
+				"-p", "seed.0=" + seed,
+				"-p", "seed.1=" + (seed + 1),
+				"-p", "seed.2=" + (seed + 2),
+				"-p", "seed.3=" + (seed + 3),
+				"-p", "breed=" + DynamicBreeder.class.getName(),
+				"-p", "breed.chunk-size=3",
+				"-p", "breed.pipelined=" + pipelined,
+				"-p", "eval.problem=" + problem.getName() });
+
+		EvolutionState state = Evolve.initialize(parameters, 0);
+		state.setup(state, null);
+		state.population = state.initializer.initialPopulation(state, 0);
+
+		// Fitness for tournament selection
+		Individual[] inds = state.population.subpops[0].individuals;
+		for (int i = 0;  i < inds.length;  ++i) {
+			((SimpleFitness) inds[i].fitness).setFitness(state, i % 17, false);
+			inds[i].evaluated = true;
+		}
+
+		return state;
+	}
+
+}
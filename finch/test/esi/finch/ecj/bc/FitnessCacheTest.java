@@ -0,0 +1,60 @@
+package esi.finch.ecj.bc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.commons.Method;
+
+import esi.bc.AnalyzedClassNode;
+import esi.bc.MethodDigest;
+import esi.bc.test.Fact;
+import esi.finch.ecj.bc.BytecodeEvaluator.Result;
+
+public class FitnessCacheTest {
+
+	private static MethodDigest factDigest;
+	private static MethodDigest initDigest;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException {
+		AnalyzedClassNode cn = AnalyzedClassNode.readClass(Fact.class);
+		factDigest = MethodDigest.digest(cn, new Method("fact",   "(I)I"));
+		initDigest = MethodDigest.digest(cn, new Method("<init>", "()V"));
+	}
+
+	@Test
+	public void cachedResults() {
+		FitnessCache cache  = new FitnessCache(10);
+		Result       result = new Result(1, true);
+
+		assertNull(cache.get(factDigest));
+		cache.put(factDigest, result);
+		assertSame(result, cache.get(factDigest));
+		assertNull(cache.get(initDigest));
+
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void leastRecentlyUsed() {
+		FitnessCache cache = new FitnessCache(1);
+
+		cache.put(factDigest, new Result(1, false));
+		cache.put(initDigest, new Result(2, false));
+
+		assertEquals(1, cache.size());
+		assertNull(cache.get(factDigest));
+		assertEquals(2, cache.get(initDigest).fitness, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroSize() {
+		new FitnessCache(0);
+	}
+
+}
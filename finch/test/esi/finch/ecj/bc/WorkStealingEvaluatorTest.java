@@ -0,0 +1,147 @@
+package esi.finch.ecj.bc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ec.EvolutionState;
+import ec.Evolve;
+import ec.Individual;
+import ec.Problem;
+import ec.simple.SimpleFitness;
+import ec.simple.SimpleProblemForm;
+import ec.util.ParameterDatabase;
+import esi.finch.ecj.ExperimentTest;
+
+public class WorkStealingEvaluatorTest {
+
+	private static final int THREADS = 4;
+
+	public static class SlowProblem extends Problem implements SimpleProblemForm {
+		private static final long serialVersionUID = 1L;
+
+		// Threads that evaluated slow individuals
+		static final Set<Integer> slowThreads = Collections.synchronizedSet(new HashSet<Integer>());
+
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			assertFalse(ind.evaluated);
+			assertTrue(threadnum >= 0  &&  threadnum < THREADS);
+
+			// Only first individuals are slow, so stealing is required
+			int index = indexOf(state, ind);
+			if (index < 10) {
+				slowThreads.add(threadnum);
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					fail("Interrupted");
+				}
+			}
+
+			((SimpleFitness) ind.fitness).setFitness(state, index, false);
+			ind.evaluated = true;
+		}
+
+		@Override
+		public void describe(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum, int log) {
+		}
+
+		private static int indexOf(EvolutionState state, Individual ind) {
+			Individual[] inds = state.population.subpops[0].individuals;
+			for (int i = 0;  i < inds.length;  ++i)
+				if (inds[i] == ind)
+					return i;
+
+			throw new AssertionError("Individual not in population");
+		}
+	}
+
+	public static class FailingProblem extends SlowProblem {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void evaluate(EvolutionState state, Individual ind,
+				int subpopulation, int threadnum) {
+			if (ind == state.population.subpops[0].individuals[42])
+				throw new IllegalStateException("Failed evaluation");
+
+			super.evaluate(state, ind, subpopulation, threadnum);
+		}
+	}
+
+	@Test
+	public void evaluatePopulation() throws URISyntaxException, IOException {
+		EvolutionState state = createState(SlowProblem.class);
+
+		WorkStealingEvaluator evaluator = (WorkStealingEvaluator) state.evaluator;
+		evaluator.evaluatePopulation(state);
+
+		Individual[] inds = state.population.subpops[0].individuals;
+		for (int i = 0;  i < inds.length;  ++i) {
+			assertTrue(inds[i].evaluated);
+			assertEquals(i, inds[i].fitness.fitness(), 0);
+		}
+
+		// Slow individuals (all in the range of thread 0) are stolen
+		assertTrue(SlowProblem.slowThreads.size() > 1);
+
+		long busy = 0;
+		for (int threadnum = 0;  threadnum < THREADS;  ++threadnum) {
+			busy += evaluator.getBusyTime(threadnum);
+			assertTrue(evaluator.getIdleTime(threadnum) >= 0);
+		}
+		assertTrue(busy >= 10 * 20000000L);
+
+		// Next generation reuses the pool
+		for (Individual ind: inds)
+			ind.evaluated = false;
+		evaluator.evaluatePopulation(state);
+
+		for (Individual ind: inds)
+			assertTrue(ind.evaluated);
+	}
+
+	@Test
+	public void failedEvaluation() throws URISyntaxException, IOException {
+		EvolutionState state = createState(FailingProblem.class);
+
+		try {
+			state.evaluator.evaluatePopulation(state);
+			fail("Failure was not rethrown");
+		} catch (Error e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	private static EvolutionState createState(Class<? extends Problem> problem) throws URISyntaxException, IOException {
+		URL params = ExperimentTest.class.getResource("test-simple.params");
+		assertNotNull(params);
+
+		ParameterDatabase parameters = new ParameterDatabase(new File(params.toURI()), new String[] {
+				"-p", "evalthreads=" + THREADS,
+				"-p", "checkpoint=false",
+				"-p", "prefix=cp",
+				"-p", "seed.2=3",
+				"-p", "seed.3=4",
+				"-p", "eval=" + WorkStealingEvaluator.class.getName(),
+				"-p", "eval.problem=" + problem.getName() });
+
+		EvolutionState state = Evolve.initialize(parameters, 0);
+		state.setup(state, null);
+		state.population = state.initializer.initialPopulation(state, 0);
+
+		return state;
+	}
+
+}
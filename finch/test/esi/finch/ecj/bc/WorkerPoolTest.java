@@ -0,0 +1,64 @@
+package esi.finch.ecj.bc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class WorkerPoolTest {
+
+	private static final int THREADS = 4;
+
+	@Test
+	public void execute() throws InterruptedException {
+		WorkerPool pool = new WorkerPool("Test", THREADS);
+		assertEquals(THREADS, pool.size());
+
+		// Same pool runs several tasks, each once per thread number
+		for (int t = 0;  t < 3;  ++t) {
+			final AtomicIntegerArray runs = new AtomicIntegerArray(THREADS);
+
+			WorkerPool.Task task = new WorkerPool.Task() {
+				@Override
+				void run(int threadnum) {
+					runs.incrementAndGet(threadnum);
+				}
+			};
+
+			pool.execute(task);
+
+			assertFalse(task.isFailed());
+			for (int threadnum = 0;  threadnum < THREADS;  ++threadnum)
+				assertEquals(1, runs.get(threadnum));
+		}
+	}
+
+	@Test
+	public void failure() throws InterruptedException {
+		WorkerPool pool = new WorkerPool("Test", THREADS);
+
+		WorkerPool.Task task = new WorkerPool.Task() {
+			@Override
+			void run(int threadnum) {
+				if (threadnum == 2)
+					throw new IllegalStateException("Failed task");
+			}
+		};
+
+		// Failure is kept in the task, and the pool is still usable
+		pool.execute(task);
+		assertTrue(task.isFailed());
+		assertTrue(task.getFailure() instanceof IllegalStateException);
+
+		WorkerPool.Task next = new WorkerPool.Task() {
+			@Override
+			void run(int threadnum) {
+			}
+		};
+
+		pool.execute(next);
+		assertFalse(next.isFailed());
+	}
+
+}
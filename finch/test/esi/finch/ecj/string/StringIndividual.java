@@ -1,6 +1,7 @@
 package esi.finch.ecj.string;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 
@@ -133,6 +134,11 @@ public class StringIndividual extends Individual implements ImmutableIndividual<
 		return res;
 	}
 
+	// Used by crossover pipeline with several betas
+	public StringIndividual crossover(List<StringIndividual> others, EvolutionState state, int thread) {
+		return crossover(others.get(state.random[thread].nextInt(others.size())), state, thread);
+	}
+
 	@Override
 	public long size() {
 		return genome.length();
@@ -38,5 +38,10 @@ public class InsertMutatorTest {
 		AbstractInsnNode after = fact.instructions.get(position + 1);
 		
 		assertTrue(before != after);
+
+		// Inserted after position
+		assertEquals(position + 1, mut.getEditStart());
+		assertEquals(position,     mut.getOriginalEditEnd());
+		assertEquals(position + 1, mut.getMutantEditEnd());
 	}
 }
@@ -0,0 +1,195 @@
+package esi.finch.mut;
+
+import static org.junit.Assert.*;
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+import esi.bc.AnalyzedClassNode;
+import esi.bc.AnalyzedMethodNode;
+import esi.bc.manip.CodeModifier;
+import esi.bc.manip.IdentityConstantsMutator;
+import esi.bc.test.Fact;
+import esi.bc.xo.CompatibleCrossover;
+import esi.bc.xo.TypeVerifier;
+
+public class MutationVerifierTest {
+
+	private static AnalyzedClassNode  cn;
+	private static AnalyzedMethodNode fact;
+	private static Method             factMethod;
+
+	// Index of ICONST_1 in fact()
+	private static int                iconst;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException {
+		cn         = AnalyzedClassNode.readClass(Fact.class);
+		factMethod = new Method("fact", "(I)I");
+		fact       = cn.findMethod(factMethod);
+
+		iconst = 0;
+		while (fact.instructions.get(iconst).getOpcode() != Opcodes.ICONST_1)
+			++iconst;
+	}
+
+	@Test
+	public void localizedValid() {
+		MutationVerifier verifier = verify(Opcodes.ICONST_2, "LocalizedValid");
+
+		// Sections are smaller than the method
+		assertTrue(verifier.getOriginalSection().start <= iconst);
+		assertTrue(verifier.getOriginalSection().end   >= iconst);
+		assertTrue(verifier.getOriginalSection().size() < fact.instructions.size());
+		assertEquals(verifier.getOriginalSection().start, verifier.getMutantSection().start);
+		assertEquals(verifier.getOriginalSection().end,   verifier.getMutantSection().end);
+
+		assertTrue(verifier.isValidMutation());
+	}
+
+	@Test
+	public void localizedInvalid() {
+		MutationVerifier verifier = verify(Opcodes.FCONST_1, "LocalizedInvalid");
+
+		assertTrue(verifier.getOriginalSection().size() < fact.instructions.size());
+		assertFalse(verifier.isValidMutation());
+	}
+
+	@Test
+	public void shiftedOutsideWindow() {
+		// Instructions after the edited range are shifted (as by
+		// eliminated code), but the size difference is the same
+		MutationVerifier verifier = verify(new ReplacingMutator(Opcodes.ICONST_2) {
+			@Override
+			public void mutate(MethodNode node) {
+				super.mutate(node);
+
+				AbstractInsnNode edited = node.instructions.get(iconst);
+				node.instructions.insertBefore(edited, new InsnNode(Opcodes.NOP));
+
+				AbstractInsnNode store = node.instructions.getLast();
+				while (store.getOpcode() != Opcodes.ISTORE)
+					store = store.getPrevious();
+				node.instructions.remove(store);
+			}
+		}, "ShiftedOutsideWindow");
+
+		// Entire methods are used
+		assertEquals(0, verifier.getOriginalSection().start);
+		assertEquals(fact.instructions.size() - 1, verifier.getOriginalSection().end);
+		assertEquals(fact.instructions.size() - 1, verifier.getMutantSection().end);
+	}
+
+	@Test
+	public void unreachableWindow() {
+		// Original with a jump over nothing before ICONST_1
+		LabelNode label = new LabelNode();
+		CodeModifier jumpModifier = new CodeModifier(Fact.class.getName() + "Jump", cn.copy(), factMethod,
+				new IdentityConstantsMutator(), new InsertingMutator(new JumpInsnNode(Opcodes.GOTO, label), label,
+						new FrameNode(Opcodes.F_SAME, 0, null, 0, null)), true);
+		AnalyzedClassNode  jumpNode = jumpModifier.getSharedClassNode();
+		AnalyzedMethodNode jump     = jumpNode.findMethod(factMethod);
+
+		// Mutant with an unreachable POP after GOTO
+		InsertingMutator mutator = new InsertingMutator(new InsnNode(Opcodes.POP)) {
+			@Override
+			public int getEditStart() {
+				return iconst + 1;
+			}
+		};
+		CodeModifier modifier = new CodeModifier(Fact.class.getName() + "UnreachableWindow", jumpNode.copy(), factMethod,
+				new IdentityConstantsMutator(), mutator, true);
+
+		AnalyzedClassNode  mutantNode = modifier.getSharedClassNode();
+		AnalyzedMethodNode mutant     = mutantNode.findMethod(factMethod);
+		CompatibleCrossover xo = new CompatibleCrossover(jump, mutant, new TypeVerifier(jumpNode, mutantNode));
+
+		MutationVerifier verifier = new MutationVerifier(jump, mutant, xo, mutator);
+
+		// Window has no frames actions, so entire methods are used
+		assertEquals(Opcodes.POP, mutant.instructions.get(iconst + 1).getOpcode());
+		assertNull(mutant.getFrameData(iconst + 1));
+		assertEquals(0, verifier.getOriginalSection().start);
+		assertEquals(jump.instructions.size() - 1,   verifier.getOriginalSection().end);
+		assertEquals(mutant.instructions.size() - 1, verifier.getMutantSection().end);
+
+		assertFalse(verifier.isValidMutation());
+	}
+
+	// Replaces ICONST_1 in a copy of fact(), and verifies the mutant
+	private MutationVerifier verify(int opcode, String suffix) {
+		return verify(new ReplacingMutator(opcode), suffix);
+	}
+
+	private MutationVerifier verify(LocalizedMutator mutator, String suffix) {
+		CodeModifier modifier = new CodeModifier(Fact.class.getName() + suffix, cn.copy(), factMethod,
+				new IdentityConstantsMutator(), mutator, true);
+
+		AnalyzedClassNode  mutantNode = modifier.getSharedClassNode();
+		AnalyzedMethodNode mutant     = mutantNode.findMethod(factMethod);
+		CompatibleCrossover xo = new CompatibleCrossover(fact, mutant, new TypeVerifier(cn, mutantNode));
+
+		return new MutationVerifier(fact, mutant, xo, mutator);
+	}
+
+	// Inserts given instructions (before ICONST_1, by default)
+	private static class InsertingMutator implements LocalizedMutator {
+		private final AbstractInsnNode[] insns;
+
+		InsertingMutator(AbstractInsnNode... insns) {
+			this.insns = insns;
+		}
+
+		public void mutate(MethodNode node) {
+			AbstractInsnNode next = node.instructions.get(getEditStart());
+			for (AbstractInsnNode insn: insns)
+				node.instructions.insertBefore(next, insn);
+		}
+
+		public int getEditStart() {
+			return iconst;
+		}
+
+		public int getOriginalEditEnd() {
+			return getEditStart() - 1;
+		}
+
+		public int getMutantEditEnd() {
+			return getEditStart() + insns.length - 1;
+		}
+	}
+
+	// Replaces ICONST_1 with given opcode
+	private static class ReplacingMutator implements LocalizedMutator {
+		private final int opcode;
+
+		ReplacingMutator(int opcode) {
+			this.opcode = opcode;
+		}
+
+		public void mutate(MethodNode node) {
+			node.instructions.set(node.instructions.get(iconst), new InsnNode(opcode));
+		}
+
+		public int getEditStart() {
+			return iconst;
+		}
+
+		public int getOriginalEditEnd() {
+			return iconst;
+		}
+
+		public int getMutantEditEnd() {
+			return iconst;
+		}
+	}
+
+}
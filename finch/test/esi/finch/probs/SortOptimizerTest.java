@@ -0,0 +1,104 @@
+package esi.finch.probs;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import esi.finch.probs.SortOptimizer.TestSet;
+import esi.util.PaddedCounters;
+
+public class SortOptimizerTest {
+
+	private static final long TIMEOUT = 1000;
+
+	// Not updated by the seed program, so that its counts are zero
+	private final PaddedCounters counters = new PaddedCounters(1);
+
+	/**
+	 * Seed program that fails on its first calls.
+	 */
+	public static class FailingSeed {
+		private final int failures;
+		private volatile int calls;
+
+		public FailingSeed() {
+			this(0);
+		}
+
+		public FailingSeed(int failures) {
+			this.failures = failures;
+		}
+
+		public int[] seed(int[] list) {
+			if (++calls <= failures)
+				throw new IllegalStateException("Failed seed call " + calls);
+
+			Arrays.sort(list);
+			return list;
+		}
+	}
+
+	@Test
+	public void testSetSeeds() {
+		int[][] lists = new SortOptimizer(1).getTestSet(0, new FailingSeed(), TIMEOUT, counters, 0).lists;
+
+		// Same run seed and generation
+		assertTrue(Arrays.deepEquals(lists, new SortOptimizer(1).getTestSet(0, new FailingSeed(), TIMEOUT, counters, 0).lists));
+
+		// Other run seed, or other generation
+		assertFalse(Arrays.deepEquals(lists, new SortOptimizer(2).getTestSet(0, new FailingSeed(), TIMEOUT, counters, 0).lists));
+		assertFalse(Arrays.deepEquals(lists, new SortOptimizer(1).getTestSet(1, new FailingSeed(), TIMEOUT, counters, 0).lists));
+	}
+
+	@Test
+	public void testSetMemoization() {
+		SortOptimizer optimizer = new SortOptimizer(1);
+		FailingSeed   seed      = new FailingSeed();
+
+		// Seed program runs once per list in a generation
+		TestSet tests = optimizer.getTestSet(0, seed, TIMEOUT, counters, 0);
+		assertNotNull(tests);
+		assertEquals(0, tests.generation);
+		assertEquals(tests.lists.length, seed.calls);
+
+		assertSame(tests, optimizer.getTestSet(0, seed, TIMEOUT, counters, 0));
+		assertEquals(tests.lists.length, seed.calls);
+
+		// New generation
+		TestSet next = optimizer.getTestSet(1, seed, TIMEOUT, counters, 0);
+		assertNotSame(tests, next);
+		assertEquals(1, next.generation);
+		assertEquals(tests.lists.length + next.lists.length, seed.calls);
+	}
+
+	@Test
+	public void testSetRetry() {
+		// Fails on first list of the first two tries
+		FailingSeed seed  = new FailingSeed(2);
+		TestSet     tests = new SortOptimizer(1).getTestSet(0, seed, TIMEOUT, counters, 0);
+
+		assertNotNull(tests);
+		assertEquals(2 + tests.lists.length, seed.calls);
+
+		// Lists of the third try
+		TestSet firstTry = new SortOptimizer(1).getTestSet(0, new FailingSeed(), TIMEOUT, counters, 0);
+		assertFalse(Arrays.deepEquals(firstTry.lists, tests.lists));
+	}
+
+	@Test
+	public void testSetFailure() {
+		SortOptimizer optimizer = new SortOptimizer(1);
+		FailingSeed   seed      = new FailingSeed(Integer.MAX_VALUE);
+
+		// Fails on first list of each try, and tries again on next request
+		assertNull(optimizer.getTestSet(0, seed, TIMEOUT, counters, 0));
+		int calls = seed.calls;
+		assertTrue(calls > 1);
+
+		assertNull(optimizer.getTestSet(0, seed, TIMEOUT, counters, 0));
+		assertEquals(2 * calls, seed.calls);
+	}
+
+}
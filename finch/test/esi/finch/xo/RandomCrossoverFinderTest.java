@@ -3,6 +3,8 @@ package esi.finch.xo;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -49,6 +51,28 @@ public class RandomCrossoverFinderTest {
 		assertTrue(xo.isCompatible(xoSections.alpha, xoSections.beta));
 	}
 
+	@Test
+	public void getSuggestions() throws IOException {
+		AnalyzedClassNode cn1  = AnalyzedClassNode.readClass(Fact.class);
+		AnalyzedClassNode cn2  = AnalyzedClassNode.readClass(FactLong.class);
+
+		AnalyzedMethodNode mn1 = cn1.findMethod(new Method("fact", "(I)I"));
+		AnalyzedMethodNode mn2 = cn2.findMethod(new Method("fact", "(J)J"));
+
+		List<AnalyzedMethodNode>  betas = Arrays.asList(mn1, mn2);
+		List<CompatibleCrossover> xos   = Arrays.asList(
+				new CompatibleCrossover(mn1, mn1, new TypeVerifier(cn1, cn1)),
+				new CompatibleCrossover(mn1, mn2, new TypeVerifier(cn1, cn2)));
+
+		List<Sections> suggestions = CrossoverFinder.getSuggestions(UniformCrossoverFinder.class, mn1, betas, xos, random, 50);
+		assertEquals(betas.size(), suggestions.size());
+
+		for (int i = 0;  i < suggestions.size();  ++i) {
+			assertNotNull(suggestions.get(i));
+			assertTrue(xos.get(i).isCompatible(suggestions.get(i).alpha, suggestions.get(i).beta));
+		}
+	}
+
 	@Test
 	public void getComplexSuggestion() throws IOException {
 		AnalyzedClassNode cn1 = getNode("FinchPlayer_G46_T1_9199");
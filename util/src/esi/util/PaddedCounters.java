@@ -0,0 +1,77 @@
+package esi.util;
+
+/**
+ * Fixed number of <code>long</code> counters, each in its own cache line.
+ *
+ * Counters are intended to be written by a single thread each (e.g., one
+ * counter per evaluation thread), and are not synchronized. Padding
+ * prevents false sharing between threads that update adjacent counters,
+ * which is significant when a counter is updated on every backward jump.
+ */
+public class PaddedCounters {
+
+	// 128 bytes between counters, to account for adjacent line prefetch
+	private static final int STRIDE = 16;
+
+	private final long[] values;
+	private final int    size;
+
+	/**
+	 * Creates a new set of counters, initialized to 0.
+	 *
+	 * @param size number of counters
+	 */
+	public PaddedCounters(int size) {
+		this.size = size;
+
+		// Padding before the first and after the last counter
+		values = new long[(size + 1) * STRIDE];
+	}
+
+	/**
+	 * @return number of counters
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param id counter id
+	 * @return counter value
+	 */
+	public long get(int id) {
+		return values[index(id)];
+	}
+
+	/**
+	 * @param id counter id
+	 * @param value new counter value
+	 */
+	public void set(int id, long value) {
+		values[index(id)] = value;
+	}
+
+	/**
+	 * @param id counter id
+	 * @return counter value after increment
+	 */
+	public long increment(int id) {
+		return ++values[index(id)];
+	}
+
+	/**
+	 * @param id counter id
+	 * @return counter value after decrement
+	 */
+	public long decrement(int id) {
+		return --values[index(id)];
+	}
+
+	private int index(int id) {
+		if (id < 0  ||  id >= size)
+			throw new ArrayIndexOutOfBoundsException(id);
+
+		return (id + 1) * STRIDE;
+	}
+
+}
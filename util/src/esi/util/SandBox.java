@@ -7,8 +7,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.logging.Log;
 
 /**
@@ -18,6 +20,11 @@ import org.apache.commons.logging.Log;
  * Therefore, timeout should only be used as a safety guard for exceptional
  * circumstances.
  *
+ * Code that calls {@link #checkpoint(int)} (e.g., a class instrumented by
+ * the <code>CodeInterrupter</code> with this callback) is cancelled
+ * cooperatively on timeout. Workers that still run after a timeout are
+ * counted by {@link #getStuckWorkers()}.
+ *
  * @author Michael Orlov
  */
 public class SandBox {
@@ -27,13 +34,45 @@ public class SandBox {
 	// Thread Pool (thread-safe)
 	private static final ExecutorService executor;
 
-	private final Object object;		// call object (may be null)
-	private final Method method;		// method to call
-	private final long   timeout;		// timeout in milliseconds
+	// Number of timed out workers that are still running
+	private static final AtomicInteger stuck = new AtomicInteger();
+
+	// Runner states
+	private static final int NEW       = 0;
+	private static final int RUNNING   = 1;
+	private static final int DONE      = 2;
+	private static final int CANCELLED = 3;
+
+	private final Object         object;	// call object (may be null)
+	private final Method         method;	// method to call
+	private final long           timeout;	// timeout in milliseconds
+	private final PaddedCounters counters;	// instruction counters (may be null)
+	private final int            counterId;	// counter updated by the method
 
 	static {
 		log.info("Creating sandbox thread pool");
-		executor = Executors.newCachedThreadPool();
+		executor = Executors.newCachedThreadPool(new WorkerFactory());
+	}
+
+	// Pool thread that publishes its current runner to checkpoint()
+	private static class Worker extends Thread {
+		public volatile Runner runner;
+
+		public Worker(Runnable target, String name) {
+			super(target, name);
+		}
+	}
+
+	// Daemon workers, so that stuck threads don't prevent JVM exit
+	private static class WorkerFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable target) {
+			Worker worker = new Worker(target, "SandBox-" + count.incrementAndGet());
+			worker.setDaemon(true);
+			return worker;
+		}
 	}
 
 	/**
@@ -43,11 +82,13 @@ public class SandBox {
 		public Throwable exception;		// exception if it occurred
 		public long      millis;		// execution time (or till exception)
 		public Object    retvalue;		// value returned by the method (null if void)
+		public long      count;			// instructions count (or till exception), -1 if not counted
 
 		public Result() {
 			exception = null;
 			millis    = -1;
 			retvalue  = null;
+			count     = -1;
 		}
 
 		/**
@@ -59,21 +100,72 @@ public class SandBox {
 	}
 
 	// Note: instance inner class
-	private class Runner implements Callable<Result> {
-		public final Object[] args;		// call arguments
-		public       Error    problem;	// exception to be rethrown by SandBox
+	private class Runner implements Callable<Result[]> {
+		public final Object[][]    batch;		// call arguments, one array per call
+		public       Error         problem;		// exception to be rethrown by SandBox
+		public final AtomicInteger state;		// NEW -> RUNNING -> DONE, or CANCELLED
 
-		public Runner(Object[] args) {
-			this.args = args;
+		public Runner(Object[][] batch) {
+			this.batch = batch;
 			problem = null;
+			state   = new AtomicInteger(NEW);
 		}
 
 		@Override
-		public Result call() /* throws Exception */ {
+		public Result[] call() /* throws Exception */ {
+			// Timeout before the runner has started
+			if (!state.compareAndSet(NEW, RUNNING))
+				return null;
+
+			Worker worker = (Worker) Thread.currentThread();
+			worker.runner = this;
+
+			try {
+				Result[] results = new Result[batch.length];
+
+				// Calls after the first exception are not performed
+				for (int i = 0;  i < batch.length;  ++i) {
+					results[i] = invoke(batch[i]);
+
+					if (problem != null  ||  results[i].exception != null)
+						break;
+				}
+
+				return results;
+			} finally {
+				worker.runner = null;
+
+				// Worker is no longer stuck
+				if (state.getAndSet(DONE) == CANCELLED)
+					stuck.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Raises the cancellation flag. If the runner is running,
+		 * it is counted as stuck until it finishes.
+		 */
+		public void cancel() {
+			if (state.compareAndSet(RUNNING, CANCELLED)) {
+				int count = stuck.incrementAndGet();
+				log.debug("Sandbox timeout, stuck workers: " + count);
+			}
+			else
+				state.compareAndSet(NEW, CANCELLED);
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		private Result invoke(Object[] args) {
 			// exception=null, retvalue=null
 			Result result = new Result();
 			long   millis = System.currentTimeMillis();
 
+			if (counters != null)
+				counters.set(counterId, 0);
+
 			try {
 				// retvalue is non-null only if the call succeeds
 				result.retvalue = method.invoke(object, args);
@@ -95,6 +187,9 @@ public class SandBox {
 				result.millis    = System.currentTimeMillis() - millis;
 			}
 
+			if (counters != null)
+				result.count = counters.get(counterId);
+
 			return result;
 		}
 	}
@@ -108,9 +203,31 @@ public class SandBox {
 	 * @param timeout timeout in milliseconds
 	 */
 	public SandBox(Object object, Method method, long timeout) {
-		this.object  = object;
-		this.method  = method;
-		this.timeout = timeout;
+		this(object, method, timeout, null, 0);
+	}
+
+	/**
+	 * Creates a new sandbox that is ready to execute given
+	 * method in a separate thread, and reports the number of
+	 * instructions executed by each call.
+	 *
+	 * The method is expected to be instrumented so that it adds executed
+	 * instructions to the given counter (e.g., by <code>CodeCounter</code>).
+	 * The counter is reset before each call, and is only accessed by the
+	 * worker thread that executes the call.
+	 *
+	 * @param object class instance (null for static method)
+	 * @param method method to execute
+	 * @param timeout timeout in milliseconds
+	 * @param counters instruction counters
+	 * @param counterId counter updated by the method
+	 */
+	public SandBox(Object object, Method method, long timeout, PaddedCounters counters, int counterId) {
+		this.object    = object;
+		this.method    = method;
+		this.timeout   = timeout;
+		this.counters  = counters;
+		this.counterId = counterId;
 	}
 
 	/**
@@ -123,20 +240,40 @@ public class SandBox {
 	 * @return execution result, or <code>null</code> if timeout occurred
 	 */
 	public Result call(Object... args) {
-		Runner runner = new Runner(args);
+		Result[] results = callBatch(new Object[][] { args });
+		return (results == null)  ?  null  :  results[0];
+	}
+
+	/**
+	 * Executes the method once for each arguments array, with all
+	 * calls made sequentially in a single pooled thread. This avoids
+	 * a thread handoff per call for short-running methods.
+	 *
+	 * The timeout applies to the whole batch. The batch stops at the
+	 * first call that throws an exception, leaving the results of the
+	 * remaining calls <code>null</code>.
+	 *
+	 * @param batch arguments to the method, one array per call
+	 * @return execution results in call order, or <code>null</code> if timeout occurred
+	 */
+	public Result[] callBatch(Object[]... batch) {
+		Runner runner = new Runner(batch);
 
 		// run() in separate thread
-		Future<Result> future = executor.submit(runner);
-		Result         result;
+		Future<Result[]> future = executor.submit(runner);
+		Result[]         results;
 
 		// wait for thread to complete, with timeout
 		try {
-			result = future.get(timeout, TimeUnit.MILLISECONDS);
+			results = future.get(timeout, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {
 			throw new Error("Unexpected: Interrupted Exception");
 		} catch (ExecutionException e) {
 			throw new Error("Unexpected: Execution Exception");
 		} catch (TimeoutException e) {
+			// cooperative code stops at the next checkpoint
+			runner.cancel();
+
 			// cancellation can fail if method stopped running in between
 			future.cancel(true);
 
@@ -149,15 +286,46 @@ public class SandBox {
 		if (runner.problem != null)
 			throw runner.problem;
 
-		return result;
+		return results;
+	}
+
+	/**
+	 * Cooperative cancellation callback, intended to be called by
+	 * instrumented code before backward jumps and method calls.
+	 *
+	 * In a sandbox worker, throws {@link InterruptedException} if the
+	 * current call has timed out. In other threads, throws it if the
+	 * thread was interrupted.
+	 *
+	 * @param id callback argument of the instrumented code (unused)
+	 * @throws InterruptedException if the call should stop
+	 */
+	public static void checkpoint(int id) throws InterruptedException {
+		Thread thread = Thread.currentThread();
+
+		if (thread instanceof Worker) {
+			Runner runner = ((Worker) thread).runner;
+			if (runner != null  &&  runner.isCancelled())
+				throw new InterruptedException("Sandbox timeout");
+		}
+		else if (Thread.interrupted())
+			throw new InterruptedException();
+	}
+
+	/**
+	 * @return number of timed out workers that are still running
+	 */
+	public static int getStuckWorkers() {
+		return stuck.get();
 	}
 
 	/**
 	 * Initiates an orderly shutdown of the thread pool.
-	 * No further calls to {@link #call(Object...)} are possible.
+	 * No further calls to {@link #call(Object...)} or
+	 * {@link #callBatch(Object[][])} are possible.
 	 */
 	public static void shutdown() {
-		log.info("Shutting down sandbox thread pool");
+		log.info("Shutting down sandbox thread pool (stuck workers: " + stuck.get() + ")");
 		executor.shutdown();
 	}
 
@@ -0,0 +1,79 @@
+package esi.util;
+
+/**
+ * Multi-threaded contention benchmark of {@link PaddedCounters}, compared
+ * to adjacent counters in a plain <code>long[]</code> (false sharing).
+ *
+ * Not a unit test, since timing depends on the machine. Run with optional
+ * arguments: number of threads (default is number of processors), and
+ * number of decrements per thread.
+ */
+public class PaddedCountersBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws InterruptedException {
+		int  threads = (args.length > 0)  ?  Integer.parseInt(args[0])  :  Runtime.getRuntime().availableProcessors();
+		long count   = (args.length > 1)  ?  Long.parseLong(args[1])    :  100000000L;
+
+		System.out.println("Threads: " + threads + ", decrements per thread: " + count);
+
+		// First rounds warm up the JIT
+		for (int round = 1;  round <= ROUNDS;  ++round)
+			System.out.println("Round " + round
+					+ ": padded " + runPadded(threads, count) + "ms"
+					+ ", adjacent " + runAdjacent(threads, count) + "ms");
+	}
+
+	// Steps interrupter pattern: count down to zero
+	private static long runPadded(int threads, final long count) throws InterruptedException {
+		final PaddedCounters counters = new PaddedCounters(threads);
+
+		Thread[] workers = new Thread[threads];
+		for (int i = 0;  i < threads;  ++i) {
+			final int id = i;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					counters.set(id, count);
+					while (counters.decrement(id) != 0)
+						;
+				}
+			};
+		}
+
+		return run(workers);
+	}
+
+	// Same pattern, with counters in adjacent slots
+	private static long runAdjacent(int threads, final long count) throws InterruptedException {
+		final long[] counters = new long[threads];
+
+		Thread[] workers = new Thread[threads];
+		for (int i = 0;  i < threads;  ++i) {
+			final int id = i;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					counters[id] = count;
+					while (--counters[id] != 0)
+						;
+				}
+			};
+		}
+
+		return run(workers);
+	}
+
+	private static long run(Thread[] workers) throws InterruptedException {
+		long millis = System.currentTimeMillis();
+
+		for (Thread worker: workers)
+			worker.start();
+		for (Thread worker: workers)
+			worker.join();
+
+		return System.currentTimeMillis() - millis;
+	}
+
+}
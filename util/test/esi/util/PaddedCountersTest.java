@@ -0,0 +1,68 @@
+package esi.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PaddedCountersTest {
+
+	@Test
+	public void counters() {
+		PaddedCounters counters = new PaddedCounters(3);
+		assertEquals(3, counters.size());
+
+		counters.set(1, 5);
+		assertEquals(0, counters.get(0));
+		assertEquals(5, counters.get(1));
+		assertEquals(0, counters.get(2));
+
+		assertEquals(6, counters.increment(1));
+		assertEquals(-1, counters.decrement(2));
+		assertEquals(6, counters.get(1));
+		assertEquals(-1, counters.get(2));
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void outOfBounds() {
+		// Padding slots are not accessible
+		new PaddedCounters(2).get(2);
+	}
+
+	@Test
+	public void multiThreaded() throws InterruptedException {
+		final int            threads  = 4;
+		final int            count    = 1000000;
+		final PaddedCounters counters = new PaddedCounters(threads);
+		final long[]         steps    = new long[threads];
+
+		Thread[] workers = new Thread[threads];
+		for (int i = 0;  i < threads;  ++i) {
+			final int id = i;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					// Steps interrupter pattern: count down to zero
+					counters.set(id, count);
+					while (counters.decrement(id) != 0)
+						++steps[id];
+
+					// Different total per counter, so that updates of
+					// neighbouring counters would be detected
+					for (int j = 0;  j < count * (id+1);  ++j)
+						counters.increment(id);
+				}
+			};
+		}
+
+		for (Thread worker: workers)
+			worker.start();
+		for (Thread worker: workers)
+			worker.join();
+
+		for (int i = 0;  i < threads;  ++i) {
+			assertEquals(count - 1, steps[i]);
+			assertEquals((long) count * (i+1), counters.get(i));
+		}
+	}
+
+}
@@ -11,7 +11,8 @@ import esi.util.SandBox.Result;
 public class SandBoxTest {
 
 	static class TestClass {
-		public volatile int counter = 0;
+		public volatile int     counter = 0;
+		public volatile boolean release = false;
 
 		public int testMethod(long millis, Throwable exception) throws Throwable {
 			if (millis > 0) {
@@ -33,6 +34,12 @@ public class SandBoxTest {
 			return x;
 		}
 
+		// Simulates instrumentation that counts instructions in counter 1
+		public int countedMethod(PaddedCounters counters, int x) {
+			counters.set(1, counters.get(1) + x);
+			return x;
+		}
+
 		public void voidMethod(int[] x) {
 			++x[0];
 		}
@@ -48,6 +55,21 @@ public class SandBoxTest {
 				Thread.sleep(0);
 			}
 		}
+
+		public void checkpointLoopMethod() throws InterruptedException {
+			while (true) {
+				++counter;
+
+				// Only the checkpoint can stop the loop
+				Thread.interrupted();
+				SandBox.checkpoint(0);
+			}
+		}
+
+		public void spinMethod() {
+			while (!release)
+				++counter;
+		}
 	}
 
 	static class TestClassException {
@@ -134,6 +156,44 @@ public class SandBoxTest {
 		assertEquals(counter1, counter2);
 	}
 
+	@Test
+	public void callTimeoutCheckpoint() throws NoSuchMethodException, InterruptedException {
+		Method    method  = TestClass.class.getDeclaredMethod("checkpointLoopMethod");
+		TestClass obj     = new TestClass();
+		SandBox   sandbox = new SandBox(obj, method, 5);
+
+		Result result = sandbox.call();
+		assertNull(result);
+
+		Thread.sleep(50);
+		int counter1 = obj.counter;
+
+		Thread.sleep(100);
+		int counter2 = obj.counter;
+
+		assertEquals(counter1, counter2);
+	}
+
+	@Test
+	public void stuckWorkers() throws NoSuchMethodException, InterruptedException {
+		Method    method  = TestClass.class.getDeclaredMethod("spinMethod");
+		TestClass obj     = new TestClass();
+		SandBox   sandbox = new SandBox(obj, method, 5);
+
+		int stuck = SandBox.getStuckWorkers();
+
+		Result result = sandbox.call();
+		assertNull(result);
+		assertEquals(stuck + 1, SandBox.getStuckWorkers());
+
+		// Worker is no longer stuck once the method returns
+		obj.release = true;
+		for (int i = 0;  i < 100  &&  SandBox.getStuckWorkers() != stuck;  ++i)
+			Thread.sleep(10);
+
+		assertEquals(stuck, SandBox.getStuckWorkers());
+	}
+
 	@Test
 	public void callSimultaneous() throws NoSuchMethodException, InterruptedException {
 		Method    method  = TestClass.class.getDeclaredMethod("testMethod", Long.TYPE, Throwable.class);
@@ -246,6 +306,63 @@ public class SandBoxTest {
 		assertNotSame(result, result2);
 	}
 
+	@Test
+	public void callBatch() throws NoSuchMethodException {
+		Method    method  = TestClass.class.getDeclaredMethod("identityMethod", Integer.TYPE);
+		SandBox   sandbox = new SandBox(new TestClass(), method, 1000);
+
+		Result[] results = sandbox.callBatch(new Object[] { 23 }, new Object[] { 42 }, new Object[] { 7 });
+		assertNotNull(results);
+		assertEquals(3, results.length);
+
+		int[] expected = { 23, 42, 7 };
+		for (int i = 0;  i < results.length;  ++i) {
+			assertNotNull(results[i]);
+			assertTrue  (results[i].hasRetvalue());
+			assertEquals(expected[i], results[i].retvalue);
+		}
+	}
+
+	@Test
+	public void callBatchException() throws NoSuchMethodException {
+		Method    method  = TestClass.class.getDeclaredMethod("testMethod", Long.TYPE, Throwable.class);
+		SandBox   sandbox = new SandBox(new TestClass(), method, 1000);
+
+		Exception exception = new IndexOutOfBoundsException();
+		Result[]  results   = sandbox.callBatch(new Object[] { 0, null }, new Object[] { 0, exception }, new Object[] { 0, null });
+		assertNotNull(results);
+		assertEquals(3, results.length);
+
+		assertEquals(5, results[0].retvalue);
+		assertSame  (exception, results[1].exception);
+		assertNull  (results[2]);
+	}
+
+	@Test
+	public void callBatchTimeout() throws NoSuchMethodException {
+		Method    method  = TestClass.class.getDeclaredMethod("testMethod", Long.TYPE, Throwable.class);
+		SandBox   sandbox = new SandBox(new TestClass(), method, 50);
+
+		// Timeout is shared by all calls in the batch
+		Result[] results = sandbox.callBatch(new Object[] { 30, null }, new Object[] { 30, null });
+		assertNull(results);
+	}
+
+	@Test
+	public void callCounted() throws NoSuchMethodException {
+		Method         method   = TestClass.class.getDeclaredMethod("countedMethod", PaddedCounters.class, Integer.TYPE);
+		PaddedCounters counters = new PaddedCounters(2);
+		SandBox        sandbox  = new SandBox(new TestClass(), method, 1000, counters, 1);
+
+		// Counter is reset before each call
+		Result[] results = sandbox.callBatch(new Object[] { counters, 23 }, new Object[] { counters, 42 });
+		assertEquals(23, results[0].count);
+		assertEquals(42, results[1].count);
+
+		Result result = new SandBox(new TestClass(), method, 1000).call(counters, 5);
+		assertEquals(-1, result.count);
+	}
+
 	@Test
 	public void stressTest() throws NoSuchMethodException {
 		Method    method  = TestClass.class.getDeclaredMethod("testMethod", Long.TYPE, Throwable.class);